@@ -0,0 +1,99 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.io.StringWriter
+
+class ErrorReaderLazyTest {
+
+    private val config = Configuration("api-key")
+    private lateinit var file: File
+    private lateinit var original: String
+
+    @Before
+    fun setUp() {
+        config.projectPackages = arrayOf("com.example")
+        val error = Error.Builder(config, RuntimeException("Whoops"), null,
+            Thread.currentThread(), false).build()
+        val breadcrumbs = Breadcrumbs(config)
+        breadcrumbs.add(Breadcrumb("Hello \"world\" {"))
+        error.setBreadcrumbs(breadcrumbs)
+        error.setUser("123", "foo@example.com", "Foo")
+        error.addToTab("custom", "unicode", "é ☃")
+
+        original = serialize(error)
+        file = File.createTempFile("error", ".json")
+        file.deleteOnExit()
+        file.writeText(original)
+    }
+
+    @Test
+    fun unmodifiedErrorCopiedUnchanged() {
+        val error = ErrorReader.readError(config, file)
+        assertNull(error.breadcrumbs)
+        assertNull(error.threadState)
+        assertEquals(original, serialize(error))
+    }
+
+    @Test
+    fun modifiedSectionsSerialized() {
+        val error = ErrorReader.readError(config, file)
+        error.addToTab("custom", "foo", "bar")
+        error.setUserId("456")
+        error.setDeviceId(null)
+
+        val json = serialize(error)
+        assertTrue(json.contains("\"foo\":\"bar\""))
+        assertTrue(json.contains("\"unicode\":\"é ☃\""))
+        assertTrue(json.contains("\"id\":\"456\",\"email\":\"foo@example.com\""))
+        assertEquals(rawSection("breadcrumbs"), section(json, "breadcrumbs"))
+        assertEquals(rawSection("threads"), section(json, "threads"))
+        assertEquals(rawSection("app"), section(json, "app"))
+    }
+
+    @Test
+    fun readMetaDataCopiedUnchanged() {
+        // global metaData added after the error was stored is not sent with it
+        config.metaData.addToTab("global", "foo", "bar")
+        val error = ErrorReader.readError(config, file)
+        assertEquals("é ☃", error.metaData.getTab("custom")["unicode"])
+        assertEquals(original, serialize(error))
+
+        error.addToTab("custom", "foo", "baz")
+        val json = serialize(error)
+        assertTrue(json.contains("\"foo\":\"baz\""))
+        assertFalse(json.contains("\"global\""))
+    }
+
+    private fun serialize(streamable: JsonStream.Streamable): String {
+        val writer = StringWriter()
+        val stream = JsonStream(writer)
+        streamable.toStream(stream)
+        stream.flush()
+        return writer.toString()
+    }
+
+    private fun rawSection(name: String) = section(original, name)
+
+    /**
+     * Returns the text of a top-level section in a serialized error
+     */
+    private fun section(json: String, name: String): String {
+        val copy = File.createTempFile("section", ".json")
+        copy.deleteOnExit()
+        copy.writeText(json)
+
+        val writer = StringWriter()
+        val stream = JsonStream(writer)
+        stream.beginArray()
+        JsonSections.scan(copy).write(name, stream)
+        stream.endArray()
+        stream.flush()
+        return writer.toString()
+    }
+}
@@ -0,0 +1,62 @@
+package com.bugsnag.android
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+
+class ErrorStoreAggregationTest {
+
+    private val appContext = ApplicationProvider.getApplicationContext<Context>()
+    private val config = Configuration("api-key")
+    private val reports = mutableListOf<Report>()
+    private lateinit var errorStore: ErrorStore
+
+    @Before
+    fun setUp() {
+        config.delivery = object : Delivery {
+            override fun deliver(payload: SessionTrackingPayload, config: Configuration) {
+            }
+
+            override fun deliver(report: Report, config: Configuration) {
+                reports.add(report)
+            }
+        }
+        config.storedErrorAggregationWindowMs = 60000
+        errorStore = ErrorStore(config, appContext, null)
+        FileUtils.clearFilesInDir(File(errorStore.storeDirectory))
+    }
+
+    @Test
+    fun repeatedErrorsCollapsed() {
+        val filenames = (0 until 3).map { errorStore.write(createError()) }
+        errorStore.write(createError(IllegalArgumentException()))
+
+        assertEquals(1, filenames.distinct().size)
+        val files = errorStore.findStoredFiles()
+        assertEquals(2, files.size)
+        assertEquals(3, errorStore.aggregator.getCount(File(filenames[0])))
+
+        errorStore.flushReports(files)
+        assertEquals(2, reports.size)
+        val tab = reports[0].error!!.metaData.getTab(PayloadTrimmer.DIAGNOSTICS_TAB)
+        assertEquals(3, tab["occurrences"])
+        assertTrue(errorStore.findStoredFiles().isEmpty())
+    }
+
+    @Test
+    fun reportsBeingSentNotAggregated() {
+        val filename = errorStore.write(createError())
+        errorStore.findStoredFiles() // queues the stored report for delivery
+
+        assertTrue(filename != errorStore.write(createError()))
+    }
+
+    private fun createError(exc: Throwable = IllegalStateException()): Error {
+        exc.stackTrace = arrayOf(StackTraceElement("com.example.Foo", "bar", "Foo.java", 42))
+        return Error.Builder(config, exc, null, Thread.currentThread(), false).build()
+    }
+}
@@ -0,0 +1,96 @@
+package com.bugsnag.android
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.io.StringWriter
+
+class ErrorStoreEnvelopeTest {
+
+    private val appContext = ApplicationProvider.getApplicationContext<Context>()
+    private val config = Configuration("api-key")
+    private val reports = mutableListOf<Report>()
+    private val payloads = mutableListOf<String>()
+    private lateinit var errorStore: ErrorStore
+
+    @Before
+    fun setUp() {
+        config.delivery = object : Delivery {
+            override fun deliver(payload: SessionTrackingPayload, config: Configuration) {
+            }
+
+            override fun deliver(report: Report, config: Configuration) {
+                reports.add(report)
+                payloads.add(serialize(report))
+            }
+        }
+        config.envelopeStoredErrors = true
+        config.projectPackages = arrayOf("com.example")
+        errorStore = ErrorStore(config, appContext, null)
+        FileUtils.clearFilesInDir(File(errorStore.storeDirectory))
+    }
+
+    @Test
+    fun errorStoredWithRequestBody() {
+        val error = createError()
+        val file = File(errorStore.write(error)!!)
+        assertTrue(file.readText().startsWith("bugsnag-envelope:1 "))
+        assertTrue(PayloadEnvelope.isEnveloped(file))
+
+        val envelope = PayloadEnvelope.read(file)
+        assertNotNull(envelope)
+        assertEquals(file.length(), errorStore.findStoredFiles().map { it.length() }.sum())
+        assertEquals(serialize(error), serialize(ErrorReader.readError(config, file)))
+    }
+
+    @Test
+    fun errorStoredWithoutEnvelopeWhenDisabled() {
+        config.envelopeStoredErrors = false
+        val file = File(errorStore.write(createError())!!)
+        assertFalse(PayloadEnvelope.isEnveloped(file))
+        assertTrue(file.readText().startsWith("{"))
+    }
+
+    @Test
+    fun customDeliveryReceivesStoredError() {
+        val error = createError()
+        errorStore.write(error)
+        errorStore.flushReports(errorStore.findStoredFiles())
+
+        assertEquals(1, payloads.size)
+        assertTrue(payloads[0].contains(serialize(error)))
+        assertTrue(errorStore.findStoredFiles().isEmpty())
+    }
+
+    @Test
+    fun beforeSendReceivesStoredError() {
+        config.beforeSend { report ->
+            report.error!!.context = "changed"
+            true
+        }
+        errorStore.write(createError())
+        errorStore.flushReports(errorStore.findStoredFiles())
+
+        assertEquals("changed", reports[0].error!!.context)
+    }
+
+    private fun createError(): Error {
+        val exc = IllegalStateException("envelope")
+        exc.stackTrace = arrayOf(StackTraceElement("com.example.Foo", "bar", "Foo.java", 42))
+        return Error.Builder(config, exc, null, Thread.currentThread(), false).build()
+    }
+
+    private fun serialize(streamable: JsonStream.Streamable): String {
+        val writer = StringWriter()
+        val stream = JsonStream(writer)
+        streamable.toStream(stream)
+        stream.flush()
+        return writer.toString()
+    }
+}
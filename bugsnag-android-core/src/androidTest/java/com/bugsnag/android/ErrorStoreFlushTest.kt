@@ -0,0 +1,174 @@
+package com.bugsnag.android
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.io.StringWriter
+import java.util.concurrent.atomic.AtomicInteger
+
+class ErrorStoreFlushTest {
+
+    private val appContext = ApplicationProvider.getApplicationContext<Context>()
+    private val config = Configuration("api-key")
+    private lateinit var delivery: ConcurrencyTrackingDelivery
+    private lateinit var errorStore: ErrorStore
+
+    @Before
+    fun setUp() {
+        delivery = ConcurrencyTrackingDelivery()
+        config.delivery = delivery
+        config.maxConcurrentFlushRequests = 3
+        errorStore = ErrorStore(config, appContext, null)
+        FileUtils.clearFilesInDir(File(errorStore.storeDirectory))
+
+        val exc = RuntimeException()
+        repeat(12) {
+            val error = Error.Builder(config, exc, null, Thread.currentThread(), false).build()
+            errorStore.write(error)
+        }
+    }
+
+    @Test
+    fun flushesConcurrently() {
+        errorStore.flushReports(errorStore.findStoredFiles())
+
+        assertEquals(12, delivery.requests.get())
+        assertTrue(delivery.maxConcurrent in 2..3)
+        assertTrue(errorStore.findStoredFiles().isEmpty())
+    }
+
+    @Test
+    fun flushesSeriallyAfterFailure() {
+        delivery.fail = true
+        errorStore.flushReports(errorStore.findStoredFiles())
+
+        // at most the first wave of concurrent requests overlap before falling back
+        assertEquals(12, delivery.requests.get())
+        assertTrue(delivery.maxConcurrent <= 3)
+        assertEquals(1, delivery.concurrentAfterFailure)
+    }
+
+    @Test
+    fun deferredReportsFlushedWhenDue() {
+        val files = errorStore.findStoredFiles()
+        val delayMs = 60000L
+        errorStore.retryScheduler.onFailure(files, delayMs,
+            System.currentTimeMillis() - delayMs + 300)
+        errorStore.flushReports(files)
+        assertEquals(0, delivery.requests.get())
+
+        var attempts = 0
+        while (delivery.requests.get() < 12 && attempts++ < 100) {
+            Thread.sleep(50)
+        }
+        assertEquals(12, delivery.requests.get())
+    }
+
+    @Test
+    fun deletedReportDiscarded() {
+        config.delivery = SerializingDelivery()
+        config.envelopeStoredErrors = true
+        val error = Error.Builder(config, RuntimeException(), null, Thread.currentThread(),
+            false).build()
+        val deleted = File(errorStore.write(error)!!)
+        val files = errorStore.findStoredFiles()
+
+        // the envelope cannot be read once deleted by something other than the store
+        deleted.delete()
+        errorStore.flushReports(files)
+
+        assertEquals(0, errorStore.retryScheduler.getAttempts(deleted))
+        assertTrue(errorStore.findStoredFiles().isEmpty())
+    }
+
+    @Test
+    fun deletedPlainReportNotSent() {
+        val serializing = SerializingDelivery()
+        config.delivery = serializing
+        val error = Error.Builder(config, RuntimeException(), null, Thread.currentThread(),
+            false).build()
+        val deleted = File(errorStore.write(error)!!)
+        val files = errorStore.findStoredFiles()
+
+        // only the deleted file is flushed, which must not be sent with no events
+        deleted.delete()
+        errorStore.flushReports(listOf(deleted))
+
+        assertEquals(0, serializing.delivered)
+        assertEquals(0, errorStore.retryScheduler.getAttempts(deleted))
+        assertEquals(files.size - 1, errorStore.indexedFiles.size)
+    }
+
+    @Test
+    fun truncatedReportSentOutsideBatch() {
+        config.maxBatchedEvents = 12
+        val files = errorStore.findStoredFiles()
+
+        // a file cut short when the process was killed part way through writing it
+        val truncated = files.first()
+        RandomAccessFile(truncated, "rw").use { it.setLength(it.length() / 2) }
+        errorStore.flushReports(files)
+
+        assertEquals(2, delivery.requests.get())
+        assertEquals(0, errorStore.retryScheduler.getAttempts(truncated))
+        assertTrue(errorStore.findStoredFiles().isEmpty())
+    }
+
+    class SerializingDelivery : Delivery {
+        var delivered = 0
+
+        override fun deliver(payload: SessionTrackingPayload, config: Configuration) {
+        }
+
+        override fun deliver(report: Report, config: Configuration) {
+            try {
+                report.toStream(JsonStream(StringWriter()))
+                delivered++
+            } catch (exception: IOException) {
+                throw DeliveryFailureException("Failed to read report", exception)
+            }
+        }
+    }
+
+    class ConcurrencyTrackingDelivery : Delivery {
+        val requests = AtomicInteger()
+        var maxConcurrent = 0
+        var concurrentAfterFailure = 0
+        private var active = 0
+        private var failures = 0
+
+        @Volatile
+        var fail = false
+
+        override fun deliver(payload: SessionTrackingPayload, config: Configuration) {
+        }
+
+        override fun deliver(report: Report, config: Configuration) {
+            synchronized(this) {
+                active++
+                maxConcurrent = maxOf(maxConcurrent, active)
+
+                if (failures >= 3) {
+                    concurrentAfterFailure = maxOf(concurrentAfterFailure, active)
+                }
+            }
+            try {
+                Thread.sleep(50)
+                requests.incrementAndGet()
+
+                if (fail) {
+                    synchronized(this) { failures++ }
+                    throw DeliveryFailureException("Failed", null)
+                }
+            } finally {
+                synchronized(this) { active-- }
+            }
+        }
+    }
+}
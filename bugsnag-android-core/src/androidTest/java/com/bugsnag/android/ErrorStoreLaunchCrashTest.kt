@@ -0,0 +1,82 @@
+package com.bugsnag.android
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class ErrorStoreLaunchCrashTest {
+
+    private val appContext = ApplicationProvider.getApplicationContext<Context>()
+    private val config = Configuration("api-key")
+    private val delivery = BlockingDelivery()
+    private lateinit var errorStore: ErrorStore
+
+    @Before
+    fun setUp() {
+        config.delivery = delivery
+        errorStore = ErrorStore(config, appContext, null)
+        FileUtils.clearFilesInDir(File(errorStore.storeDirectory))
+
+        // store a report, then mark it as a launch crash
+        val exc = RuntimeException()
+        val error = Error.Builder(config, exc, null, Thread.currentThread(), true).build()
+        val file = File(errorStore.write(error))
+        file.renameTo(File(file.path.replace(".json", "_startupcrash.json")))
+        errorStore = ErrorStore(config, appContext, null) // as on the next launch
+    }
+
+    @Test
+    fun initContinuesOnceLaunchCrashSent() {
+        config.launchCrashFlushTimeoutMs = 10000
+        delivery.release.countDown()
+
+        val startMs = System.currentTimeMillis()
+        errorStore.flushOnLaunch()
+
+        assertTrue(System.currentTimeMillis() - startMs < 5000)
+        assertEquals(0, delivery.pending.count)
+        assertTrue(errorStore.awaitLaunchCrashFlush(0))
+    }
+
+    @Test
+    fun initTimesOutWaitingForLaunchCrash() {
+        config.launchCrashFlushTimeoutMs = 100
+        errorStore.flushOnLaunch()
+
+        assertFalse(errorStore.awaitLaunchCrashFlush(0))
+        delivery.release.countDown()
+        assertTrue(errorStore.awaitLaunchCrashFlush(10000))
+    }
+
+    @Test
+    fun asyncLaunchCrashFlushDoesNotBlock() {
+        config.launchCrashFlushAsync = true
+        config.launchCrashFlushTimeoutMs = 10000
+        errorStore.flushOnLaunch()
+
+        assertFalse(errorStore.awaitLaunchCrashFlush(0))
+        delivery.release.countDown()
+        assertTrue(errorStore.awaitLaunchCrashFlush(10000))
+        assertEquals(0, delivery.pending.count)
+    }
+
+    class BlockingDelivery : Delivery {
+        val release = CountDownLatch(1)
+        val pending = CountDownLatch(1)
+
+        override fun deliver(payload: SessionTrackingPayload, config: Configuration) {
+        }
+
+        override fun deliver(report: Report, config: Configuration) {
+            release.await(10, TimeUnit.SECONDS)
+            pending.countDown()
+        }
+    }
+}
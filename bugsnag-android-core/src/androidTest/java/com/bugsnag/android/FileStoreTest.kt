@@ -3,6 +3,7 @@ package com.bugsnag.android
 import android.content.Context
 import androidx.test.core.app.ApplicationProvider
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
 import org.junit.Assert.assertTrue
 import org.junit.Test
 import java.io.File
@@ -43,6 +44,69 @@ class FileStoreTest {
         assertEquals(File("/foo.json"), delegate.errorFile)
         assertTrue(delegate.exception is FileNotFoundException)
     }
+
+    @Test
+    fun discardsOldestFilesWhenLimitReached() {
+        val store = SequentialFileStore(config, appContext, 3)
+        FileUtils.clearFilesInDir(File(store.storeDirectory))
+
+        repeat(5) { store.write(EmptyStreamable()) }
+
+        val names = store.findStoredFiles().map { it.name }
+        assertEquals(listOf("0002.json", "0003.json", "0004.json"), names)
+    }
+
+    @Test
+    fun storedFilesIndexedInOrder() {
+        val store = SequentialFileStore(config, appContext, 10)
+        FileUtils.clearFilesInDir(File(store.storeDirectory))
+
+        val filenames = (0 until 3).map { store.write(EmptyStreamable()) }
+        File(filenames[1]).delete() // deleted by something other than the store
+
+        // the index is trusted, so the deleted file is dropped once it is flushed
+        val files = store.findStoredFiles()
+        assertEquals(listOf("0000.json", "0001.json", "0002.json"), files.map { it.name })
+        assertTrue(store.findStoredFiles().isEmpty())
+
+        store.deleteStoredFiles(listOf(files[1]))
+        store.cancelQueuedFiles(files)
+        assertEquals(listOf("0000.json", "0002.json"), store.findStoredFiles().map { it.name })
+    }
+
+    @Test
+    fun evictsOldestFilesWhenSizeLimitReached() {
+        val store = SequentialFileStore(config, appContext, 10, maxBytes = 5)
+        FileUtils.clearFilesInDir(File(store.storeDirectory))
+
+        repeat(4) { store.write(EmptyStreamable()) } // each payload is 2 bytes
+
+        val names = store.findStoredFiles().map { it.name }
+        assertEquals(listOf("0002.json", "0003.json"), names)
+    }
+
+    @Test
+    fun discardsPayloadLargerThanSizeLimit() {
+        val store = SequentialFileStore(config, appContext, 10, maxBytes = 1)
+        FileUtils.clearFilesInDir(File(store.storeDirectory))
+
+        assertNull(store.write(EmptyStreamable()))
+        assertTrue(store.findStoredFiles().isEmpty())
+    }
+
+    @Test
+    fun evictsFilesOlderThanMaxAge() {
+        val store = SequentialFileStore(config, appContext, 10)
+        FileUtils.clearFilesInDir(File(store.storeDirectory))
+        val filenames = (0 until 2).map { store.write(EmptyStreamable()) }
+        File(filenames[0]).setLastModified(System.currentTimeMillis() - 120000)
+
+        // a new store loads the modification times from disk
+        val expiringStore = SequentialFileStore(config, appContext, 10, maxAgeMs = 60000)
+        val names = expiringStore.findStoredFiles().map { it.name }
+        assertEquals(listOf("0001.json"), names)
+        assertEquals(false, File(filenames[0]).exists())
+    }
 }
 
 class CustomDelegate: FileStore.Delegate {
@@ -61,6 +125,27 @@ class CustomStreamable(val exc: Throwable) : JsonStream.Streamable {
     override fun toStream(stream: JsonStream) = throw exc
 }
 
+class EmptyStreamable : JsonStream.Streamable {
+    override fun toStream(stream: JsonStream) {
+        stream.beginObject().endObject()
+    }
+}
+
+internal class SequentialFileStore(
+    config: Configuration,
+    appContext: Context,
+    maxStoreCount: Int,
+    private val maxBytes: Long = 0,
+    private val maxAgeMs: Long = 0
+) : FileStore<EmptyStreamable>(config, appContext, "/bugsnag-index-test/",
+    maxStoreCount, null, null) {
+    private var count = 0
+
+    override fun getFilename(`object`: Any?) = String.format("%s%04d.json", storeDirectory, count++)
+    override fun getMaxStoreBytes() = maxBytes
+    override fun getMaxStoreAgeMs() = maxAgeMs
+}
+
 internal class CustomFileStore(
     config: Configuration,
     appContext: Context,
@@ -9,13 +9,17 @@ import android.os.SystemClock;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
 
 /**
  * Collects various data on the application state
  */
-class AppData {
+class AppData implements Observer {
 
     private static final long startTimeMs = SystemClock.elapsedRealtime();
 
@@ -40,6 +44,16 @@ class AppData {
 
     private PackageManager packageManager;
 
+    private final JsonFragment summaryFragment = new JsonFragment(new JsonStream.Streamable() {
+        @Override
+        public void toStream(@NonNull JsonStream writer) throws IOException {
+            writer.value(getAppDataSummary());
+        }
+    });
+
+    // the config values in the summary which can be changed without a config message
+    private Object[] summaryValues;
+
     AppData(Context appContext, PackageManager packageManager,
             Configuration config, SessionTracker sessionTracker) {
         this.appContext = appContext;
@@ -59,6 +73,22 @@ class AppData {
         }
 
         appName = getAppName();
+        config.addObserver(this);
+    }
+
+    /**
+     * Invalidates the rendered app summary when the app version or release stage change
+     */
+    @Override
+    public void update(@NonNull Observable observable, @NonNull Object arg) {
+        if (arg instanceof NativeInterface.Message) {
+            NativeInterface.MessageType type = ((NativeInterface.Message) arg).type;
+
+            if (type == NativeInterface.MessageType.UPDATE_APP_VERSION
+                || type == NativeInterface.MessageType.UPDATE_RELEASE_STAGE) {
+                summaryFragment.invalidate();
+            }
+        }
     }
 
     Map<String, Object> getAppDataSummary() {
@@ -71,6 +101,25 @@ class AppData {
         return map;
     }
 
+    /**
+     * Gets the app summary rendered as JSON, which is rendered again after any value that it
+     * contains changes
+     */
+    @NonNull
+    JsonFragment getAppDataSummaryFragment() {
+        Object[] values = {
+            config.getNotifierType(), config.getVersionCode(), config.getCodeBundleId()
+        };
+
+        synchronized (summaryFragment) {
+            if (!Arrays.equals(values, summaryValues)) {
+                summaryValues = values;
+                summaryFragment.invalidate();
+            }
+        }
+        return summaryFragment;
+    }
+
     Map<String, Object> getAppData() {
         Map<String, Object> map = getAppDataSummary();
         map.put("id", packageName);
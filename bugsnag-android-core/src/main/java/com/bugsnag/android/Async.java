@@ -3,23 +3,82 @@ package com.bugsnag.android;
 import androidx.annotation.NonNull;
 
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Runs background tasks in lanes. Queued tasks are run in order of their lane's priority, so
+ * that a backlog of sessions or internal reports cannot delay the delivery of a crash. Each
+ * lane has its own limit on the number of queued tasks, and its own policy for when the limit
+ * is reached.
+ * <p>
+ * Priority only decides which queued task starts next, and a running task is never
+ * interrupted, so the error lanes have their own workers. A long flush or session request
+ * therefore never delays the delivery of an error.
+ */
 class Async {
+
+    /**
+     * What happens when a task is submitted to a lane which is full
+     */
+    enum RejectionPolicy {
+
+        /**
+         * Throw a {@link RejectedExecutionException}, so that the caller can persist the
+         * payload for later
+         */
+        REJECT,
+
+        /**
+         * Silently drop the new task, for tasks which would duplicate work already queued
+         */
+        DISCARD,
+
+        /**
+         * Drop the oldest queued task in the lane in favour of the new one
+         */
+        DISCARD_OLDEST
+    }
+
+    /**
+     * The lanes in which tasks can run, in priority order
+     */
+    enum Lane {
+        UNHANDLED_ERROR(32, RejectionPolicy.REJECT, true),
+        HANDLED_ERROR(64, RejectionPolicy.REJECT, true),
+        FLUSH(4, RejectionPolicy.DISCARD, false),
+        SESSION(32, RejectionPolicy.REJECT, false),
+        DEFAULT(16, RejectionPolicy.REJECT, false),
+        INTERNAL_ERROR(8, RejectionPolicy.DISCARD_OLDEST, false);
+
+        final int capacity;
+        final RejectionPolicy rejectionPolicy;
+
+        // whether tasks in the lane run on the workers reserved for errors
+        final boolean error;
+
+        Lane(int capacity, RejectionPolicy rejectionPolicy, boolean error) {
+            this.capacity = capacity;
+            this.rejectionPolicy = rejectionPolicy;
+            this.error = error;
+        }
+    }
+
     // This is pretty much the same settings as AsyncTask#THREAD_POOL_EXECUTOR, except that it has
-    // a minimum of 1 for the core pool size, instead of 2. We could probably use
-    // AsyncTask.THREAD_POOL_EXECUTOR directly, but that requires API >= 11.
+    // a minimum of 1 for the core pool size, instead of 2. As tasks are queued in an unbounded
+    // priority queue, with limits enforced per lane, the pool never grows beyond its core size.
     private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
-    private static final int CORE_POOL_SIZE = Math.max(1, Math.min(CPU_COUNT - 1, 4));
-    private static final int MAXIMUM_POOL_SIZE = CPU_COUNT * 2 + 1;
+    static final int CORE_POOL_SIZE = Math.max(1, Math.min(CPU_COUNT - 1, 4));
+    static final int ERROR_POOL_SIZE = Math.max(1, Math.min(CPU_COUNT - 1, 2));
     private static final int KEEP_ALIVE_SECONDS = 30;
-    static final BlockingQueue<Runnable> POOL_WORK_QUEUE =
-        new LinkedBlockingQueue<>(128);
+    static final BlockingQueue<Runnable> POOL_WORK_QUEUE = new PriorityBlockingQueue<>();
+    static final BlockingQueue<Runnable> ERROR_WORK_QUEUE = new PriorityBlockingQueue<>();
     private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
         private final AtomicInteger count = new AtomicInteger(1);
 
@@ -29,17 +88,166 @@ class Async {
         }
     };
     private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
-        CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        CORE_POOL_SIZE, CORE_POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
         POOL_WORK_QUEUE, THREAD_FACTORY);
 
+    // the error workers are usually idle, so are stopped rather than kept alive
+    private static final ThreadPoolExecutor ERROR_EXECUTOR = new ThreadPoolExecutor(
+        ERROR_POOL_SIZE, ERROR_POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        ERROR_WORK_QUEUE, THREAD_FACTORY);
+
+    // holds delayed tasks until they are due, and then submits them to their lane
+    private static final ScheduledThreadPoolExecutor DELAY_EXECUTOR =
+        new ScheduledThreadPoolExecutor(1, THREAD_FACTORY);
+
+    static {
+        ERROR_EXECUTOR.allowCoreThreadTimeOut(true);
+        DELAY_EXECUTOR.setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        DELAY_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+    private static final int[] PENDING_COUNTS = new int[Lane.values().length];
+
+    /**
+     * A task queued in a lane, ordered by the lane's priority and then by submission order
+     */
+    static class LaneTask implements Runnable, Comparable<LaneTask> {
+        final Lane lane;
+        final long sequence;
+        private final Runnable task;
+        private final long enqueuedAtMs;
+
+        LaneTask(Lane lane, Runnable task) {
+            this.lane = lane;
+            this.task = task;
+            this.sequence = SEQUENCE.getAndIncrement();
+            this.enqueuedAtMs = System.currentTimeMillis();
+        }
+
+        @Override
+        public void run() {
+            onDequeued(lane);
+            long startMs = System.currentTimeMillis();
+
+            try {
+                task.run();
+            } finally {
+                long endMs = System.currentTimeMillis();
+                PipelineMetrics.getInstance()
+                    .recordTaskCompleted(startMs - enqueuedAtMs, endMs - startMs);
+            }
+        }
+
+        @Override
+        public int compareTo(@NonNull LaneTask other) {
+            int result = lane.compareTo(other.lane);
+
+            if (result == 0) {
+                result = sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+            }
+            return result;
+        }
+    }
+
     static void run(@NonNull Runnable task) throws RejectedExecutionException {
-        EXECUTOR.execute(task);
+        run(Lane.DEFAULT, task);
+    }
+
+    /**
+     * Runs a task in the given lane. If the lane is full, its rejection policy is applied.
+     *
+     * @throws RejectedExecutionException if the lane is full and rejects new tasks, or the
+     *                                    executor has been shut down
+     */
+    static void run(@NonNull Lane lane, @NonNull Runnable task)
+        throws RejectedExecutionException {
+        synchronized (PENDING_COUNTS) {
+            if (PENDING_COUNTS[lane.ordinal()] >= lane.capacity) {
+                switch (lane.rejectionPolicy) {
+                    case DISCARD:
+                        Logger.info("Discarding task as " + lane + " queue is full");
+                        PipelineMetrics.getInstance().recordTaskDiscarded();
+                        return;
+                    case DISCARD_OLDEST:
+                        if (!discardOldest(lane)) {
+                            PipelineMetrics.getInstance().recordTaskRejected();
+                            throw new RejectedExecutionException(lane + " queue is full");
+                        }
+                        break;
+                    case REJECT:
+                    default:
+                        PipelineMetrics.getInstance().recordTaskRejected();
+                        throw new RejectedExecutionException(lane + " queue is full");
+                }
+            }
+            ThreadPoolExecutor executor = lane.error ? ERROR_EXECUTOR : EXECUTOR;
+            executor.execute(new LaneTask(lane, task));
+            PENDING_COUNTS[lane.ordinal()]++;
+        }
+    }
+
+    /**
+     * Runs a task in the given lane once a delay has passed. If the lane rejects the task when
+     * it is due, the task is dropped.
+     */
+    static void runDelayed(@NonNull final Lane lane, @NonNull final Runnable task, long delayMs)
+        throws RejectedExecutionException {
+        DELAY_EXECUTOR.schedule(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Async.run(lane, task);
+                } catch (RejectedExecutionException exception) {
+                    Logger.warn("Dropping delayed task as " + lane + " queue is full");
+                }
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean discardOldest(Lane lane) {
+        LaneTask oldest = null;
+
+        BlockingQueue<Runnable> queue = lane.error ? ERROR_WORK_QUEUE : POOL_WORK_QUEUE;
+
+        for (Runnable runnable : queue) {
+            LaneTask task = (LaneTask) runnable;
+
+            if (task.lane == lane && (oldest == null || task.sequence < oldest.sequence)) {
+                oldest = task;
+            }
+        }
+        if (oldest != null && queue.remove(oldest)) {
+            Logger.info("Discarding oldest task as " + lane + " queue is full");
+            PipelineMetrics.getInstance().recordTaskDiscarded();
+            PENDING_COUNTS[lane.ordinal()]--;
+            return true;
+        }
+        return false;
+    }
+
+    private static void onDequeued(Lane lane) {
+        synchronized (PENDING_COUNTS) {
+            PENDING_COUNTS[lane.ordinal()]--;
+        }
+    }
+
+    /**
+     * Returns the number of tasks in a lane which are waiting to run
+     */
+    static int getPendingCount(@NonNull Lane lane) {
+        synchronized (PENDING_COUNTS) {
+            return PENDING_COUNTS[lane.ordinal()];
+        }
     }
 
     static void cancelTasks() throws InterruptedException {
         Logger.info("Cancelling tasks");
+        DELAY_EXECUTOR.shutdown();
         EXECUTOR.shutdown();
+        ERROR_EXECUTOR.shutdown();
         EXECUTOR.awaitTermination(2000, TimeUnit.MILLISECONDS);
+        ERROR_EXECUTOR.awaitTermination(2000, TimeUnit.MILLISECONDS);
         Logger.info("Finishing cancelling tasks");
     }
 
@@ -3,7 +3,6 @@ package com.bugsnag.android;
 import androidx.annotation.NonNull;
 
 import java.io.IOException;
-import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -101,11 +100,7 @@ public final class Breadcrumb implements JsonStream.Streamable {
         writer.endObject();
     }
 
-    int payloadSize() throws IOException {
-        StringWriter writer = new StringWriter();
-        JsonStream jsonStream = new JsonStream(writer);
-        toStream(jsonStream);
-
-        return writer.toString().length();
+    long payloadSize() throws IOException {
+        return CountingWriter.measure(this);
     }
 }
@@ -733,6 +733,30 @@ public final class Bugsnag {
         getClient().stopSession();
     }
 
+    /**
+     * Blocks until any reports of crashes which occurred during a previous launch have been
+     * sent, or until the launch crash flush timeout elapses. Use this to hold app startup at a
+     * point of your choosing when launch crashes are sent without blocking initialisation.
+     *
+     * @return true if there are no launch crash reports waiting to be sent
+     * @see Configuration#setLaunchCrashFlushAsync(boolean)
+     */
+    public static boolean awaitLaunchCrashFlush() {
+        return getClient().awaitLaunchCrashFlush();
+    }
+
+    /**
+     * Returns counters and timings for the notifier's background work, such as queue depths,
+     * bytes sent and delivery latency, which can be polled or subscribed to.
+     *
+     * @return the pipeline metrics
+     * @see PipelineMetrics#addListener(PipelineMetrics.Listener)
+     */
+    @NonNull
+    public static PipelineMetrics getPipelineMetrics() {
+        return getClient().getPipelineMetrics();
+    }
+
     /**
      * Get the current Bugsnag Client instance.
      */
@@ -3,7 +3,7 @@ package com.bugsnag.android;
 import androidx.annotation.NonNull;
 
 import java.io.IOException;
-import java.util.List;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -23,11 +23,6 @@ class CachedThread implements JsonStream.Streamable {
                 new Stacktrace(frames, config.getProjectPackages()));
     }
 
-    CachedThread(long id, String name, String type,
-                 boolean isErrorReportingThread, List<Map<String, Object>> customFrames) {
-        this(id, name, type, isErrorReportingThread, new Stacktrace(customFrames));
-    }
-
     private CachedThread(long id, String name, String type,
                          boolean isErrorReportingThread, Stacktrace stackTrace) {
         this.id = id;
@@ -37,6 +32,17 @@ class CachedThread implements JsonStream.Streamable {
         this.stacktrace = stackTrace;
     }
 
+    boolean isErrorReportingThread() {
+        return isErrorReportingThread;
+    }
+
+    /**
+     * Discards the stack frames of this thread, to reduce the size of the payload
+     */
+    void clearStacktrace() {
+        stacktrace = new Stacktrace(Collections.<Map<String, Object>>emptyList());
+    }
+
     @Override
     public void toStream(@NonNull JsonStream writer) throws IOException {
         writer.beginObject();
@@ -350,7 +350,8 @@ public class Client extends Observable implements Observer {
 
         super.notifyObservers(new Message(NativeInterface.MessageType.INSTALL, messageArgs));
         try {
-            Async.run(new Runnable() {
+            // the flush lane silently discards tasks when full, which would lose this one
+            Async.run(Async.Lane.DEFAULT, new Runnable() {
                 @Override
                 public void run() {
                     enqueuePendingNativeReports();
@@ -1035,6 +1036,8 @@ public class Client extends Observable implements Observer {
                 deliverReportAsync(error, report);
                 break;
             case ASYNC_WITH_CACHE:
+                // beforeSend tasks run when the stored error is sent, so it is trimmed now
+                trimPayload(report);
                 errorStore.write(error);
                 errorStore.flushAsync();
                 break;
@@ -1070,7 +1073,7 @@ public class Client extends Observable implements Observer {
 
         final Report report = new Report(null, error);
         try {
-            Async.run(new Runnable() {
+            Async.run(Async.Lane.INTERNAL_ERROR, new Runnable() {
                 @Override
                 public void run() {
                     try {
@@ -1099,9 +1102,12 @@ public class Client extends Observable implements Observer {
         final Report finalReport = report;
         final Error finalError = error;
 
-        // Attempt to send the report in the background
+        // Attempt to send the report in the background, crashes taking priority
+        Async.Lane lane = error.getHandledState().isUnhandled()
+            ? Async.Lane.UNHANDLED_ERROR : Async.Lane.HANDLED_ERROR;
+
         try {
-            Async.run(new Runnable() {
+            Async.run(lane, new Runnable() {
                 @Override
                 public void run() {
                     deliver(finalReport, finalError);
@@ -1466,6 +1472,18 @@ public class Client extends Observable implements Observer {
             Logger.info("Skipping notification - beforeSend task returned false");
             return;
         }
+        trimPayload(report);
+
+        // Serialize the error once, so the same bytes are sent and stored if delivery fails
+        PayloadBuffer serializedError = null;
+
+        try {
+            serializedError = PayloadBuffer.render(error);
+            report.setSerializedError(serializedError);
+        } catch (Exception exception) {
+            Logger.warn("Failed to serialize error ahead of delivery", exception);
+        }
+
         try {
             config.getDelivery().deliver(report, config);
             Logger.info("Sent 1 new error to Bugsnag");
@@ -1474,11 +1492,14 @@ public class Client extends Observable implements Observer {
             if (!report.isCachingDisabled()) {
                 Logger.warn("Could not send error(s) to Bugsnag,"
                     + " saving to disk to send later", exception);
-                errorStore.write(error);
+                errorStore.write(error, serializedError);
                 leaveErrorBreadcrumb(error);
             }
         } catch (Exception exception) {
             Logger.warn("Problem sending error to Bugsnag", exception);
+        } finally {
+            report.setSerializedError(null);
+            PayloadBuffer.recycle(serializedError);
         }
     }
 
@@ -1501,6 +1522,13 @@ public class Client extends Observable implements Observer {
         notify(error, DeliveryStyle.ASYNC_WITH_CACHE, null);
     }
 
+    // Remove information from the report if it exceeds the max payload size
+    private void trimPayload(Report report) {
+        if (config.getMaxPayloadSize() > 0) {
+            new PayloadTrimmer(config.getMaxPayloadSize()).trim(report);
+        }
+    }
+
     private boolean runBeforeSendTasks(Report report) {
         for (BeforeSend beforeSend : config.getBeforeSendTasks()) {
             try {
@@ -1617,6 +1645,29 @@ public class Client extends Observable implements Observer {
         return config;
     }
 
+    /**
+     * Blocks until any reports of crashes which occurred during a previous launch have been
+     * sent, or until the launch crash flush timeout elapses. This returns immediately if there
+     * are no launch crash reports waiting to be sent.
+     *
+     * @return true if there are no launch crash reports waiting to be sent
+     * @see Configuration#setLaunchCrashFlushAsync(boolean)
+     */
+    public boolean awaitLaunchCrashFlush() {
+        return errorStore.awaitLaunchCrashFlush(config.getLaunchCrashFlushTimeoutMs());
+    }
+
+    /**
+     * Returns counters and timings for the notifier's background work, such as queue depths,
+     * bytes sent and delivery latency, which can be polled or subscribed to.
+     *
+     * @return the pipeline metrics
+     */
+    @NonNull
+    public PipelineMetrics getPipelineMetrics() {
+        return PipelineMetrics.getInstance();
+    }
+
     /**
      * Retrieves the time at which the client was launched
      *
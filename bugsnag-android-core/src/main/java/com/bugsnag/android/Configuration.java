@@ -26,6 +26,7 @@ public class Configuration extends Observable implements Observer {
     static final String HEADER_API_KEY = "Bugsnag-Api-Key";
     private static final String HEADER_BUGSNAG_SENT_AT = "Bugsnag-Sent-At";
     private static final int DEFAULT_MAX_SIZE = 32;
+    private static final long DEFAULT_MAX_BATCH_SIZE_BYTES = 1024 * 1024;
     static final String DEFAULT_EXCEPTION_TYPE = "android";
 
     @NonNull
@@ -46,6 +47,8 @@ public class Configuration extends Observable implements Observer {
     private boolean enableExceptionHandler = true;
     private boolean persistUserBetweenSessions = false;
     private long launchCrashThresholdMs = 5 * 1000;
+    private long launchCrashFlushTimeoutMs = 2 * 1000;
+    private boolean launchCrashFlushAsync = false;
     private boolean autoCaptureSessions = true;
     private boolean automaticallyCollectBreadcrumbs = true;
 
@@ -67,6 +70,25 @@ public class Configuration extends Observable implements Observer {
 
     private Delivery delivery;
     private int maxBreadcrumbs = DEFAULT_MAX_SIZE;
+    private int maxBatchedEvents = 1;
+    private long maxBatchSizeBytes = DEFAULT_MAX_BATCH_SIZE_BYTES;
+    private boolean compressRequests = false;
+    private boolean envelopeStoredErrors = false;
+    private long maxPayloadSize = 0;
+    private int maxConcurrentFlushRequests = 1;
+    private long storedErrorAggregationWindowMs = 0;
+    private long maxStoredErrorsSizeBytes = 0;
+    private long maxStoredSessionsSizeBytes = 0;
+    private long maxStoredErrorAgeMs = 0;
+    private long maxStoredSessionAgeMs = 0;
+    @NonNull
+    private EvictionPolicy storedErrorEvictionPolicy = EvictionPolicy.OLDEST_FIRST;
+
+    // applied to the metaData whenever it is replaced, so are held here rather than only on it
+    private int byteArrayBase64Threshold = 0;
+    private int maxMetaDataDepth = 0;
+    private int maxMetaDataCollectionSize = 0;
+    private int maxMetaDataStringLength = 0;
 
     /**
      * Construct a new Bugsnag configuration object
@@ -305,6 +327,15 @@ public class Configuration extends Observable implements Observer {
      * For example:
      * <p/>
      * client.setFilters("password", "credit_card");
+     * <p/>
+     * A filter can instead match keys in a different way by starting with one of these kinds:
+     * <ul>
+     * <li>"exact:" matches keys which are equal to the rest of the filter</li>
+     * <li>"prefix:" matches keys which start with the rest of the filter</li>
+     * <li>"regex:" matches keys which contain a match of the regular expression</li>
+     * </ul>
+     * <p/>
+     * client.setFilters("exact:pin", "prefix:secret_", "regex:^card[0-9]+$");
      *
      * @param filters a list of keys to filter from metaData
      */
@@ -312,6 +343,140 @@ public class Configuration extends Observable implements Observer {
         this.metaData.setFilters(filters);
     }
 
+    /**
+     * Sets the length at which byte arrays in metaData are sent as base64 encoded strings,
+     * rather than as arrays of numbers. Base64 is around a third of the size of a JSON array
+     * of bytes, so this reduces the size of payloads which contain large buffers. By default
+     * this is set to 0, and byte arrays are always sent as arrays of numbers.
+     *
+     * @param threshold the minimum length of a byte array to encode, or 0 to disable encoding
+     */
+    public void setByteArrayBase64Threshold(int threshold) {
+        if (threshold < 0) {
+            Logger.warn("Ignoring invalid byte array base64 threshold. Must be >= 0.");
+            return;
+        }
+        this.byteArrayBase64Threshold = threshold;
+        this.metaData.setByteArrayBase64Threshold(threshold);
+    }
+
+    /**
+     * Gets the length at which byte arrays in metaData are sent as base64 encoded strings.
+     *
+     * @return the minimum length of a byte array to encode, or 0 if encoding is disabled
+     * @see #setByteArrayBase64Threshold(int)
+     */
+    public int getByteArrayBase64Threshold() {
+        return byteArrayBase64Threshold;
+    }
+
+    /**
+     * Sets the maximum depth of nested maps, collections and arrays sent in metaData. Values
+     * nested deeper than this are replaced with "[MAX DEPTH]". The tabs of metaData are at a
+     * depth of 2, and the values in each tab at a depth of 3. By default this is set to 0, and
+     * values are sent at any depth.
+     * <p/>
+     * Regardless of this limit, a map, collection or array which contains itself is replaced
+     * with "[CIRCULAR]" where it recurs.
+     *
+     * @param maxDepth the maximum depth, or 0 to send values at any depth
+     */
+    public void setMaxMetaDataDepth(int maxDepth) {
+        if (maxDepth < 0) {
+            Logger.warn("Ignoring invalid max metaData depth. Must be >= 0.");
+            return;
+        }
+        this.maxMetaDataDepth = maxDepth;
+        this.metaData.setMaxDepth(maxDepth);
+    }
+
+    /**
+     * Gets the maximum depth of nested values sent in metaData.
+     *
+     * @return the maximum depth, or 0 if values are sent at any depth
+     * @see #setMaxMetaDataDepth(int)
+     */
+    public int getMaxMetaDataDepth() {
+        return maxMetaDataDepth;
+    }
+
+    /**
+     * Sets the maximum number of entries sent for each map, collection or array in metaData.
+     * The remaining entries are replaced by a "[TRUNCATED]" entry with the number of entries
+     * omitted from a map, or by a "[TRUNCATED n ITEMS]" element at the end of an array. By
+     * default this is set to 0, and all entries are sent.
+     *
+     * @param maxCollectionSize the maximum number of entries, or 0 to send all entries
+     */
+    public void setMaxMetaDataCollectionSize(int maxCollectionSize) {
+        if (maxCollectionSize < 0) {
+            Logger.warn("Ignoring invalid max metaData collection size. Must be >= 0.");
+            return;
+        }
+        this.maxMetaDataCollectionSize = maxCollectionSize;
+        this.metaData.setMaxCollectionSize(maxCollectionSize);
+    }
+
+    /**
+     * Gets the maximum number of entries sent for each map, collection or array in metaData.
+     *
+     * @return the maximum number of entries, or 0 if all entries are sent
+     * @see #setMaxMetaDataCollectionSize(int)
+     */
+    public int getMaxMetaDataCollectionSize() {
+        return maxMetaDataCollectionSize;
+    }
+
+    /**
+     * Sets the maximum length of strings sent in metaData. Longer strings are truncated and
+     * end with "***TRUNCATED***". By default this is set to 0, and strings are sent in full.
+     *
+     * @param maxStringLength the maximum length in chars, or 0 to send strings in full
+     */
+    public void setMaxMetaDataStringLength(int maxStringLength) {
+        if (maxStringLength < 0) {
+            Logger.warn("Ignoring invalid max metaData string length. Must be >= 0.");
+            return;
+        }
+        this.maxMetaDataStringLength = maxStringLength;
+        this.metaData.setMaxStringLength(maxStringLength);
+    }
+
+    /**
+     * Gets the maximum length of strings sent in metaData.
+     *
+     * @return the maximum length in chars, or 0 if strings are sent in full
+     * @see #setMaxMetaDataStringLength(int)
+     */
+    public int getMaxMetaDataStringLength() {
+        return maxMetaDataStringLength;
+    }
+
+    /**
+     * Adds an adapter which converts values of the given type in metaData into values which
+     * can be sent, such as maps, collections, strings and numbers. The adapter is called when
+     * an error report is written rather than when a value is added, so objects can be added to
+     * metaData without being converted up front. The adapter is also used for subclasses and
+     * implementations of the type, unless they have an adapter of their own.
+     * <p/>
+     * Values which implement {@link JsonStream.Streamable} are written by their own toStream
+     * method instead, and values of any other type are sent as "[OBJECT]".
+     * <p/>
+     * config.addMetaDataAdapter(Order.class, new MetaDataAdapter&lt;Order&gt;() {
+     *     public Object toMetaData(Order order) {
+     *         return Collections.singletonMap("id", order.getId());
+     *     }
+     * });
+     *
+     * @param type    the type of value which the adapter converts
+     * @param adapter the adapter
+     * @param <T>     the type of value which the adapter converts
+     */
+    public <T> void addMetaDataAdapter(@NonNull Class<T> type,
+                                       @NonNull MetaDataAdapter<? super T> adapter) {
+        this.metaData.addAdapter(type, adapter);
+    }
+
     /**
      * Get which exception classes should be ignored (not sent) by Bugsnag.
      *
@@ -499,19 +664,36 @@ public class Configuration extends Observable implements Observer {
      * @param metaData meta data
      */
     public void setMetaData(@NonNull MetaData metaData) {
-        this.metaData.deleteObserver(this);
+        MetaData previous = this.metaData;
+        previous.deleteObserver(this);
         //noinspection ConstantConditions
         if (metaData == null) {
             this.metaData = new MetaData();
         } else {
             this.metaData = metaData;
         }
+        applyMetaDataSettings(previous);
         this.setChanged();
         this.notifyObservers(new NativeInterface.Message(
                     NativeInterface.MessageType.UPDATE_METADATA, this.metaData.store));
         this.metaData.addObserver(this);
     }
 
+    /**
+     * Applies the limits set on this configuration to the current metaData, and carries over
+     * the adapters added to the metaData which it replaced
+     */
+    private void applyMetaDataSettings(@NonNull MetaData previous) {
+        metaData.setByteArrayBase64Threshold(byteArrayBase64Threshold);
+        metaData.setMaxDepth(maxMetaDataDepth);
+        metaData.setMaxCollectionSize(maxMetaDataCollectionSize);
+        metaData.setMaxStringLength(maxMetaDataStringLength);
+
+        if (previous != metaData) {
+            metaData.jsonStreamer.mergeAdapters(previous.jsonStreamer);
+        }
+    }
+
     /**
      * Gets any before notify tasks to run
      *
@@ -580,6 +762,61 @@ public class Configuration extends Observable implements Observer {
         }
     }
 
+    /**
+     * Sets the maximum time in ms that {@link Bugsnag#init(Context)} blocks while sending the
+     * reports of crashes which occurred during a previous launch. Initialisation continues as
+     * soon as the reports are sent, or when the timeout elapses, whichever is sooner. Sending
+     * continues in the background after the timeout.
+     * <p>
+     * By default, this value is set at 2,000ms.
+     *
+     * @param launchCrashFlushTimeoutMs the timeout in ms. Must be >= 0.
+     * @see #setLaunchCrashThresholdMs(long)
+     */
+    public void setLaunchCrashFlushTimeoutMs(long launchCrashFlushTimeoutMs) {
+        if (launchCrashFlushTimeoutMs < 0) {
+            Logger.warn("Ignoring invalid launch crash flush timeout. Must be >= 0.");
+            return;
+        }
+        this.launchCrashFlushTimeoutMs = launchCrashFlushTimeoutMs;
+    }
+
+    /**
+     * Retrieves the maximum time in ms that initialisation blocks while sending launch crashes.
+     *
+     * @return the timeout in ms
+     * @see #setLaunchCrashFlushTimeoutMs(long)
+     */
+    public long getLaunchCrashFlushTimeoutMs() {
+        return launchCrashFlushTimeoutMs;
+    }
+
+    /**
+     * Sets whether launch crash reports are sent without blocking {@link Bugsnag#init(Context)}.
+     * When enabled, the app can instead wait for the reports to be sent at a point of its
+     * choosing, such as before leaving a splash screen, by calling
+     * {@link Bugsnag#awaitLaunchCrashFlush()}.
+     * <p>
+     * By default this is false, and initialisation blocks until the reports are sent or the
+     * launch crash flush timeout elapses.
+     *
+     * @param launchCrashFlushAsync whether initialisation should not wait for launch crashes
+     * @see #setLaunchCrashFlushTimeoutMs(long)
+     */
+    public void setLaunchCrashFlushAsync(boolean launchCrashFlushAsync) {
+        this.launchCrashFlushAsync = launchCrashFlushAsync;
+    }
+
+    /**
+     * Retrieves whether launch crash reports are sent without blocking initialisation.
+     *
+     * @return true if initialisation does not wait for launch crashes to be sent
+     * @see #setLaunchCrashFlushAsync(boolean)
+     */
+    public boolean getLaunchCrashFlushAsync() {
+        return launchCrashFlushAsync;
+    }
+
     /**
      * Returns whether automatic breadcrumb capture or common application events is enabled.
      * @return true if automatic capture is enabled, otherwise false.
@@ -652,6 +889,336 @@ public class Configuration extends Observable implements Observer {
         return maxBreadcrumbs;
     }
 
+    /**
+     * Sets the maximum number of stored error reports which are sent to Bugsnag in a single
+     * request when flushing reports that were previously saved to disk, for example after the
+     * device has been offline. By default each stored report is sent in its own request.
+     * <p>
+     * Batching is not used when any {@link BeforeSend} callbacks have been added, as these
+     * callbacks operate on a single report.
+     *
+     * @param maxBatchedEvents the maximum number of events per request. Must be >= 1.
+     * @see #setMaxBatchSizeBytes(long)
+     */
+    public void setMaxBatchedEvents(int maxBatchedEvents) {
+        if (maxBatchedEvents < 1) {
+            Logger.warn("Ignoring invalid batch size. Must be >= 1.");
+            return;
+        }
+        this.maxBatchedEvents = maxBatchedEvents;
+    }
+
+    /**
+     * Retrieves the maximum number of stored error reports sent in a single request.
+     *
+     * @return the maximum number of events per request
+     * @see #setMaxBatchedEvents(int)
+     */
+    public int getMaxBatchedEvents() {
+        return maxBatchedEvents;
+    }
+
+    /**
+     * Sets the maximum combined size in bytes of the stored error reports which are sent to
+     * Bugsnag in a single request. A stored report which exceeds this size by itself is always
+     * sent in its own request. By default, this is set at 1MB.
+     *
+     * @param maxBatchSizeBytes the maximum size of the events in a batched request
+     * @see #setMaxBatchedEvents(int)
+     */
+    public void setMaxBatchSizeBytes(long maxBatchSizeBytes) {
+        if (maxBatchSizeBytes <= 0) {
+            Logger.warn("Ignoring invalid batch byte size. Must be > 0.");
+            return;
+        }
+        this.maxBatchSizeBytes = maxBatchSizeBytes;
+    }
+
+    /**
+     * Retrieves the maximum combined size in bytes of the stored reports sent in one request.
+     *
+     * @return the maximum size of the events in a batched request
+     * @see #setMaxBatchSizeBytes(long)
+     */
+    public long getMaxBatchSizeBytes() {
+        return maxBatchSizeBytes;
+    }
+
+    /**
+     * Sets the maximum number of requests which are made at the same time when sending error
+     * reports that were previously saved to disk. Each request is sent on its own connection.
+     * If a request fails, the remaining reports are sent one at a time. By default, one request
+     * is made at a time.
+     *
+     * @param maxConcurrentFlushRequests the maximum number of concurrent requests. Must be >= 1.
+     */
+    public void setMaxConcurrentFlushRequests(int maxConcurrentFlushRequests) {
+        if (maxConcurrentFlushRequests < 1) {
+            Logger.warn("Ignoring invalid concurrent flush request limit. Must be >= 1.");
+            return;
+        }
+        this.maxConcurrentFlushRequests = maxConcurrentFlushRequests;
+    }
+
+    /**
+     * Gets the maximum number of concurrent requests made when sending stored error reports.
+     *
+     * @return the maximum number of concurrent requests
+     * @see #setMaxConcurrentFlushRequests(int)
+     */
+    public int getMaxConcurrentFlushRequests() {
+        return maxConcurrentFlushRequests;
+    }
+
+    /**
+     * Sets whether request bodies sent by the default {@link Delivery} should be compressed
+     * using gzip, reducing the amount of data sent over the network. By default this is false.
+     * <p>
+     * This has no effect when a custom {@link Delivery} has been set.
+     *
+     * @param compressRequests whether requests should use Content-Encoding: gzip
+     */
+    public void setCompressRequests(boolean compressRequests) {
+        this.compressRequests = compressRequests;
+    }
+
+    /**
+     * Gets whether request bodies sent by the default {@link Delivery} are compressed using gzip.
+     *
+     * @return true if requests are compressed
+     * @see #setCompressRequests(boolean)
+     */
+    public boolean getCompressRequests() {
+        return compressRequests;
+    }
+
+    /**
+     * Sets whether errors which could not be delivered are stored with the complete body of the
+     * request which delivers them. When stored errors are flushed by the default
+     * {@link Delivery} and no {@link BeforeSend} callbacks have been added, the request body is
+     * then copied from the file, rather than each error being read and serialized again.
+     * <p>
+     * Files stored in this format cannot be read by earlier versions of this library, so are
+     * discarded if the app is downgraded before they are sent. By default this is false.
+     *
+     * @param envelopeStoredErrors whether errors are stored with their request body
+     */
+    public void setEnvelopeStoredErrors(boolean envelopeStoredErrors) {
+        this.envelopeStoredErrors = envelopeStoredErrors;
+    }
+
+    /**
+     * Gets whether errors which could not be delivered are stored with their request body.
+     *
+     * @return true if errors are stored with their request body
+     * @see #setEnvelopeStoredErrors(boolean)
+     */
+    public boolean getEnvelopeStoredErrors() {
+        return envelopeStoredErrors;
+    }
+
+    /**
+     * Sets the maximum size in bytes of an error report payload. When a report exceeds this
+     * size, information is removed from it until it fits, in the following order: breadcrumbs,
+     * the stacktraces of threads other than the one which reported the error, long metadata
+     * values, and finally any "cause" exceptions. The information which was removed is recorded
+     * in the "BugsnagDiagnostics" metadata tab of the report, which counts towards its size.
+     * <p>
+     * Reports are trimmed after any {@link BeforeSend} tasks have run, so that information
+     * which they add is measured too. Unhandled errors which are stored before being sent are
+     * the exception: they are trimmed when stored, and anything which their beforeSend tasks
+     * add when they are sent later is not trimmed.
+     * <p>
+     * Measuring a report requires serializing it, so by default this is set to 0, which
+     * disables the limit.
+     *
+     * @param maxPayloadSize the maximum size of a report in bytes, or 0 for no limit
+     */
+    public void setMaxPayloadSize(long maxPayloadSize) {
+        if (maxPayloadSize < 0) {
+            Logger.warn("Ignoring invalid max payload size. Must be >= 0.");
+            return;
+        }
+        this.maxPayloadSize = maxPayloadSize;
+    }
+
+    /**
+     * Gets the maximum size in bytes of an error report payload.
+     *
+     * @return the maximum size of a report in bytes, or 0 if there is no limit
+     * @see #setMaxPayloadSize(long)
+     */
+    public long getMaxPayloadSize() {
+        return maxPayloadSize;
+    }
+
+    /**
+     * Sets the maximum combined size in bytes of the error reports which are stored on disk
+     * because they could not be delivered. When storing a report would exceed this size, stored
+     * reports are removed in the order given by
+     * {@link #setStoredErrorEvictionPolicy(EvictionPolicy)}. A report which is larger than the
+     * limit by itself is not stored.
+     * <p>
+     * By default this is set to 0, and only the number of stored reports is limited.
+     *
+     * @param maxStoredErrorsSizeBytes the maximum size of the stored reports, or 0 for no limit
+     */
+    public void setMaxStoredErrorsSizeBytes(long maxStoredErrorsSizeBytes) {
+        if (maxStoredErrorsSizeBytes < 0) {
+            Logger.warn("Ignoring invalid max stored errors size. Must be >= 0.");
+            return;
+        }
+        this.maxStoredErrorsSizeBytes = maxStoredErrorsSizeBytes;
+    }
+
+    /**
+     * Gets the maximum combined size in bytes of the error reports stored on disk.
+     *
+     * @return the maximum size of the stored reports, or 0 if there is no limit
+     * @see #setMaxStoredErrorsSizeBytes(long)
+     */
+    public long getMaxStoredErrorsSizeBytes() {
+        return maxStoredErrorsSizeBytes;
+    }
+
+    /**
+     * Sets the maximum combined size in bytes of the sessions which are stored on disk because
+     * they could not be delivered. When storing a session would exceed this size, the oldest
+     * stored sessions are removed.
+     * <p>
+     * By default this is set to 0, and only the number of stored sessions is limited.
+     *
+     * @param maxStoredSessionsSizeBytes the maximum size of the stored sessions, or 0 for no limit
+     */
+    public void setMaxStoredSessionsSizeBytes(long maxStoredSessionsSizeBytes) {
+        if (maxStoredSessionsSizeBytes < 0) {
+            Logger.warn("Ignoring invalid max stored sessions size. Must be >= 0.");
+            return;
+        }
+        this.maxStoredSessionsSizeBytes = maxStoredSessionsSizeBytes;
+    }
+
+    /**
+     * Gets the maximum combined size in bytes of the sessions stored on disk.
+     *
+     * @return the maximum size of the stored sessions, or 0 if there is no limit
+     * @see #setMaxStoredSessionsSizeBytes(long)
+     */
+    public long getMaxStoredSessionsSizeBytes() {
+        return maxStoredSessionsSizeBytes;
+    }
+
+    /**
+     * Sets the maximum age in milliseconds of an error report stored on disk. Older reports
+     * are removed rather than delivered, the next time a report is stored or stored reports
+     * are sent.
+     * <p>
+     * By default this is set to 0, and stored reports are kept until they are delivered.
+     *
+     * @param maxStoredErrorAgeMs the maximum age of a stored report, or 0 for no limit
+     */
+    public void setMaxStoredErrorAgeMs(long maxStoredErrorAgeMs) {
+        if (maxStoredErrorAgeMs < 0) {
+            Logger.warn("Ignoring invalid max stored error age. Must be >= 0.");
+            return;
+        }
+        this.maxStoredErrorAgeMs = maxStoredErrorAgeMs;
+    }
+
+    /**
+     * Gets the maximum age in milliseconds of an error report stored on disk.
+     *
+     * @return the maximum age of a stored report, or 0 if there is no limit
+     * @see #setMaxStoredErrorAgeMs(long)
+     */
+    public long getMaxStoredErrorAgeMs() {
+        return maxStoredErrorAgeMs;
+    }
+
+    /**
+     * Sets the maximum age in milliseconds of a session stored on disk. Older sessions are
+     * removed rather than delivered, the next time a session is stored or stored sessions are
+     * sent.
+     * <p>
+     * By default this is set to 0, and stored sessions are kept until they are delivered.
+     *
+     * @param maxStoredSessionAgeMs the maximum age of a stored session, or 0 for no limit
+     */
+    public void setMaxStoredSessionAgeMs(long maxStoredSessionAgeMs) {
+        if (maxStoredSessionAgeMs < 0) {
+            Logger.warn("Ignoring invalid max stored session age. Must be >= 0.");
+            return;
+        }
+        this.maxStoredSessionAgeMs = maxStoredSessionAgeMs;
+    }
+
+    /**
+     * Gets the maximum age in milliseconds of a session stored on disk.
+     *
+     * @return the maximum age of a stored session, or 0 if there is no limit
+     * @see #setMaxStoredSessionAgeMs(long)
+     */
+    public long getMaxStoredSessionAgeMs() {
+        return maxStoredSessionAgeMs;
+    }
+
+    /**
+     * Sets the time window in ms in which repeated occurrences of an error which could not be
+     * delivered are collapsed into a single stored report. Errors are considered repeated if
+     * they have the same class, top in-project stackframes, grouping hash and handled state.
+     * When the stored report is sent, the number of occurrences and the times of the first and
+     * last occurrence are recorded in its "BugsnagDiagnostics" metadata tab.
+     * <p>
+     * This reduces the disk space and bandwidth used by crash loops, or by handled errors
+     * reported in a loop while the device is offline. By default this is set to 0, and every
+     * occurrence is stored separately.
+     *
+     * @param storedErrorAggregationWindowMs the window in ms, or 0 to disable aggregation
+     */
+    public void setStoredErrorAggregationWindowMs(long storedErrorAggregationWindowMs) {
+        if (storedErrorAggregationWindowMs < 0) {
+            Logger.warn("Ignoring invalid stored error aggregation window. Must be >= 0.");
+            return;
+        }
+        this.storedErrorAggregationWindowMs = storedErrorAggregationWindowMs;
+    }
+
+    /**
+     * Gets the time window in ms in which repeated errors are collapsed into one stored report.
+     *
+     * @return the window in ms, or 0 if aggregation is disabled
+     * @see #setStoredErrorAggregationWindowMs(long)
+     */
+    public long getStoredErrorAggregationWindowMs() {
+        return storedErrorAggregationWindowMs;
+    }
+
+    /**
+     * Sets the order in which stored error reports are removed when the maximum number or
+     * combined size of stored reports is reached. By default the oldest reports are removed
+     * first.
+     *
+     * @param storedErrorEvictionPolicy the order in which stored reports are removed
+     */
+    public void setStoredErrorEvictionPolicy(@NonNull EvictionPolicy storedErrorEvictionPolicy) {
+        if (storedErrorEvictionPolicy == null) {
+            Logger.warn("Ignoring null eviction policy");
+            return;
+        }
+        this.storedErrorEvictionPolicy = storedErrorEvictionPolicy;
+    }
+
+    /**
+     * Gets the order in which stored error reports are removed when a store limit is reached.
+     *
+     * @return the order in which stored reports are removed
+     * @see #setStoredErrorEvictionPolicy(EvictionPolicy)
+     */
+    @NonNull
+    public EvictionPolicy getStoredErrorEvictionPolicy() {
+        return storedErrorEvictionPolicy;
+    }
+
     /**
      * Retrieves the delivery used to make HTTP requests to Bugsnag.
      *
@@ -0,0 +1,101 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A sink which counts the number of bytes that would be written if its characters were encoded
+ * as UTF-8 by {@link Utf8Writer}, without buffering or retaining them. JSON which has already
+ * been encoded, such as a stored file or a rendered {@link JsonFragment}, is counted by its
+ * length rather than being decoded.
+ */
+class CountingWriter extends Writer {
+
+    private long count = 0;
+
+    // a high surrogate which is awaiting its low surrogate, as in Utf8Writer
+    private boolean pendingSurrogate = false;
+
+    /**
+     * Serializes a streamable without retaining the output, and returns its size in bytes
+     */
+    static long measure(@NonNull JsonStream.Streamable streamable) throws IOException {
+        CountingWriter writer = new CountingWriter();
+        JsonStream stream = new JsonStream(writer);
+        streamable.toStream(stream);
+        stream.flush();
+        return writer.getCount();
+    }
+
+    @Override
+    public void write(int value) {
+        count((char) value);
+    }
+
+    @Override
+    public void write(@NonNull char[] chars, int off, int len) {
+        for (int k = off; k < off + len; k++) {
+            count(chars[k]);
+        }
+    }
+
+    @Override
+    public void write(@NonNull String str, int off, int len) {
+        for (int k = off; k < off + len; k++) {
+            count(str.charAt(k));
+        }
+    }
+
+    /**
+     * Counts bytes which are already encoded as UTF-8
+     */
+    void countBytes(long length) {
+        flushPendingSurrogate();
+        count += length;
+    }
+
+    long getCount() {
+        return pendingSurrogate ? count + 1 : count;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void count(char c) {
+        if (pendingSurrogate) {
+            pendingSurrogate = false;
+
+            if (Character.isLowSurrogate(c)) {
+                count += 4;
+                return;
+            }
+            count++; // the unpaired surrogate is replaced with '?'
+        }
+
+        if (c < 0x80) {
+            count++;
+        } else if (c < 0x800) {
+            count += 2;
+        } else if (Character.isHighSurrogate(c)) {
+            pendingSurrogate = true;
+        } else if (Character.isLowSurrogate(c)) {
+            count++;
+        } else {
+            count += 3;
+        }
+    }
+
+    private void flushPendingSurrogate() {
+        if (pendingSurrogate) {
+            pendingSurrogate = false;
+            count++;
+        }
+    }
+}
@@ -2,19 +2,23 @@ package com.bugsnag.android;
 
 import androidx.annotation.NonNull;
 
-import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.nio.charset.Charset;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 class DefaultDelivery implements Delivery {
 
     private static final int HTTP_REQUEST_FAILED = 0;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int RESPONSE_BUFFER_SIZE = 1024;
     private final Connectivity connectivity;
+    private final KeepAliveConnections keepAliveConnections =
+        new KeepAliveConnections(KeepAliveConnections.DEFAULT_IDLE_TIMEOUT_MS);
 
     DefaultDelivery(Connectivity connectivity) {
         this.connectivity = connectivity;
@@ -24,7 +28,8 @@ class DefaultDelivery implements Delivery {
     public void deliver(@NonNull SessionTrackingPayload payload,
                         @NonNull Configuration config) throws DeliveryFailureException {
         String endpoint = config.getSessionEndpoint();
-        int status = deliver(endpoint, payload, config.getSessionApiHeaders());
+        int status = deliver(endpoint, payload, config.getSessionApiHeaders(),
+            config.getCompressRequests());
 
         if (status != 202) {
             Logger.warn("Session API request failed with status " + status, null);
@@ -37,7 +42,25 @@ class DefaultDelivery implements Delivery {
     public void deliver(@NonNull Report report,
                         @NonNull Configuration config) throws DeliveryFailureException {
         String endpoint = config.getEndpoint();
-        int status = deliver(endpoint, report, config.getErrorApiHeaders());
+        int status = deliver(endpoint, report, config.getErrorApiHeaders(),
+            config.getCompressRequests());
+
+        if (status / 100 != 2) {
+            Logger.warn("Error API request failed with status " + status, null);
+        } else {
+            Logger.info("Completed error API request");
+        }
+    }
+
+    /**
+     * Delivers a stored error whose file contains the complete request body, which is copied
+     * from the file rather than being serialized again
+     */
+    void deliver(@NonNull File errorFile, @NonNull PayloadEnvelope envelope,
+                 @NonNull Configuration config) throws DeliveryFailureException {
+        String endpoint = config.getEndpoint();
+        int status = deliver(endpoint, new StoredBody(errorFile, envelope),
+            config.getErrorApiHeaders(), config.getCompressRequests());
 
         if (status / 100 != 2) {
             Logger.warn("Error API request failed with status " + status, null);
@@ -49,45 +72,325 @@ class DefaultDelivery implements Delivery {
     int deliver(String urlString,
                 JsonStream.Streamable streamable,
                 Map<String, String> headers) throws DeliveryFailureException {
+        return deliver(urlString, streamable, headers, false);
+    }
+
+    /**
+     * Delivers a payload, optionally compressing the request body with gzip. The payload is
+     * serialized into a pooled buffer before the request is made, so that its length is known
+     * and the body can be sent using fixed-length streaming.
+     */
+    int deliver(String urlString,
+                JsonStream.Streamable streamable,
+                Map<String, String> headers,
+                boolean gzip) throws DeliveryFailureException {
+        return deliver(urlString, new SerializedBody(streamable), headers, gzip);
+    }
+
+    private int deliver(String urlString,
+                        RequestBody body,
+                        Map<String, String> headers,
+                        boolean gzip) throws DeliveryFailureException {
 
         if (connectivity != null && !connectivity.hasNetworkConnection()) {
             throw new DeliveryFailureException("No network connection available", null);
         }
         HttpURLConnection conn = null;
+        String endpoint = null;
+        boolean responseConsumed = false;
+        long requestStartMs = 0;
 
         try {
+            int length = prepare(body, gzip);
             URL url = new URL(urlString);
+            endpoint = KeepAliveConnections.endpointKey(url);
+            requestStartMs = System.currentTimeMillis();
+            keepAliveConnections.acquire(endpoint, requestStartMs);
             conn = (HttpURLConnection) url.openConnection();
             conn.setDoOutput(true);
-            conn.setChunkedStreamingMode(0);
+            conn.setFixedLengthStreamingMode(length);
             conn.addRequestProperty("Content-Type", "application/json");
 
+            if (gzip) {
+                conn.addRequestProperty("Content-Encoding", "gzip");
+            }
+
             for (Map.Entry<String, String> entry : headers.entrySet()) {
                 conn.addRequestProperty(entry.getKey(), entry.getValue());
             }
 
-            JsonStream stream = null;
+            OutputStream out = null;
 
             try {
-                OutputStream out = conn.getOutputStream();
-                Charset charset = Charset.forName("UTF-8");
-                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, charset));
-                stream = new JsonStream(writer);
-                streamable.toStream(stream);
+                out = conn.getOutputStream();
+                body.writeTo(out);
             } finally {
-                IOUtils.closeQuietly(stream);
+                IOUtils.closeQuietly(out);
             }
+            PipelineMetrics.getInstance().recordBytesSent(length);
 
             // End the request, get the response code
-            return conn.getResponseCode();
+            int status = conn.getResponseCode();
+            responseConsumed = consumeResponse(conn);
+            PipelineMetrics.getInstance().recordDelivery(
+                System.currentTimeMillis() - requestStartMs, status / 100 == 2);
+
+            if (status == HTTP_TOO_MANY_REQUESTS || status == HttpURLConnection.HTTP_UNAVAILABLE) {
+                String retryAfter = conn.getHeaderField("Retry-After");
+                long retryAfterMs =
+                    RetryScheduler.parseRetryAfter(retryAfter, System.currentTimeMillis());
+                throw new DeliveryFailureException("Request failed with status " + status
+                    + ", will retry later", null, retryAfterMs);
+            }
+            return status;
         } catch (IOException exception) {
+            if (requestStartMs > 0) {
+                PipelineMetrics.getInstance().recordDelivery(
+                    System.currentTimeMillis() - requestStartMs, false);
+            }
             throw new DeliveryFailureException("IOException encountered in request", exception);
+        } catch (DeliveryFailureException exception) {
+            throw exception;
         } catch (Exception exception) {
             Logger.warn("Unexpected error delivering payload", exception);
             return HTTP_REQUEST_FAILED;
         } finally {
-            IOUtils.close(conn);
+            body.release();
+
+            if (responseConsumed) {
+                keepAliveConnections.release(endpoint, conn, System.currentTimeMillis());
+            } else {
+                IOUtils.close(conn);
+            }
         }
     }
 
+    /**
+     * Prepares a request body. A failure to read or serialize the payload is reported as an
+     * {@link UnreadablePayloadException}, as it is not a network failure.
+     */
+    private static int prepare(RequestBody body, boolean gzip) throws IOException {
+        try {
+            return body.prepare(gzip);
+        } catch (IOException exception) {
+            throw new UnreadablePayloadException(exception);
+        }
+    }
+
+    /**
+     * Compresses a request body with gzip into a pooled buffer
+     */
+    private static PayloadBuffer compress(RequestBody body) throws IOException {
+        PayloadBuffer compressed = PayloadBuffer.obtain();
+
+        try {
+            GZIPOutputStream out = new GZIPOutputStream(compressed);
+            body.writeTo(out);
+            out.close();
+            return compressed;
+        } catch (IOException exception) {
+            PayloadBuffer.recycle(compressed);
+            throw exception;
+        }
+    }
+
+    /**
+     * Serializes a payload straight into a gzip stream over a pooled buffer, so that the
+     * uncompressed JSON is never held in memory alongside its compressed form
+     */
+    private static PayloadBuffer compress(JsonStream.Streamable streamable) throws IOException {
+        PayloadBuffer compressed = PayloadBuffer.obtain();
+
+        try {
+            GzipStream out = new GzipStream(compressed);
+            JsonStream stream = new JsonStream(out);
+            streamable.toStream(stream);
+            stream.flush();
+            out.finish();
+            PipelineMetrics.getInstance().recordBytesSerialized(out.getUncompressedSize());
+            out.close();
+            return compressed;
+        } catch (IOException exception) {
+            PayloadBuffer.recycle(compressed);
+            throw exception;
+        } catch (RuntimeException exception) {
+            PayloadBuffer.recycle(compressed);
+            throw exception;
+        }
+    }
+
+    /**
+     * A gzip stream which reports how many bytes were written to it before compression
+     */
+    private static class GzipStream extends GZIPOutputStream {
+
+        GzipStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        long getUncompressedSize() {
+            return def.getBytesRead();
+        }
+    }
+
+    /**
+     * The body of a request, which is prepared before the connection is opened so that its
+     * length is known and it can be sent using fixed-length streaming. As the length must be
+     * known up front, the body is held in memory in full while it is sent, in its compressed
+     * form if compression is enabled.
+     */
+    private abstract static class RequestBody {
+
+        /**
+         * Prepares the body to be written, compressing it if needed
+         *
+         * @return the length of the body in bytes
+         */
+        abstract int prepare(boolean gzip) throws IOException;
+
+        abstract void writeTo(OutputStream out) throws IOException;
+
+        /**
+         * Releases the resources held by the body, after the request completes or fails
+         */
+        abstract void release();
+    }
+
+    /**
+     * A body which is serialized into a pooled buffer, which is compressed as it is serialized
+     * if compression is enabled
+     */
+    private static class SerializedBody extends RequestBody {
+        private final JsonStream.Streamable streamable;
+        private PayloadBuffer json;
+        private PayloadBuffer compressed;
+
+        SerializedBody(JsonStream.Streamable streamable) {
+            this.streamable = streamable;
+        }
+
+        @Override
+        int prepare(boolean gzip) throws IOException {
+            if (gzip) {
+                compressed = compress(streamable);
+                return compressed.size();
+            }
+            json = PayloadBuffer.render(streamable);
+            return json.size();
+        }
+
+        @Override
+        void writeTo(OutputStream out) throws IOException {
+            if (compressed != null) {
+                compressed.writeTo(out);
+            } else {
+                json.writeTo(out);
+            }
+        }
+
+        @Override
+        void release() {
+            PayloadBuffer.recycle(json);
+            PayloadBuffer.recycle(compressed);
+            json = null;
+            compressed = null;
+        }
+    }
+
+    /**
+     * A body which is copied from a stored file, unless it is compressed into a pooled buffer
+     */
+    private static class StoredBody extends RequestBody {
+        private final File file;
+        private final PayloadEnvelope envelope;
+        private PayloadBuffer compressed;
+
+        StoredBody(File file, PayloadEnvelope envelope) {
+            this.file = file;
+            this.envelope = envelope;
+        }
+
+        @Override
+        int prepare(boolean gzip) throws IOException {
+            if (gzip) {
+                compressed = compress(this);
+                return compressed.size();
+            }
+            if (envelope.getBodyLength() > Integer.MAX_VALUE) {
+                throw new IOException("Stored request body is too large to send");
+            }
+            return (int) envelope.getBodyLength();
+        }
+
+        @Override
+        void writeTo(OutputStream out) throws IOException {
+            if (compressed != null) {
+                compressed.writeTo(out);
+            } else {
+                envelope.writeBody(file, out);
+            }
+        }
+
+        @Override
+        void release() {
+            PayloadBuffer.recycle(compressed);
+            compressed = null;
+        }
+    }
+
+    /**
+     * Reads and closes the response body. A connection can only be reused for a subsequent
+     * request once its response has been fully consumed.
+     *
+     * @return true if the response was consumed
+     */
+    private boolean consumeResponse(HttpURLConnection conn) {
+        InputStream input = null;
+
+        try {
+            input = conn.getResponseCode() >= 400 ? conn.getErrorStream() : conn.getInputStream();
+
+            if (input != null) {
+                byte[] buffer = new byte[RESPONSE_BUFFER_SIZE];
+
+                //noinspection StatementWithEmptyBody
+                while (input.read(buffer) != -1) {
+                    // discard the response body
+                }
+            }
+            return true;
+        } catch (IOException exception) {
+            return false;
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Holds connections open between requests until {@link #endFlush()} is called, so that
+     * consecutive requests to the same endpoint can reuse a connection.
+     */
+    void beginFlush() {
+        beginFlush(1);
+    }
+
+    /**
+     * Holds connections open between requests, keeping one for each of the given number of
+     * concurrent requests to an endpoint.
+     */
+    void beginFlush(int concurrency) {
+        keepAliveConnections.beginFlush(concurrency);
+    }
+
+    /**
+     * Ends a flush started by {@link #beginFlush()}, disconnecting any held connections.
+     */
+    void endFlush() {
+        keepAliveConnections.endFlush();
+    }
+
+    KeepAliveConnections getKeepAliveConnections() {
+        return keepAliveConnections;
+    }
+
 }
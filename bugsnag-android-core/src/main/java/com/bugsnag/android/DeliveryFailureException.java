@@ -12,11 +12,35 @@ import androidx.annotation.Nullable;
 public class DeliveryFailureException extends Exception {
     private static final long serialVersionUID = 1501477209400426470L;
 
+    private final long retryAfterMs;
+
     public DeliveryFailureException(@NonNull String message) {
-        super(message);
+        this(message, null);
     }
 
     public DeliveryFailureException(@NonNull String message, @Nullable Throwable cause) {
+        this(message, cause, 0);
+    }
+
+    /**
+     * Constructs an exception for a request which the server asked to be retried later,
+     * for example via the Retry-After header of a 429 or 503 response.
+     *
+     * @param message      the detail message
+     * @param cause        the cause of the failure, if any
+     * @param retryAfterMs the minimum delay before the request should be retried
+     */
+    public DeliveryFailureException(@NonNull String message, @Nullable Throwable cause,
+                                    long retryAfterMs) {
         super(message, cause);
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * @return the minimum delay in milliseconds requested before retrying, or 0 if the
+     * notifier should use its own backoff
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
     }
 }
@@ -18,6 +18,7 @@ import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
@@ -68,6 +69,14 @@ class DeviceData {
     @NonNull
     final String[] cpuAbi;
 
+    // none of the values in the summary change while the process is running
+    private final JsonFragment summaryFragment = new JsonFragment(new JsonStream.Streamable() {
+        @Override
+        public void toStream(@NonNull JsonStream writer) throws IOException {
+            writer.value(getDeviceDataSummary());
+        }
+    });
+
     DeviceData(Connectivity connectivity, Context appContext, Resources resources,
                SharedPreferences sharedPreferences) {
         this.connectivity = connectivity;
@@ -107,6 +116,14 @@ class DeviceData {
         return map;
     }
 
+    /**
+     * Gets the device summary rendered as JSON
+     */
+    @NonNull
+    JsonFragment getDeviceDataSummaryFragment() {
+        return summaryFragment;
+    }
+
     Map<String, Object> getDeviceData() {
         Map<String, Object> map = getDeviceDataSummary();
         map.put("id", id);
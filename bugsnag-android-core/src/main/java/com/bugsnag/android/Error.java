@@ -6,6 +6,8 @@ import androidx.annotation.Nullable;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
 
 /**
  * Information and associated diagnostics relating to a handled or unhandled
@@ -50,6 +52,17 @@ public class Error implements JsonStream.Streamable {
     private final ThreadState threadState;
     private boolean incomplete = false;
 
+    /**
+     * The sections of a stored report which have not been parsed, and which are copied from the
+     * stored file unchanged when the error is serialized
+     */
+    @Nullable
+    private JsonSections rawSections;
+
+    // whether metaData already includes the global metaData, as it was read from a stored report
+    // or trimmed, in which case the current global values are not merged into it again
+    private boolean metaDataMerged = false;
+
     Error(@NonNull Configuration config, @NonNull Throwable exc,
           HandledState handledState, @NonNull Severity severity,
           Session session, ThreadState threadState) {
@@ -71,13 +84,13 @@ public class Error implements JsonStream.Streamable {
 
     @Override
     public void toStream(@NonNull JsonStream writer) throws IOException {
-        // Merge error metaData into global metadata and apply filters
-        MetaData mergedMetaData = MetaData.merge(config.getMetaData(), metaData);
-
         // Write error basics
         writer.beginObject();
         writer.name("context").value(context);
-        writer.name("metaData").value(mergedMetaData);
+
+        if (!writeRawSection(writer, "metaData")) {
+            writer.name("metaData").value(getMergedMetaData());
+        }
 
         writer.name("severity").value(severity);
         writer.name("severityReason").value(handledState);
@@ -96,15 +109,23 @@ public class Error implements JsonStream.Streamable {
         writer.name("exceptions").value(exceptions);
 
         // Write user info
-        writer.name("user").value(user);
+        if (!writeRawSection(writer, "user")) {
+            writer.name("user").value(user);
+        }
 
         // Write diagnostics
-        writer.name("app").value(appData);
-        writer.name("device").value(deviceData);
-        writer.name("breadcrumbs").value(breadcrumbs);
+        if (!writeRawSection(writer, "app")) {
+            writer.name("app").value(appData);
+        }
+        if (!writeRawSection(writer, "device")) {
+            writer.name("device").value(deviceData);
+        }
+        if (!writeRawSection(writer, "breadcrumbs")) {
+            writer.name("breadcrumbs").value(breadcrumbs);
+        }
         writer.name("groupingHash").value(groupingHash);
 
-        if (config.getSendThreads()) {
+        if (config.getSendThreads() && !writeRawSection(writer, "threads")) {
             writer.name("threads").value(threadState);
         }
 
@@ -123,6 +144,58 @@ public class Error implements JsonStream.Streamable {
         writer.endObject();
     }
 
+    private boolean writeRawSection(JsonStream writer, String name) throws IOException {
+        if (rawSections == null || !rawSections.contains(name)) {
+            return false;
+        }
+        writer.name(name);
+        rawSections.write(name, writer);
+        return true;
+    }
+
+    void setRawSections(@Nullable JsonSections rawSections) {
+        this.rawSections = rawSections;
+    }
+
+    /**
+     * Parses a section of a stored report the first time that it is accessed
+     */
+    private void inflate(String name) {
+        if (rawSections != null && rawSections.contains(name)) {
+            try {
+                ErrorReader.readSection(this, rawSections, name);
+            } catch (IOException exception) {
+                Logger.warn("Failed to read " + name + " from stored error", exception);
+            }
+            rawSections.remove(name);
+        }
+    }
+
+    /**
+     * Parses the metaData of a stored report the first time that it is accessed. Unlike other
+     * sections, the stored section is still copied until the metaData is changed, so that
+     * reading the metaData does not change the payload.
+     */
+    private void inflateMetaData() {
+        if (!metaDataMerged && rawSections != null && rawSections.contains("metaData")) {
+            try {
+                ErrorReader.readSection(this, rawSections, "metaData");
+            } catch (IOException exception) {
+                Logger.warn("Failed to read metaData from stored error", exception);
+                rawSections.remove("metaData");
+            }
+        }
+    }
+
+    /**
+     * Discards a section of a stored report which has been replaced
+     */
+    private void discard(String name) {
+        if (rawSections != null) {
+            rawSections.remove(name);
+        }
+    }
+
     boolean isIncomplete() {
         return incomplete;
     }
@@ -207,10 +280,12 @@ public class Error implements JsonStream.Streamable {
      * @param name  the name of the user
      */
     public void setUser(@Nullable String id, @Nullable String email, @Nullable String name) {
+        discard("user");
         this.user = new User(id, email, name);
     }
 
     void setUser(@NonNull User user) {
+        discard("user");
         this.user = user;
     }
 
@@ -219,6 +294,7 @@ public class Error implements JsonStream.Streamable {
      */
     @NonNull
     public User getUser() {
+        inflate("user");
         return user;
     }
 
@@ -228,6 +304,7 @@ public class Error implements JsonStream.Streamable {
      * @param id the id of the user
      */
     public void setUserId(@Nullable String id) {
+        inflate("user");
         this.user = new User(this.user);
         this.user.setId(id);
     }
@@ -238,6 +315,7 @@ public class Error implements JsonStream.Streamable {
      * @param email the email address of the user
      */
     public void setUserEmail(@Nullable String email) {
+        inflate("user");
         this.user = new User(this.user);
         this.user.setEmail(email);
     }
@@ -248,6 +326,7 @@ public class Error implements JsonStream.Streamable {
      * @param name the name of the user
      */
     public void setUserName(@Nullable String name) {
+        inflate("user");
         this.user = new User(this.user);
         this.user.setName(name);
     }
@@ -266,6 +345,7 @@ public class Error implements JsonStream.Streamable {
      * @param value   the contents of the diagnostic information
      */
     public void addToTab(@NonNull String tabName, @NonNull String key, @Nullable Object value) {
+        inflateMetaData();
         metaData.addToTab(tabName, key, value);
     }
 
@@ -275,6 +355,7 @@ public class Error implements JsonStream.Streamable {
      * @param tabName the dashboard tab to remove diagnostic data from
      */
     public void clearTab(@NonNull String tabName) {
+        inflateMetaData();
         metaData.clearTab(tabName);
     }
 
@@ -288,9 +369,24 @@ public class Error implements JsonStream.Streamable {
      */
     @NonNull
     public MetaData getMetaData() {
+        inflateMetaData();
         return metaData;
     }
 
+    /**
+     * Gets the metaData which is sent with this error, which is merged into the global metaData
+     * and has its filters applied
+     */
+    @NonNull
+    MetaData getMergedMetaData() {
+        MetaData metaData = getMetaData();
+
+        if (metaDataMerged) {
+            return MetaData.mergeSettings(config.getMetaData(), metaData);
+        }
+        return MetaData.merge(config.getMetaData(), metaData);
+    }
+
     /**
      * Set additional diagnostic MetaData to send with this Error. This will
      * be merged with any global MetaData you set on the Client.
@@ -303,6 +399,8 @@ public class Error implements JsonStream.Streamable {
      * @see Error#getMetaData
      */
     public void setMetaData(@NonNull MetaData metaData) {
+        discard("metaData");
+        metaDataMerged = false;
         //noinspection ConstantConditions
         if (metaData == null) {
             this.metaData = new MetaData();
@@ -311,6 +409,31 @@ public class Error implements JsonStream.Streamable {
         }
     }
 
+    /**
+     * Sets metaData which already includes the global metaData, such as a trimmed copy of the
+     * merged metaData
+     */
+    void setMergedMetaData(@NonNull MetaData metaData) {
+        discard("metaData");
+        this.metaData = metaData;
+        metaDataMerged = true;
+    }
+
+    /**
+     * Sets the metaData read from a stored report, which includes the global metaData from when
+     * the error occurred. The stored section is discarded once the metaData is changed.
+     */
+    void setStoredMetaData(@NonNull MetaData metaData) {
+        this.metaData = metaData;
+        metaDataMerged = true;
+        metaData.addObserver(new Observer() {
+            @Override
+            public void update(Observable observable, Object arg) {
+                discard("metaData");
+            }
+        });
+    }
+
     /**
      * Get the class name from the exception contained in this Error report.
      */
@@ -356,6 +479,7 @@ public class Error implements JsonStream.Streamable {
      * @param id the device id
      */
     public void setDeviceId(@Nullable String id) {
+        inflate("device");
         deviceData.put("id", id);
     }
 
@@ -366,6 +490,7 @@ public class Error implements JsonStream.Streamable {
      */
     @NonNull
     Map<String, Object> getAppData() {
+        inflate("app");
         return appData;
     }
     /**
@@ -376,18 +501,26 @@ public class Error implements JsonStream.Streamable {
 
     @NonNull
     public Map<String, Object> getDeviceData() {
+        inflate("device");
         return deviceData;
     }
 
     void setAppData(@NonNull Map<String, Object> appData) {
+        discard("app");
         this.appData = appData;
     }
 
     void setDeviceData(@NonNull Map<String, Object> deviceData) {
+        discard("device");
         this.deviceData = deviceData;
     }
 
+    Breadcrumbs getBreadcrumbs() {
+        return breadcrumbs;
+    }
+
     void setBreadcrumbs(Breadcrumbs breadcrumbs) {
+        discard("breadcrumbs");
         this.breadcrumbs = breadcrumbs;
     }
 
@@ -404,6 +537,10 @@ public class Error implements JsonStream.Streamable {
         return exceptions;
     }
 
+    ThreadState getThreadState() {
+        return threadState;
+    }
+
     Session getSession() {
         return session;
     }
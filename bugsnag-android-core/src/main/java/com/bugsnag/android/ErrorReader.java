@@ -3,22 +3,32 @@ package com.bugsnag.android;
 import android.util.JsonReader;
 import androidx.annotation.NonNull;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 
 class ErrorReader {
 
+    /**
+     * The sections of a stored error which are parsed when it is read
+     */
+    private static final String[] EAGER_SECTIONS = {
+        "context", "exceptions", "groupingHash", "projectPackages", "session", "severity",
+        "severityReason", "unhandled"
+    };
+
     /**
      * Parses an {@link Error} cached as JSON into an Error object.
+     * <p>
+     * Only the fields which are needed to construct the error are parsed immediately. The
+     * metadata, user, app and device sections are parsed the first time they are accessed, and
+     * the breadcrumbs and threads are never parsed. Sections which are not parsed are copied
+     * from the file unchanged when the error is serialized.
      *
      * @throws IOException if the file cannot be parsed into a valid JSON object,
      *                     such as if the JSON syntax is invalid or a required
@@ -26,40 +36,30 @@ class ErrorReader {
      */
     static Error readError(@NonNull Configuration config, @NonNull File errorFile)
             throws IOException {
+        PayloadEnvelope envelope = PayloadEnvelope.find(errorFile);
+        JsonSections sections = envelope == null
+            ? JsonSections.scan(errorFile)
+            : JsonSections.scan(errorFile, envelope.getPayloadOffset(),
+                                envelope.getPayloadLength());
         JsonReader reader = null;
 
         try {
-            User user = null;
             Exceptions exceptions = null;
             Severity severity = Severity.ERROR;
             Session session = null;
             String context = null;
             String groupingHash = null;
-            Map<String, Object> appData = null;
-            Map<String, Object> deviceData = null;
-            MetaData metaData = null;
-            ThreadState threadState = null;
-            Breadcrumbs crumbs = null;
             ArrayList<String> severityReasonValues = null;
             List<String> projectPackages = Collections.emptyList();
             boolean unhandled = false;
 
-            reader = new JsonReader(new BufferedReader(new FileReader(errorFile)));
+            reader = sections.openObject(EAGER_SECTIONS);
             reader.beginObject();
             while (reader.hasNext()) {
                 switch (reader.nextName()) {
-                    case "app":
-                        appData = jsonObjectToMap(reader);
-                        break;
-                    case "breadcrumbs":
-                        crumbs = readBreadcrumbs(config, reader);
-                        break;
                     case "context":
                         context = reader.nextString();
                         break;
-                    case "device":
-                        deviceData = jsonObjectToMap(reader);
-                        break;
                     case "projectPackages":
                         projectPackages = jsonArrayToList(reader);
                         break;
@@ -69,9 +69,6 @@ class ErrorReader {
                     case "groupingHash":
                         groupingHash = reader.nextString();
                         break;
-                    case "metaData":
-                        metaData = new MetaData(jsonObjectToMap(reader));
-                        break;
                     case "session":
                         session = readSession(reader);
                         break;
@@ -81,15 +78,9 @@ class ErrorReader {
                     case "severityReason":
                         severityReasonValues = readSeverityReason(reader);
                         break;
-                    case "threads":
-                        threadState = readThreadState(reader);
-                        break;
                     case "unhandled":
                         unhandled = reader.nextBoolean();
                         break;
-                    case "user":
-                        user = readUser(reader);
-                        break;
                     default:
                         reader.skipValue();
                 }
@@ -105,16 +96,12 @@ class ErrorReader {
                                                          unhandled, severityReasonAttribute);
 
             Error error = new Error(config, exceptions.getException(), handledState, severity,
-                                    session, threadState);
+                                    session, null);
             error.getExceptions().setExceptionType(exceptions.getExceptionType());
             error.setProjectPackages(projectPackages.toArray(new String[]{}));
-            error.setUser(user);
             error.setContext(context);
             error.setGroupingHash(groupingHash);
-            error.setAppData(appData);
-            error.setMetaData(metaData);
-            error.setDeviceData(deviceData);
-            error.setBreadcrumbs(crumbs);
+            error.setRawSections(sections);
 
             return error;
         } finally {
@@ -126,61 +113,35 @@ class ErrorReader {
         }
     }
 
-    private static Breadcrumbs readBreadcrumbs(Configuration config, JsonReader reader)
-        throws IOException {
-        Breadcrumbs crumbs = new Breadcrumbs(config);
-        reader.beginArray();
-        while (reader.hasNext()) {
-            Breadcrumb breadcrumb = readBreadcrumb(reader);
-
-            if (breadcrumb != null) {
-                crumbs.add(breadcrumb);
-            }
-        }
-        reader.endArray();
-        return crumbs;
-    }
+    /**
+     * Parses a section of a stored error which was not parsed by
+     * {@link #readError(Configuration, File)}, and sets it on the error
+     */
+    static void readSection(@NonNull Error error, @NonNull JsonSections sections,
+                            @NonNull String name) throws IOException {
+        JsonReader reader = sections.open(name);
 
-    private static Breadcrumb readBreadcrumb(JsonReader reader) throws IOException {
-        String name = null;
-        String type = null;
-        Map<String, String> metadata = new HashMap<>();
-        Date captureDate = null;
-        reader.beginObject();
-        while (reader.hasNext()) {
-            switch (reader.nextName()) {
-                case "name":
-                    name = reader.nextString();
-                    break;
-                case "timestamp":
-                    try {
-                        captureDate = DateUtils.fromIso8601(reader.nextString());
-                    } catch (Exception ex) {
-                        throw new IOException("Failed to parse breadcrumb timestamp: ", ex);
-                    }
+        try {
+            switch (name) {
+                case "app":
+                    error.setAppData(jsonObjectToMap(reader));
                     break;
-                case "type":
-                    type = reader.nextString().toUpperCase(Locale.US);
+                case "device":
+                    error.setDeviceData(jsonObjectToMap(reader));
                     break;
                 case "metaData":
-                    reader.beginObject();
-                    while (reader.hasNext()) {
-                        metadata.put(reader.nextName(), reader.nextString());
-                    }
-                    reader.endObject();
+                    error.setStoredMetaData(new MetaData(jsonObjectToMap(reader)));
                     break;
-                default:
-                    reader.skipValue();
+                case "user":
+                    error.setUser(readUser(reader));
                     break;
+                default:
+                    throw new IllegalArgumentException("Section is never parsed: " + name);
             }
-        }
-
-        reader.endObject();
-        if (name != null && captureDate != null && type != null) {
-            return new Breadcrumb(name, BreadcrumbType.valueOf(type),
-                                      captureDate, metadata);
-        } else {
-            return null;
+        } finally {
+            try {
+                reader.close();
+            } catch (Exception ex) { /* nothing to do here if this fails */ }
         }
     }
 
@@ -397,58 +358,6 @@ class ErrorReader {
         return user;
     }
 
-    private static ThreadState readThreadState(JsonReader reader)
-        throws IOException {
-        List<CachedThread> threads = new ArrayList<>();
-        reader.beginArray();
-        while (reader.hasNext()) {
-            CachedThread cachedThread = readThread(reader);
-
-            if (cachedThread != null) {
-                threads.add(cachedThread);
-            }
-        }
-        reader.endArray();
-        return new ThreadState(threads.toArray(new CachedThread[0]));
-    }
-
-    private static CachedThread readThread(JsonReader reader) throws IOException {
-        long id = 0;
-        String name = null;
-        String type = null;
-        boolean errorReportingThread = false;
-        List<Map<String, Object>> frames = null;
-        reader.beginObject();
-        while (reader.hasNext()) {
-            switch (reader.nextName()) {
-                case "id":
-                    id = reader.nextLong();
-                    break;
-                case "name":
-                    name = reader.nextString();
-                    break;
-                case "type":
-                    type = reader.nextString();
-                    break;
-                case "stacktrace":
-                    frames = readStackFrames(reader);
-                    break;
-                case "errorReportingThread":
-                    errorReportingThread = reader.nextBoolean();
-                    break;
-                default:
-                    reader.skipValue();
-                    break;
-            }
-        }
-        reader.endObject();
-        if (type != null && frames != null) {
-            return new CachedThread(id, name, type, errorReportingThread, frames);
-        } else {
-            return null;
-        }
-    }
-
     private static Map<String, Object> jsonObjectToMap(JsonReader reader) throws IOException {
         Map<String, Object> data = new HashMap<>();
         reader.beginObject();
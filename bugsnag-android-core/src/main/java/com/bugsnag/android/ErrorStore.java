@@ -2,9 +2,12 @@ package com.bugsnag.android;
 
 import android.content.Context;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -13,8 +16,15 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Store and flush Error reports which couldn't be sent immediately due to
@@ -23,11 +33,43 @@ import java.util.concurrent.Semaphore;
 class ErrorStore extends FileStore<Error> {
 
     private static final String STARTUP_CRASH = "_startupcrash";
-    private static final long LAUNCH_CRASH_TIMEOUT_MS = 2000;
-    private static final int LAUNCH_CRASH_POLL_MS = 50;
+    private static final String HANDLED = "_handled";
+
+    // flush priorities, highest first. Reports which have waited for longer than the promotion
+    // age are sent before all but launch crashes, so that a steady stream of higher priority
+    // reports cannot prevent them from ever being sent.
+    static final int PRIORITY_LAUNCH_CRASH = 0;
+    static final int PRIORITY_PROMOTED = 1;
+    static final int PRIORITY_UNHANDLED = 2;
+    static final int PRIORITY_HANDLED_ERROR = 3;
+    static final int PRIORITY_HANDLED_WARNING = 4;
+    static final int PRIORITY_HANDLED_INFO = 5;
+    static final long PRIORITY_PROMOTION_AGE_MS = 60 * 60 * 1000;
+    private static final String RETRY_STATE_FILENAME = "bugsnag-errors-retry.properties";
+    private static final String AGGREGATION_STATE_FILENAME =
+        "bugsnag-errors-aggregation.properties";
+
+    private static final ThreadFactory FLUSH_THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @NonNull
+        public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(runnable, "Bugsnag Flush Thread #" + count.getAndIncrement());
+        }
+    };
 
-    volatile boolean flushOnLaunchCompleted = false;
+    private volatile CountDownLatch launchCrashFlushLatch = new CountDownLatch(0);
     private final Semaphore semaphore = new Semaphore(1);
+    final RetryScheduler retryScheduler;
+    private long scheduledRetryMs = 0;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushReports(findStoredFiles());
+        }
+    };
+    final ReportAggregator aggregator;
 
     static final Comparator<File> ERROR_REPORT_COMPARATOR = new Comparator<File>() {
         @Override
@@ -41,14 +83,107 @@ class ErrorStore extends FileStore<Error> {
             if (rhs == null) {
                 return -1;
             }
-            String lhsName = lhs.getName().replaceAll(STARTUP_CRASH, "");
-            String rhsName = rhs.getName().replaceAll(STARTUP_CRASH, "");
-            return lhsName.compareTo(rhsName);
+            return getSortKey(lhs.getName()).compareTo(getSortKey(rhs.getName()));
         }
     };
 
+    /**
+     * Returns the filename without the launch crash marker, so that reports are ordered by
+     * timestamp. This avoids a regex, as it is called for every comparison.
+     */
+    private static String getSortKey(String filename) {
+        int index = filename.indexOf(STARTUP_CRASH);
+
+        if (index == -1) {
+            return filename;
+        }
+        return filename.substring(0, index) + filename.substring(index + STARTUP_CRASH.length());
+    }
+
     ErrorStore(@NonNull Configuration config, @NonNull Context appContext, Delegate delegate) {
         super(config, appContext, "/bugsnag-errors/", 128, ERROR_REPORT_COMPARATOR, delegate);
+        File stateFile = null;
+        File aggregationFile = null;
+
+        if (storeDirectory != null) {
+            File parent = new File(storeDirectory).getParentFile();
+            stateFile = new File(parent, RETRY_STATE_FILENAME);
+            aggregationFile = new File(parent, AGGREGATION_STATE_FILENAME);
+        }
+        retryScheduler = new RetryScheduler(stateFile);
+        aggregator = new ReportAggregator(aggregationFile);
+    }
+
+    /**
+     * Writes an error to disk, unless aggregation is enabled and an identical error was stored
+     * within the aggregation window, in which case the occurrence is counted against the stored
+     * report instead.
+     */
+    @Nullable
+    @Override
+    String write(@NonNull JsonStream.Streamable streamable,
+                 @Nullable PayloadBuffer serialized) {
+        long windowMs = config.getStoredErrorAggregationWindowMs();
+
+        if (windowMs <= 0 || !(streamable instanceof Error) || storeDirectory == null) {
+            return super.write(streamable, serialized);
+        }
+        String fingerprint =
+            ReportAggregator.fingerprint((Error) streamable, config.getProjectPackages());
+        long now = System.currentTimeMillis();
+
+        // hold the lock so that the stored report cannot be queued for delivery meanwhile
+        lock.lock();
+        try {
+            File aggregate = findAggregate(fingerprint, windowMs, now);
+
+            if (aggregate == null) {
+                return super.write(streamable, serialized);
+            }
+            aggregator.recordOccurrence(aggregate, getTimestamp(aggregate.getName()), now);
+            PipelineMetrics.getInstance().recordErrorAggregated();
+            Logger.info("Counted repeated error against stored report " + aggregate.getName());
+            return aggregate.getAbsolutePath();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores an error wrapped in the body of the request which delivers it, if its filename
+     * was marked for an envelope
+     */
+    @Override
+    long writePayload(@NonNull String filename, @NonNull OutputStream out,
+                      @NonNull JsonStream.Streamable streamable,
+                      @NonNull PayloadBuffer payload) throws IOException {
+        String apiKey = config.getApiKey();
+
+        if (PayloadEnvelope.isEnveloped(new File(filename))
+            && PayloadEnvelope.canEnvelope(apiKey)) {
+            return PayloadEnvelope.write(out, apiKey, payload);
+        }
+        return super.writePayload(filename, out, streamable, payload);
+    }
+
+    /**
+     * Finds the most recently stored report with the given fingerprint which is not being
+     * delivered, and which was first stored within the aggregation window
+     */
+    @Nullable
+    private File findAggregate(String fingerprint, long windowMs, long nowMs) {
+        List<File> files = getIndexedFiles();
+
+        for (int k = files.size() - 1; k >= 0; k--) {
+            File file = files.get(k);
+
+            if (ReportAggregator.hasFingerprint(file, fingerprint)
+                && !queuedFiles.contains(file)
+                && aggregator.isInWindow(file, getTimestamp(file.getName()), windowMs, nowMs)) {
+                return file;
+            }
+        }
+        return null;
     }
 
     void flushOnLaunch() {
@@ -60,42 +195,83 @@ class ErrorStore extends FileStore<Error> {
             storedFiles.removeAll(crashReports);
             cancelQueuedFiles(storedFiles);
 
-            if (!crashReports.isEmpty()) {
-
-                // Block the main thread for a 2 second interval as the app may crash very soon.
-                // The request itself will run in a background thread and will continue after the 2
-                // second period until the request completes, or the app crashes.
-                flushOnLaunchCompleted = false;
-                Logger.info("Attempting to send launch crash reports");
+            if (!crashReports.isEmpty() && flushLaunchCrashReports(crashReports)) {
+                return; // remaining errors are flushed once the launch crashes have been sent
+            }
+        }
 
-                try {
-                    Async.run(new Runnable() {
-                        @Override
-                        public void run() {
-                            flushReports(crashReports);
-                            flushOnLaunchCompleted = true;
-                        }
-                    });
-                } catch (RejectedExecutionException ex) {
-                    Logger.warn("Failed to flush launch crash reports", ex);
-                    flushOnLaunchCompleted = true;
-                }
+        flushAsync(); // flush any remaining errors async that weren't delivered
+    }
 
-                long waitMs = 0;
+    /**
+     * Sends launch crash reports in the background, and then flushes any remaining errors.
+     * Unless the launch crash flush is configured to be async, this blocks the calling thread
+     * until the reports are sent or the timeout elapses, as the app may crash very soon. The
+     * request continues after the timeout until it completes, or the app crashes.
+     *
+     * @return true if the reports were scheduled to be sent
+     */
+    private boolean flushLaunchCrashReports(final List<File> crashReports) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        launchCrashFlushLatch = latch;
+        Logger.info("Attempting to send launch crash reports");
 
-                while (!flushOnLaunchCompleted && waitMs < LAUNCH_CRASH_TIMEOUT_MS) {
+        try {
+            Async.run(Async.Lane.UNHANDLED_ERROR, new Runnable() {
+                @Override
+                public void run() {
                     try {
-                        Thread.sleep(LAUNCH_CRASH_POLL_MS);
-                        waitMs += LAUNCH_CRASH_POLL_MS;
-                    } catch (InterruptedException exception) {
-                        Logger.warn("Interrupted while waiting for launch crash report request");
+                        flushReports(crashReports);
+                    } finally {
+                        latch.countDown();
                     }
+                    flushAsync();
                 }
-                Logger.info("Continuing with Bugsnag initialisation");
-            }
+            });
+        } catch (RejectedExecutionException ex) {
+            Logger.warn("Failed to flush launch crash reports", ex);
+            latch.countDown();
+            return false;
         }
 
-        flushAsync(); // flush any remaining errors async that weren't delivered
+        if (!config.getLaunchCrashFlushAsync()) {
+            awaitLaunchCrashFlush(config.getLaunchCrashFlushTimeoutMs());
+            Logger.info("Continuing with Bugsnag initialisation");
+        }
+        return true;
+    }
+
+    /**
+     * Blocks until the launch crash reports found by {@link #flushOnLaunch()} have been sent,
+     * or until the timeout elapses.
+     *
+     * @return true if there are no launch crash reports waiting to be sent
+     */
+    boolean awaitLaunchCrashFlush(long timeoutMs) {
+        CountDownLatch latch = launchCrashFlushLatch;
+
+        if (latch.getCount() == 0) {
+            return true;
+        }
+        long startNs = System.nanoTime();
+
+        try {
+            boolean completed = latch.await(timeoutMs, TimeUnit.MILLISECONDS);
+            long waitMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+
+            if (completed) {
+                Logger.info(String.format(Locale.US,
+                    "Launch crash reports sent after waiting %dms", waitMs));
+            } else {
+                Logger.warn(String.format(Locale.US,
+                    "Timed out after %dms waiting for launch crash reports", waitMs));
+            }
+            return completed;
+        } catch (InterruptedException exception) {
+            Logger.warn("Interrupted while waiting for launch crash report request");
+            Thread.currentThread().interrupt();
+            return false;
+        }
     }
 
     /**
@@ -107,48 +283,329 @@ class ErrorStore extends FileStore<Error> {
         }
 
         try {
-            Async.run(new Runnable() {
-                @Override
-                public void run() {
-                    flushReports(findStoredFiles());
-                }
-            });
+            Async.run(Async.Lane.FLUSH, flushTask);
         } catch (RejectedExecutionException exception) {
             Logger.warn("Failed to flush all on-disk errors, retaining unsent errors for later.");
         }
     }
 
+    /**
+     * Schedules a flush for when a deferred report is due, unless a flush is already scheduled
+     * by then, so that reports are retried without waiting for another flush to be triggered
+     */
+    private synchronized void scheduleRetry(long dueMs, long nowMs) {
+        if (scheduledRetryMs > nowMs && scheduledRetryMs <= dueMs) {
+            return;
+        }
+
+        try {
+            Async.runDelayed(Async.Lane.FLUSH, flushTask, dueMs - nowMs);
+            scheduledRetryMs = dueMs;
+        } catch (RejectedExecutionException exception) {
+            Logger.warn("Failed to schedule retry of on-disk errors", exception);
+        }
+    }
+
     void flushReports(Collection<File> storedReports) {
-        if (!storedReports.isEmpty() && semaphore.tryAcquire(1)) {
+        List<File> dueReports = orderForFlush(findDueReports(storedReports),
+            System.currentTimeMillis());
+
+        if (!dueReports.isEmpty() && semaphore.tryAcquire(1)) {
+            List<List<File>> batches;
+
+            if (isBatchingEnabled()) {
+                batches = partitionBatches(dueReports, getIndexedLengths(dueReports),
+                    config.getMaxBatchedEvents(), config.getMaxBatchSizeBytes());
+            } else {
+                batches = new ArrayList<>();
+
+                for (File errorFile : dueReports) {
+                    batches.add(Collections.singletonList(errorFile));
+                }
+            }
+            int concurrency = Math.min(config.getMaxConcurrentFlushRequests(), batches.size());
+            beginFlush(concurrency);
+
             try {
                 Logger.info(String.format(Locale.US,
-                    "Sending %d saved error(s) to Bugsnag", storedReports.size()));
+                    "Sending %d saved error(s) to Bugsnag", dueReports.size()));
 
-                for (File errorFile : storedReports) {
-                    flushErrorReport(errorFile);
+                if (concurrency > 1) {
+                    flushConcurrently(batches, concurrency);
+                } else {
+                    for (List<File> batch : batches) {
+                        flushIfDue(batch);
+                    }
                 }
             } finally {
+                endFlush();
+                retryScheduler.save(storeDirectory);
                 semaphore.release(1);
             }
         }
     }
 
-    private void flushErrorReport(File errorFile) {
+    /**
+     * Sends batches on up to the given number of threads at once. Once any request fails, the
+     * in-flight requests are allowed to finish and the remaining batches are sent serially on
+     * the calling thread, so that a failing connection is not hit by several requests at once.
+     */
+    private void flushConcurrently(List<List<File>> batches, final int concurrency) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(concurrency, concurrency,
+            0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), FLUSH_THREAD_FACTORY);
+        final Semaphore permits = new Semaphore(concurrency);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        boolean serial = false;
+
+        try {
+            for (final List<File> batch : batches) {
+                if (!serial) {
+                    permits.acquireUninterruptibly();
+
+                    // checked after acquiring a permit, as a request may fail while waiting
+                    if (failed.get()) {
+                        permits.release();
+                        Logger.info("Failed to send saved error(s), sending remainder serially");
+                        permits.acquireUninterruptibly(concurrency); // wait for in-flight requests
+                        permits.release(concurrency);
+                        serial = true;
+                    }
+                }
+                if (serial) {
+                    flushIfDue(batch);
+                    continue;
+                }
+
+                try {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                if (!flushIfDue(batch)) {
+                                    failed.set(true);
+                                }
+                            } finally {
+                                permits.release();
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException exception) {
+                    permits.release();
+                    flushIfDue(batch);
+                }
+            }
+        } finally {
+            executor.shutdown();
+            permits.acquireUninterruptibly(concurrency); // wait for in-flight requests
+            permits.release(concurrency);
+        }
+    }
+
+    /**
+     * Sends a batch of reports, skipping any which are no longer due.
+     *
+     * @return false if a request failed and the reports will be retried later
+     */
+    private boolean flushIfDue(List<File> batch) {
+        List<File> dueBatch = findDueReports(batch);
+        return dueBatch.isEmpty() || flushBatch(dueBatch);
+    }
+
+    /**
+     * Removes reports whose retry backoff has not yet expired from the queue so that they are
+     * picked up by a later flush. A failed request can extend the backoff of files which are
+     * yet to be sent in the same flush, so this is checked again before each request.
+     *
+     * @return the reports which can be sent now
+     */
+    private List<File> findDueReports(Collection<File> reports) {
+        long now = System.currentTimeMillis();
+        List<File> dueReports = new ArrayList<>();
+        List<File> deferred = new ArrayList<>();
+        long nextDueMs = Long.MAX_VALUE;
+
+        for (File report : reports) {
+            if (retryScheduler.isDue(report, now)) {
+                dueReports.add(report);
+            } else {
+                deferred.add(report);
+                nextDueMs = Math.min(nextDueMs, retryScheduler.getNextAttemptMs(report));
+            }
+        }
+        if (!deferred.isEmpty()) {
+            Logger.info(String.format(Locale.US,
+                "Deferring %d saved error(s) until retry backoff expires", deferred.size()));
+            cancelQueuedFiles(deferred);
+            scheduleRetry(nextDueMs, now);
+        }
+        return dueReports;
+    }
+
+    /**
+     * Stored reports can only be sent in batches when no BeforeSend callbacks need to run,
+     * as each callback receives a single deserialized report.
+     */
+    private boolean isBatchingEnabled() {
+        return config.getMaxBatchedEvents() > 1 && config.getBeforeSendTasks().isEmpty();
+    }
+
+    /**
+     * Splits stored reports into batches which contain at most maxEvents files, and whose
+     * combined size does not exceed maxBytes. A file larger than maxBytes forms its own batch.
+     * Files are sized by their indexed lengths, so that the disk is not touched for each file.
+     */
+    static List<List<File>> partitionBatches(Collection<File> files, Map<File, Long> lengths,
+                                             int maxEvents, long maxBytes) {
+        List<List<File>> batches = new ArrayList<>();
+        List<File> batch = new ArrayList<>();
+        long batchBytes = 0;
+
+        for (File file : files) {
+            Long length = lengths.get(file);
+
+            if (length == null) {
+                length = 0L;
+            }
+
+            if (!batch.isEmpty() && (batch.size() >= maxEvents || batchBytes + length > maxBytes)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(file);
+            batchBytes += length;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private boolean flushBatch(List<File> batch) {
+        if (batch.size() == 1) {
+            return flushErrorReport(batch.get(0));
+        }
+        List<File> aggregated = findAggregatedReports(batch);
+
+        if (!aggregated.isEmpty()) {
+            // aggregated reports need their counts added, so are sent individually
+            boolean delivered = true;
+
+            for (File errorFile : aggregated) {
+                delivered &= flushErrorReport(errorFile);
+            }
+            List<File> remaining = new ArrayList<>(batch);
+            remaining.removeAll(aggregated);
+            return (remaining.isEmpty() || flushBatch(remaining)) && delivered;
+        }
+        List<File> unreadable = findUnreadableReports(batch);
+
+        if (!unreadable.isEmpty()) {
+            // a file which was cut short would make the whole body invalid, so is sent alone
+            boolean delivered = flushIndividually(unreadable);
+            List<File> remaining = new ArrayList<>(batch);
+            remaining.removeAll(unreadable);
+            return (remaining.isEmpty() || flushBatch(remaining)) && delivered;
+        }
+
         try {
-            Report report;
+            Report report = new Report(config.getApiKey(), batch);
+            config.getDelivery().deliver(report, config);
+
+            deleteStoredFiles(batch);
+            PipelineMetrics.getInstance().recordFilesFlushed(batch.size());
+            Logger.info(String.format(Locale.US,
+                "Deleting %d sent error files", batch.size()));
+            return true;
+        } catch (DeliveryFailureException exception) {
+            if (isUnreadable(exception)) {
+                Logger.warn("Failed to read batch of saved errors, sending individually",
+                    exception);
+                return flushIndividually(batch);
+            }
+            retryScheduler.onFailure(batch, exception.getRetryAfterMs(),
+                System.currentTimeMillis());
+            cancelQueuedFiles(batch);
+            Logger.warn("Could not send previously saved error(s)"
+                + " to Bugsnag, will try again later", exception);
+            return false;
+        } catch (Exception exception) {
+            // isolate the file which could not be read by sending the batch individually
+            Logger.warn("Failed to send batch of saved errors, sending individually", exception);
+            return flushIndividually(batch);
+        }
+    }
+
+    private boolean flushIndividually(List<File> files) {
+        boolean delivered = true;
+
+        for (File errorFile : files) {
+            delivered &= flushErrorReport(errorFile);
+        }
+        return delivered;
+    }
+
+    /**
+     * Finds the reports in a batch which are not complete JSON objects, such as a file which was
+     * cut short because the app was killed while writing it
+     */
+    private List<File> findUnreadableReports(Collection<File> batch) {
+        List<File> unreadable = new ArrayList<>();
 
-            if (config.getBeforeSendTasks().isEmpty()) {
-                report = new Report(config.getApiKey(), errorFile);
+        for (File errorFile : batch) {
+            try {
+                PayloadEnvelope envelope = PayloadEnvelope.find(errorFile);
+
+                if (envelope == null) {
+                    JsonSections.scan(errorFile);
+                } else {
+                    JsonSections.scan(errorFile, envelope.getPayloadOffset(),
+                        envelope.getPayloadLength());
+                }
+            } catch (IOException exception) {
+                Logger.warn("Stored error " + errorFile.getName() + " could not be read");
+                unreadable.add(errorFile);
+            }
+        }
+        return unreadable;
+    }
+
+    /**
+     * Whether a delivery failed because a stored file could not be read, rather than because
+     * the request failed. This includes a file which was deleted by something other than the
+     * store, which is only noticed when it is read as the index is trusted.
+     */
+    private static boolean isUnreadable(DeliveryFailureException exception) {
+        Throwable cause = exception.getCause();
+        return cause instanceof UnreadablePayloadException
+            || cause instanceof FileNotFoundException;
+    }
+
+    /**
+     * Sends a single stored report
+     *
+     * @return false if the request failed and the report will be retried later
+     */
+    private boolean flushErrorReport(File errorFile) {
+        try {
+            Report report = null;
+
+            if (config.getBeforeSendTasks().isEmpty() && aggregator.getCount(errorFile) <= 1) {
+                if (!deliverEnvelope(errorFile)) {
+                    report = new Report(config.getApiKey(), errorFile);
+                }
             } else {
                 Error error = ErrorReader.readError(config, errorFile);
+                aggregator.addToMetaData(errorFile, error);
                 report = new Report(config.getApiKey(), error);
 
                 for (BeforeSend beforeSend : config.getBeforeSendTasks()) {
                     try {
                         if (!beforeSend.run(report)) {
                             deleteStoredFiles(Collections.singleton(errorFile));
+                            PipelineMetrics.getInstance().recordFilesDiscarded(1);
                             Logger.info("Deleting cancelled error file " + errorFile.getName());
-                            return;
+                            return true;
                         }
                     } catch (Throwable ex) {
                         Logger.warn("BeforeSend threw an Exception", ex);
@@ -156,22 +613,193 @@ class ErrorStore extends FileStore<Error> {
                 }
             }
 
-            config.getDelivery().deliver(report, config);
+            if (report != null) {
+                config.getDelivery().deliver(report, config);
+            }
 
             deleteStoredFiles(Collections.singleton(errorFile));
+            PipelineMetrics.getInstance().recordFilesFlushed(1);
             Logger.info("Deleting sent error file " + errorFile.getName());
         } catch (DeliveryFailureException exception) {
+            if (isUnreadable(exception)) {
+                discardUnreadable(errorFile, (Exception) exception.getCause());
+                return true;
+            }
+            retryScheduler.onFailure(Collections.singleton(errorFile),
+                exception.getRetryAfterMs(), System.currentTimeMillis());
             cancelQueuedFiles(Collections.singleton(errorFile));
             Logger.warn("Could not send previously saved error(s)"
                 + " to Bugsnag, will try again later", exception);
-        } catch (FileNotFoundException exc) {
-            Logger.warn("Ignoring empty file - oldest report on disk was deleted", exc);
+            return false;
         } catch (Exception exception) {
+            discardUnreadable(errorFile, exception);
+        }
+        return true;
+    }
+
+    /**
+     * Deletes a stored report which could not be read, reporting the failure unless the file
+     * was deleted by something other than the store
+     */
+    private void discardUnreadable(File errorFile, Exception exception) {
+        if (exception instanceof FileNotFoundException
+            || exception.getCause() instanceof FileNotFoundException) {
+            Logger.warn("Ignoring empty file - oldest report on disk was deleted", exception);
+        } else {
             if (delegate != null) {
                 delegate.onErrorIOFailure(exception, errorFile, "Crash Report Deserialization");
             }
-            deleteStoredFiles(Collections.singleton(errorFile));
+            PipelineMetrics.getInstance().recordFilesDiscarded(1);
+        }
+        deleteStoredFiles(Collections.singleton(errorFile));
+    }
+
+    /**
+     * Sends a report which was stored with its request body by copying the body from the file,
+     * which is only possible when using the default delivery, and when the body was written
+     * with the current API key.
+     *
+     * @return false if the report must be sent as a {@link Report} instead
+     */
+    private boolean deliverEnvelope(File errorFile)
+        throws IOException, DeliveryFailureException {
+        Delivery delivery = config.getDelivery();
+
+        if (!(delivery instanceof DefaultDelivery)) {
+            return false;
         }
+        PayloadEnvelope envelope = PayloadEnvelope.find(errorFile);
+
+        if (envelope == null || !envelope.getApiKey().equals(config.getApiKey())) {
+            return false;
+        }
+        ((DefaultDelivery) delivery).deliver(errorFile, envelope, config);
+        return true;
+    }
+
+    @Override
+    void deleteStoredFiles(Collection<File> storedFiles) {
+        super.deleteStoredFiles(storedFiles);
+
+        if (storedFiles != null) {
+            retryScheduler.remove(storedFiles);
+            aggregator.remove(storedFiles);
+        }
+    }
+
+    @Override
+    long getMaxStoreBytes() {
+        return config.getMaxStoredErrorsSizeBytes();
+    }
+
+    @Override
+    long getMaxStoreAgeMs() {
+        return config.getMaxStoredErrorAgeMs();
+    }
+
+    /**
+     * Orders reports for eviction according to the configured eviction policy. Reports stored
+     * by earlier versions of the notifier have no handled marker, and are treated as unhandled.
+     */
+    @NonNull
+    @Override
+    List<File> orderForEviction(@NonNull Collection<File> files) {
+        List<File> ordered = super.orderForEviction(files);
+
+        if (config.getStoredErrorEvictionPolicy() == EvictionPolicy.HANDLED_FIRST) {
+            // lowest priority first, the sort is stable so files remain oldest first
+            Collections.sort(ordered, new Comparator<File>() {
+                @Override
+                public int compare(File lhs, File rhs) {
+                    return getPriority(rhs) - getPriority(lhs);
+                }
+            });
+        }
+        return ordered;
+    }
+
+    /**
+     * Orders reports so that launch crashes are sent first, then unhandled errors, and then
+     * handled errors by severity. Reports which have been stored for longer than
+     * {@link #PRIORITY_PROMOTION_AGE_MS} are sent after launch crashes. Reports with the same
+     * priority remain in the order given.
+     */
+    static List<File> orderForFlush(Collection<File> files, final long nowMs) {
+        List<File> ordered = new ArrayList<>(files);
+        Collections.sort(ordered, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                return getFlushPriority(lhs, nowMs) - getFlushPriority(rhs, nowMs);
+            }
+        });
+        return ordered;
+    }
+
+    static int getFlushPriority(File file, long nowMs) {
+        int priority = getPriority(file);
+
+        if (priority > PRIORITY_PROMOTED) {
+            long timestamp = getTimestamp(file.getName());
+
+            if (timestamp > 0 && nowMs - timestamp >= PRIORITY_PROMOTION_AGE_MS) {
+                return PRIORITY_PROMOTED;
+            }
+        }
+        return priority;
+    }
+
+    /**
+     * Gets the priority of a report from the markers in its filename. Handled reports stored
+     * by earlier versions of the notifier have no severity marker, and are treated as
+     * warnings, which is the default severity of a handled error.
+     */
+    static int getPriority(File file) {
+        String name = file.getName();
+
+        if (name.endsWith(STARTUP_CRASH + ".json")) {
+            return PRIORITY_LAUNCH_CRASH;
+        }
+        int index = name.indexOf(HANDLED);
+
+        if (index == -1) {
+            return PRIORITY_UNHANDLED;
+        }
+        int severityIndex = index + HANDLED.length() + 1;
+
+        if (name.startsWith(Severity.ERROR.getName(), severityIndex)) {
+            return PRIORITY_HANDLED_ERROR;
+        } else if (name.startsWith(Severity.INFO.getName(), severityIndex)) {
+            return PRIORITY_HANDLED_INFO;
+        }
+        return PRIORITY_HANDLED_WARNING;
+    }
+
+    /**
+     * Gets the time at which a report was stored from its filename, or -1 if it is unknown
+     */
+    private static long getTimestamp(String filename) {
+        int index = filename.indexOf('_');
+
+        try {
+            return index > 0 ? Long.parseLong(filename.substring(0, index)) : -1;
+        } catch (NumberFormatException exception) {
+            return -1;
+        }
+    }
+
+    private List<File> findAggregatedReports(Collection<File> files) {
+        List<File> aggregated = new ArrayList<>();
+
+        for (File file : files) {
+            if (aggregator.getCount(file) > 1) {
+                aggregated.add(file);
+            }
+        }
+        return aggregated;
+    }
+
+    boolean isHandledReport(File file) {
+        return file.getName().contains(HANDLED);
     }
 
     boolean isLaunchCrashReport(File file) {
@@ -193,16 +821,32 @@ class ErrorStore extends FileStore<Error> {
     @Override
     String getFilename(Object object) {
         String suffix = "";
+        String envelope = "";
+        String fingerprint = "";
 
         if (object instanceof Error) {
             Error error = (Error) object;
 
+            if (config.getEnvelopeStoredErrors()
+                && PayloadEnvelope.canEnvelope(config.getApiKey())) {
+                envelope = PayloadEnvelope.FILENAME_MARKER;
+            }
+
+            if (config.getStoredErrorAggregationWindowMs() > 0) {
+                fingerprint = ReportAggregator.FINGERPRINT_MARKER
+                    + ReportAggregator.fingerprint(error, config.getProjectPackages());
+            }
+
+            if (!error.getHandledState().isUnhandled()) {
+                suffix = HANDLED + "_" + error.getSeverity().getName();
+            }
+
             Map<String, Object> appData = error.getAppData();
             if (appData instanceof Map) {
                 Object duration = appData.get("duration");
                 if (duration instanceof Number
                     && isStartupCrash(((Number) appData.get("duration")).longValue())) {
-                    suffix = STARTUP_CRASH;
+                    suffix += STARTUP_CRASH;
                 }
             }
         } else {
@@ -210,8 +854,8 @@ class ErrorStore extends FileStore<Error> {
         }
         String uuid = UUID.randomUUID().toString();
         long timestamp = System.currentTimeMillis();
-        return String.format(Locale.US, "%s%d_%s%s.json",
-            storeDirectory, timestamp, uuid, suffix);
+        return String.format(Locale.US, "%s%d_%s%s%s%s.json",
+            storeDirectory, timestamp, uuid, envelope, fingerprint, suffix);
     }
 
     boolean isStartupCrash(long durationMs) {
@@ -0,0 +1,18 @@
+package com.bugsnag.android;
+
+/**
+ * The order in which stored error reports are removed from disk when a store limit is reached
+ *
+ * @see Configuration#setStoredErrorEvictionPolicy(EvictionPolicy)
+ */
+public enum EvictionPolicy {
+    /**
+     * Remove the oldest reports first (default)
+     */
+    OLDEST_FIRST,
+    /**
+     * Remove handled errors before any unhandled errors, starting with the least severe, and
+     * remove launch crashes last. Reports of the same kind are removed oldest first.
+     */
+    HANDLED_FIRST
+}
@@ -14,6 +14,7 @@ class Exceptions implements JsonStream.Streamable {
     private final BugsnagException exception;
     private String exceptionType;
     private String[] projectPackages;
+    private boolean includeCauses = true;
 
     Exceptions(Configuration config, BugsnagException exception) {
         this.exception = exception;
@@ -36,7 +37,7 @@ class Exceptions implements JsonStream.Streamable {
                 StackTraceElement[] stackTrace = currentEx.getStackTrace();
                 exceptionToStream(writer, exceptionName, localizedMessage, stackTrace);
             }
-            currentEx = currentEx.getCause();
+            currentEx = includeCauses ? currentEx.getCause() : null;
         }
 
         writer.endArray();
@@ -55,6 +56,13 @@ class Exceptions implements JsonStream.Streamable {
         exception.setType(exceptionType);
     }
 
+    /**
+     * Sets whether "cause" exceptions are serialized, or only the outermost exception
+     */
+    void setIncludeCauses(boolean includeCauses) {
+        this.includeCauses = includeCauses;
+    }
+
     String[] getProjectPackages() {
         return projectPackages;
     }
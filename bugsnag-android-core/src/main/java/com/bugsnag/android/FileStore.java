@@ -5,18 +5,21 @@ import android.content.Context;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -46,6 +49,28 @@ abstract class FileStore<T extends JsonStream.Streamable> {
     final Collection<File> queuedFiles = new ConcurrentSkipListSet<>();
     protected final ErrorStore.Delegate delegate;
 
+    /**
+     * The size and modification time of a stored file, recorded when it is added to the index
+     */
+    private static final class IndexEntry {
+        final long length;
+        final long lastModifiedMs;
+
+        IndexEntry(long length, long lastModifiedMs) {
+            this.length = length;
+            this.lastModifiedMs = lastModifiedMs;
+        }
+    }
+
+    /**
+     * The stored files, oldest first. This is loaded from disk when first needed, and then
+     * kept up to date as files are written and deleted so that the directory does not need
+     * to be listed and sorted again, and so that the store limits can be checked without
+     * touching the disk. Guarded by {@link #lock}, as is the combined size of the files.
+     */
+    @Nullable
+    private NavigableMap<File, IndexEntry> index;
+    private long indexedBytes;
 
     FileStore(@NonNull Configuration config, @NonNull Context appContext, String folder,
               int maxStoreCount, Comparator<File> comparator, Delegate delegate) {
@@ -76,13 +101,18 @@ abstract class FileStore<T extends JsonStream.Streamable> {
             return;
         }
         String filename = getFilename(content);
-        discardOldestFileIfNeeded();
         lock.lock();
-        Writer out = null;
+        OutputStream out = null;
         try {
-            FileOutputStream fos = new FileOutputStream(filename);
-            out = new BufferedWriter(new OutputStreamWriter(fos, "UTF-8"));
-            out.write(content);
+            byte[] bytes = content.getBytes("UTF-8");
+
+            if (!evictFilesIfNeeded(bytes.length)) {
+                return;
+            }
+            out = new FileOutputStream(filename);
+            out.write(bytes);
+            addToIndex(new File(filename), bytes.length);
+            PipelineMetrics.getInstance().recordFileStored();
         } catch (Exception exc) {
             File errorFile = new File(filename);
 
@@ -106,20 +136,40 @@ abstract class FileStore<T extends JsonStream.Streamable> {
 
     @Nullable
     String write(@NonNull JsonStream.Streamable streamable) {
+        return write(streamable, null);
+    }
+
+    /**
+     * Writes a payload to disk.
+     *
+     * @param streamable the payload
+     * @param serialized the payload's JSON if it has already been serialized, which is written
+     *                   instead of serializing it again
+     * @return the filename, or null if the payload could not be written
+     */
+    @Nullable
+    String write(@NonNull JsonStream.Streamable streamable,
+                 @Nullable PayloadBuffer serialized) {
         if (storeDirectory == null) {
             return null;
         }
-        discardOldestFileIfNeeded();
         String filename = getFilename(streamable);
 
-        JsonStream stream = null;
+        PayloadBuffer buffer = serialized;
+        OutputStream out = null;
         lock.lock();
 
         try {
-            FileOutputStream fos = new FileOutputStream(filename);
-            Writer out = new BufferedWriter(new OutputStreamWriter(fos, "UTF-8"));
-            stream = new JsonStream(out);
-            stream.value(streamable);
+            if (buffer == null) {
+                buffer = PayloadBuffer.render(streamable);
+            }
+            if (!evictFilesIfNeeded(buffer.size())) {
+                return null;
+            }
+            out = new FileOutputStream(filename);
+            long length = writePayload(filename, out, streamable, buffer);
+            addToIndex(new File(filename), length);
+            PipelineMetrics.getInstance().recordFileStored();
             Logger.info(String.format("Saved unsent payload to disk (%s) ", filename));
             return filename;
         } catch (FileNotFoundException exc) {
@@ -133,33 +183,236 @@ abstract class FileStore<T extends JsonStream.Streamable> {
 
             IOUtils.deleteFile(errorFile);
         } finally {
-            IOUtils.closeQuietly(stream);
+            IOUtils.closeQuietly(out);
+
+            if (buffer != serialized) { // only recycle buffers which this method obtained
+                PayloadBuffer.recycle(buffer);
+            }
             lock.unlock();
         }
         return null;
     }
 
-    void discardOldestFileIfNeeded() {
-        // Limit number of saved errors to prevent disk space issues
-        File exceptionDir = new File(storeDirectory);
-        if (exceptionDir.isDirectory()) {
-            File[] files = exceptionDir.listFiles();
+    /**
+     * Writes a serialized payload to a new stored file. By default only the payload is stored.
+     *
+     * @param filename the name of the stored file, as returned by {@link #getFilename(Object)}
+     * @return the number of bytes written
+     */
+    long writePayload(@NonNull String filename, @NonNull OutputStream out,
+                      @NonNull JsonStream.Streamable streamable,
+                      @NonNull PayloadBuffer payload) throws IOException {
+        payload.writeTo(out);
+        return payload.size();
+    }
+
+    /**
+     * Gets the maximum combined size in bytes of the files in this store, or 0 for no limit
+     */
+    long getMaxStoreBytes() {
+        return 0;
+    }
+
+    /**
+     * Gets the maximum age in milliseconds of a file in this store, or 0 for no limit
+     */
+    long getMaxStoreAgeMs() {
+        return 0;
+    }
+
+    /**
+     * Orders stored files for eviction when a store limit is reached. By default the oldest
+     * files are evicted first.
+     *
+     * @param files the stored files, oldest first
+     * @return the files in the order they should be evicted
+     */
+    @NonNull
+    List<File> orderForEviction(@NonNull Collection<File> files) {
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Removes stored files which have exceeded the maximum age, and then removes files in
+     * eviction order until a new payload of the given size can be stored without exceeding
+     * the maximum number or combined size of stored files. Files which are being delivered
+     * are never removed.
+     *
+     * @param incomingBytes the size of the payload which is about to be stored
+     * @return false if the payload exceeds the maximum combined size by itself, in which case
+     * it should not be stored
+     */
+    boolean evictFilesIfNeeded(long incomingBytes) {
+        lock.lock();
+        try {
+            evictExpiredFiles();
+            long maxBytes = getMaxStoreBytes();
+
+            if (maxBytes > 0 && incomingBytes > maxBytes) {
+                Logger.warn(String.format(Locale.US, "Discarding payload of %d bytes as it "
+                    + "exceeds the stored payload size limit", incomingBytes));
+                PipelineMetrics.getInstance().recordFilesEvictedForSize(1);
+                return false;
+            }
+            NavigableMap<File, IndexEntry> files = getIndex();
+            int count = files.size();
+            long bytes = indexedBytes + incomingBytes;
+
+            if (count < maxStoreCount && (maxBytes <= 0 || bytes <= maxBytes)) {
+                return true;
+            }
+            List<File> evictedForCount = new ArrayList<>();
+            List<File> evictedForSize = new ArrayList<>();
+
+            for (File file : orderForEviction(files.keySet())) {
+                boolean overCount = count >= maxStoreCount;
+
+                if (!overCount && (maxBytes <= 0 || bytes <= maxBytes)) {
+                    break;
+                }
+                if (queuedFiles.contains(file)) {
+                    continue;
+                }
+                Logger.warn(String.format("Discarding stored payload as stored %s limit "
+                    + "reached (%s)", overCount ? "count" : "size", file.getPath()));
+                (overCount ? evictedForCount : evictedForSize).add(file);
+                count--;
+                bytes -= files.get(file).length;
+            }
+            deleteStoredFiles(evictedForCount);
+            deleteStoredFiles(evictedForSize);
+            PipelineMetrics.getInstance().recordFilesEvictedForCount(evictedForCount.size());
+            PipelineMetrics.getInstance().recordFilesEvictedForSize(evictedForSize.size());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes stored files which are older than the maximum age, unless they are being
+     * delivered. Must be called while holding {@link #lock}.
+     */
+    private void evictExpiredFiles() {
+        long maxAgeMs = getMaxStoreAgeMs();
 
-            if (files != null && files.length >= maxStoreCount) {
-                // Sort files then delete the first one (oldest timestamp)
-                Arrays.sort(files, comparator);
+        if (maxAgeMs <= 0) {
+            return;
+        }
+        long cutoffMs = System.currentTimeMillis() - maxAgeMs;
+        List<File> expired = new ArrayList<>();
+
+        for (Map.Entry<File, IndexEntry> entry : getIndex().entrySet()) {
+            File file = entry.getKey();
+
+            if (entry.getValue().lastModifiedMs < cutoffMs && !queuedFiles.contains(file)) {
+                Logger.warn(String.format("Discarding stored payload as max age "
+                    + "exceeded (%s)", file.getPath()));
+                expired.add(file);
+            }
+        }
+        if (!expired.isEmpty()) {
+            deleteStoredFiles(expired);
+            PipelineMetrics.getInstance().recordFilesEvictedForAge(expired.size());
+        }
+    }
+
+    /**
+     * Returns the index of stored files, listing the store directory if it has not yet been
+     * loaded. Must be called while holding {@link #lock}.
+     */
+    @NonNull
+    private NavigableMap<File, IndexEntry> getIndex() {
+        if (index == null) {
+            index = new TreeMap<>(new Comparator<File>() {
+                @Override
+                public int compare(File lhs, File rhs) {
+                    int result = comparator != null
+                        ? comparator.compare(lhs, rhs) : lhs.compareTo(rhs);
+
+                    // files which the comparator considers equal must both be kept
+                    return result != 0 ? result : lhs.getName().compareTo(rhs.getName());
+                }
+            });
+            indexedBytes = 0;
 
-                for (int k = 0; k < files.length && files.length >= maxStoreCount; k++) {
-                    File oldestFile = files[k];
+            if (storeDirectory != null) {
+                File[] files = new File(storeDirectory).listFiles();
 
-                    if (!queuedFiles.contains(oldestFile)) {
-                        Logger.warn(String.format("Discarding oldest error as stored "
-                            + "error limit reached (%s)", oldestFile.getPath()));
-                        deleteStoredFiles(Collections.singleton(oldestFile));
+                if (files != null) {
+                    for (File file : files) {
+                        if (file.isFile()) {
+                            putIndexEntry(file, file.length(), file.lastModified());
+                        }
                     }
                 }
             }
         }
+        return index;
+    }
+
+    /**
+     * Returns the stored files in index order, including files which are queued for delivery
+     */
+    @NonNull
+    List<File> getIndexedFiles() {
+        lock.lock();
+        try {
+            return new ArrayList<>(getIndex().keySet());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the lengths of the given files recorded in the index, so that they can be sized
+     * without touching the disk. Files which are not indexed are omitted.
+     */
+    @NonNull
+    Map<File, Long> getIndexedLengths(@NonNull Collection<File> files) {
+        lock.lock();
+        try {
+            Map<File, Long> lengths = new HashMap<>();
+            NavigableMap<File, IndexEntry> entries = getIndex();
+
+            for (File file : files) {
+                IndexEntry entry = entries.get(file);
+
+                if (entry != null) {
+                    lengths.put(file, entry.length);
+                }
+            }
+            return lengths;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void addToIndex(File file, long length) {
+        lock.lock();
+        try {
+            getIndex();
+            putIndexEntry(file, length, System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void putIndexEntry(File file, long length, long lastModifiedMs) {
+        IndexEntry previous = index.put(file, new IndexEntry(length, lastModifiedMs));
+
+        if (previous != null) {
+            indexedBytes -= previous.length;
+        }
+        indexedBytes += length;
+    }
+
+    private void removeFromIndex(File file) {
+        IndexEntry entry = index != null ? index.remove(file) : null;
+
+        if (entry != null) {
+            indexedBytes -= entry.length;
+        }
     }
 
     @NonNull
@@ -168,26 +421,25 @@ abstract class FileStore<T extends JsonStream.Streamable> {
     List<File> findStoredFiles() {
         lock.lock();
         try {
+            evictExpiredFiles();
             List<File> files = new ArrayList<>();
-
-            if (storeDirectory != null) {
-                File dir = new File(storeDirectory);
-
-                if (dir.exists() && dir.isDirectory()) {
-                    File[] values = dir.listFiles();
-
-                    if (values != null) {
-                        for (File value : values) {
-                            // delete any tombstoned/empty files, as they contain no useful info
-                            if (value.length() == 0) {
-                                if (!value.delete()) {
-                                    value.deleteOnExit();
-                                }
-                            } else if (value.isFile() && !queuedFiles.contains(value)) {
-                                files.add(value);
-                            }
-                        }
+            Iterator<Map.Entry<File, IndexEntry>> iterator = getIndex().entrySet().iterator();
+
+            while (iterator.hasNext()) {
+                Map.Entry<File, IndexEntry> entry = iterator.next();
+                File value = entry.getKey();
+
+                // delete any empty files, as they contain no useful info. The indexed length is
+                // used to avoid checking every file on disk; files which were deleted by
+                // something else are removed from the index when they are next flushed.
+                if (entry.getValue().length == 0) {
+                    if (!value.delete()) {
+                        value.deleteOnExit();
                     }
+                    iterator.remove();
+                    indexedBytes -= entry.getValue().length;
+                } else if (!queuedFiles.contains(value)) {
+                    files.add(value);
                 }
             }
             queuedFiles.addAll(files);
@@ -197,6 +449,33 @@ abstract class FileStore<T extends JsonStream.Streamable> {
         }
     }
 
+    /**
+     * Signals the start of a flush of stored payloads, allowing the default delivery to keep
+     * its connections alive between requests. Must be paired with {@link #endFlush()}.
+     */
+    void beginFlush() {
+        beginFlush(1);
+    }
+
+    /**
+     * Signals the start of a flush which sends up to the given number of requests at once
+     */
+    void beginFlush(int concurrency) {
+        Delivery delivery = config.getDelivery();
+
+        if (delivery instanceof DefaultDelivery) {
+            ((DefaultDelivery) delivery).beginFlush(concurrency);
+        }
+    }
+
+    void endFlush() {
+        Delivery delivery = config.getDelivery();
+
+        if (delivery instanceof DefaultDelivery) {
+            ((DefaultDelivery) delivery).endFlush();
+        }
+    }
+
     void cancelQueuedFiles(Collection<File> files) {
         lock.lock();
         try {
@@ -215,6 +494,8 @@ abstract class FileStore<T extends JsonStream.Streamable> {
                 queuedFiles.removeAll(storedFiles);
 
                 for (File storedFile : storedFiles) {
+                    removeFromIndex(storedFile);
+
                     if (!storedFile.delete()) {
                         storedFile.deleteOnExit();
                     }
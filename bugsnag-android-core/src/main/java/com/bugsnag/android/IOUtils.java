@@ -5,7 +5,11 @@ import androidx.annotation.Nullable;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.HttpURLConnection;
@@ -49,6 +53,76 @@ class IOUtils {
         return (int) count;
     }
 
+    static long copy(@NonNull InputStream input,
+                     @NonNull OutputStream output) throws IOException {
+        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+        long count = 0;
+        int read;
+        while (EOF != (read = input.read(buffer))) {
+            output.write(buffer, 0, read);
+            count += read;
+        }
+        return count;
+    }
+
+    /**
+     * Opens a stream which reads the given range of bytes from a file
+     */
+    static InputStream openRange(@NonNull File file, long offset,
+                                 final long length) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+
+        try {
+            input.getChannel().position(offset);
+        } catch (IOException exception) {
+            closeQuietly(input);
+            throw exception;
+        }
+        return new FilterInputStream(input) {
+            private long remaining = length;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return EOF;
+                }
+                int value = super.read();
+                remaining--;
+                return value;
+            }
+
+            @Override
+            public int read(@NonNull byte[] buffer, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return EOF;
+                }
+                int read = super.read(buffer, off, (int) Math.min(len, remaining));
+
+                if (read > 0) {
+                    remaining -= read;
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long count) throws IOException {
+                long skipped = super.skip(Math.min(count, remaining));
+                remaining -= skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(super.available(), remaining);
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+    }
+
     static void deleteFile(File file) {
         try {
             if (!file.delete()) {
@@ -0,0 +1,49 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * A part of a payload whose values rarely change, which is rendered as UTF-8 JSON once and then
+ * copied into each payload that contains it. The fragment is rendered again the next time it is
+ * used after being invalidated.
+ */
+class JsonFragment implements JsonStream.Streamable {
+
+    private final JsonStream.Streamable source;
+    private byte[] json;
+
+    JsonFragment(@NonNull JsonStream.Streamable source) {
+        this.source = source;
+    }
+
+    /**
+     * Gets the rendered JSON, rendering it if the fragment has been invalidated. The returned
+     * array is never modified, so can be retained as a snapshot of the fragment.
+     */
+    @NonNull
+    synchronized byte[] getJson() throws IOException {
+        if (json == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            JsonStream stream = new JsonStream(out);
+            source.toStream(stream);
+            stream.flush();
+            json = out.toByteArray();
+        }
+        return json;
+    }
+
+    /**
+     * Discards the rendered JSON, which should be done whenever a value that it contains changes
+     */
+    synchronized void invalidate() {
+        json = null;
+    }
+
+    @Override
+    public void toStream(@NonNull JsonStream writer) throws IOException {
+        writer.jsonValue(getJson());
+    }
+}
@@ -0,0 +1,299 @@
+package com.bugsnag.android;
+
+import android.util.JsonReader;
+import androidx.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * The byte ranges of the values in a JSON object stored in a file, which are found without
+ * parsing the values themselves. This allows the parts of a stored payload which are needed to
+ * be read on demand, and the remaining parts to be copied into a new payload unchanged.
+ */
+class JsonSections {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final Map<String, long[]> ranges;
+
+    private JsonSections(File file, Map<String, long[]> ranges) {
+        this.file = file;
+        this.ranges = ranges;
+    }
+
+    /**
+     * Finds the byte range of each value in the JSON object stored in a file
+     *
+     * @throws IOException if the file does not contain a complete JSON object
+     */
+    @NonNull
+    static JsonSections scan(@NonNull File file) throws IOException {
+        return scan(file, new FileInputStream(file), 0);
+    }
+
+    /**
+     * Finds the byte range of each value in a JSON object stored in part of a file
+     *
+     * @throws IOException if the range does not contain a complete JSON object
+     */
+    @NonNull
+    static JsonSections scan(@NonNull File file, long offset, long length) throws IOException {
+        return scan(file, IOUtils.openRange(file, offset, length), offset);
+    }
+
+    private static JsonSections scan(File file, InputStream input,
+                                     long offset) throws IOException {
+        Scanner scanner = new Scanner(input, offset);
+
+        try {
+            return new JsonSections(file, scanner.scanObject());
+        } finally {
+            IOUtils.closeQuietly(scanner.input);
+        }
+    }
+
+    synchronized boolean contains(@NonNull String name) {
+        return ranges.containsKey(name);
+    }
+
+    /**
+     * Forgets a section, which should be done once its value has been parsed or replaced
+     */
+    synchronized void remove(@NonNull String name) {
+        ranges.remove(name);
+    }
+
+    /**
+     * Copies the value of a section into the stream without parsing it
+     */
+    void write(@NonNull String name, @NonNull JsonStream stream) throws IOException {
+        long[] range = getRange(name);
+        stream.value(file, range[0], range[1]);
+    }
+
+    /**
+     * Opens a reader for the value of a section, which must be an object or an array
+     */
+    @NonNull
+    JsonReader open(@NonNull String name) throws IOException {
+        long[] range = getRange(name);
+        return createReader(IOUtils.openRange(file, range[0], range[1]));
+    }
+
+    /**
+     * Opens a reader for an object which contains only the given sections, so that the rest of
+     * the file is not read
+     */
+    @NonNull
+    JsonReader openObject(@NonNull String... names) throws IOException {
+        Vector<InputStream> parts = new Vector<>();
+        String separator = "{";
+
+        try {
+            for (String name : names) {
+                long[] range;
+
+                synchronized (this) {
+                    range = ranges.get(name);
+                }
+                if (range != null) {
+                    parts.add(toStream(separator + "\"" + name + "\":"));
+                    parts.add(IOUtils.openRange(file, range[0], range[1]));
+                    separator = ",";
+                }
+            }
+        } catch (IOException exception) {
+            for (InputStream part : parts) {
+                IOUtils.closeQuietly(part);
+            }
+            throw exception;
+        }
+        parts.add(toStream(parts.isEmpty() ? "{}" : "}"));
+        return createReader(new SequenceInputStream(parts.elements()));
+    }
+
+    private synchronized long[] getRange(String name) throws IOException {
+        long[] range = ranges.get(name);
+
+        if (range == null) {
+            throw new IOException("Stored payload has no section " + name);
+        }
+        return range;
+    }
+
+    private static InputStream toStream(String value) {
+        return new ByteArrayInputStream(value.getBytes(UTF_8));
+    }
+
+    private static JsonReader createReader(InputStream input) {
+        return new JsonReader(new BufferedReader(new InputStreamReader(input, UTF_8)));
+    }
+
+    /**
+     * Reads through a JSON object a byte at a time, tracking only the nesting depth and whether
+     * the current byte is inside a string. As every structural character in JSON is ASCII, and
+     * UTF-8 never encodes other characters using ASCII bytes, the ranges found always start and
+     * end on character boundaries.
+     */
+    private static class Scanner {
+        private final InputStream input;
+        private final byte[] buffer = new byte[8192];
+        private int pos = 0;
+        private int limit = 0;
+        private long offset;
+
+        Scanner(InputStream input, long offset) {
+            this.input = input;
+            this.offset = offset;
+        }
+
+        Map<String, long[]> scanObject() throws IOException {
+            Map<String, long[]> ranges = new HashMap<>();
+
+            if (nextNonWhitespace() != '{') {
+                throw new IOException("Stored payload is not a JSON object");
+            }
+            int next = nextNonWhitespace();
+
+            while (next != '}') {
+                if (next != '"') {
+                    throw new IOException("Expected name at offset " + offset);
+                }
+                String name = readString();
+
+                if (nextNonWhitespace() != ':') {
+                    throw new IOException("Expected ':' at offset " + offset);
+                }
+                next = nextNonWhitespace();
+                long start = offset - 1;
+                long end = skipValue(next);
+                ranges.put(name, new long[] {start, end - start});
+                next = nextNonWhitespace();
+
+                if (next == ',') {
+                    next = nextNonWhitespace();
+                } else if (next != '}') {
+                    throw new IOException("Expected ',' or '}' at offset " + offset);
+                }
+            }
+            return ranges;
+        }
+
+        /**
+         * Skips the value which starts with the given byte
+         *
+         * @return the offset of the byte after the end of the value
+         */
+        private long skipValue(int first) throws IOException {
+            if (first == '"') {
+                skipString();
+                return offset;
+            } else if (first == '{' || first == '[') {
+                int depth = 1;
+
+                while (depth > 0) {
+                    int next = next();
+
+                    if (next == '"') {
+                        skipString();
+                    } else if (next == '{' || next == '[') {
+                        depth++;
+                    } else if (next == '}' || next == ']') {
+                        depth--;
+                    }
+                }
+                return offset;
+            }
+            // a number, boolean or null, which ends at the next delimiter
+            while (!isDelimiter(peek())) {
+                next();
+            }
+            return offset;
+        }
+
+        /**
+         * Reads the remainder of a string whose opening quote has been consumed. Escape
+         * sequences are not decoded, as names are only compared against known ASCII names.
+         */
+        private String readString() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int next = next();
+
+            while (next != '"') {
+                bytes.write(next);
+
+                if (next == '\\') {
+                    bytes.write(next());
+                }
+                next = next();
+            }
+            return new String(bytes.toByteArray(), UTF_8);
+        }
+
+        private void skipString() throws IOException {
+            int next = next();
+
+            while (next != '"') {
+                if (next == '\\') {
+                    next();
+                }
+                next = next();
+            }
+        }
+
+        private int nextNonWhitespace() throws IOException {
+            int next = next();
+
+            while (isWhitespace(next)) {
+                next = next();
+            }
+            return next;
+        }
+
+        private int peek() throws IOException {
+            if (pos == limit) {
+                fill();
+            }
+            return buffer[pos] & 0xff;
+        }
+
+        private int next() throws IOException {
+            int next = peek();
+            pos++;
+            offset++;
+            return next;
+        }
+
+        private void fill() throws IOException {
+            limit = input.read(buffer);
+            pos = 0;
+
+            if (limit <= 0) {
+                limit = 0;
+                throw new EOFException("Stored payload ended at offset " + offset);
+            }
+        }
+
+        private static boolean isWhitespace(int value) {
+            return value == ' ' || value == '\n' || value == '\r' || value == '\t';
+        }
+
+        private static boolean isDelimiter(int value) {
+            return value == ',' || value == '}' || value == ']' || isWhitespace(value);
+        }
+    }
+}
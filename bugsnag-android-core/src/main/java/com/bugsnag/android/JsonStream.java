@@ -3,16 +3,23 @@ package com.bugsnag.android;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 
 public class JsonStream extends JsonWriter {
 
+    private static final char[] BASE64_ALPHABET
+        = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    // the number of base64 chars buffered before being written, which is a multiple of 4
+    private static final int BASE64_CHUNK_SIZE = 1024;
+
     private final ObjectJsonStreamer objectJsonStreamer;
 
     public interface Streamable {
@@ -33,6 +40,15 @@ public class JsonStream extends JsonWriter {
         objectJsonStreamer = new ObjectJsonStreamer();
     }
 
+    /**
+     * Constructs a JSONStream which encodes its output as UTF-8 directly into bytes
+     *
+     * @param out the output stream, which does not need to be buffered
+     */
+    JsonStream(@NonNull OutputStream out) {
+        this(new Utf8Writer(out));
+    }
+
     // Allow chaining name().value()
     @NonNull
     public JsonStream name(@Nullable String name) throws IOException {
@@ -60,6 +76,99 @@ public class JsonStream extends JsonWriter {
         objectJsonStreamer.objectToStream(object, this);
     }
 
+    /**
+     * Writes a float using its own shortest representation, rather than that of the double
+     * which it would be widened to by {@link #value(double)}
+     */
+    void floatValue(float value) throws IOException {
+        writeDeferredName();
+
+        if (!isLenient() && (Float.isNaN(value) || Float.isInfinite(value))) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        beforeValue();
+        out.write(Float.toString(value));
+    }
+
+    /**
+     * Writes bytes as a base64 encoded string, without creating an intermediate string
+     */
+    void base64Value(@NonNull byte[] bytes) throws IOException {
+        writeDeferredName();
+        beforeValue();
+        out.write('"');
+
+        char[] chunk = new char[BASE64_CHUNK_SIZE];
+        int count = 0;
+
+        for (int k = 0; k < bytes.length; k += 3) {
+            int remaining = bytes.length - k;
+            int first = bytes[k] & 0xff;
+            int second = remaining > 1 ? bytes[k + 1] & 0xff : 0;
+            int third = remaining > 2 ? bytes[k + 2] & 0xff : 0;
+
+            chunk[count++] = BASE64_ALPHABET[first >> 2];
+            chunk[count++] = BASE64_ALPHABET[((first & 0x3) << 4) | (second >> 4)];
+            chunk[count++] = remaining > 1
+                ? BASE64_ALPHABET[((second & 0xf) << 2) | (third >> 6)] : '=';
+            chunk[count++] = remaining > 2 ? BASE64_ALPHABET[third & 0x3f] : '=';
+
+            if (count == chunk.length) {
+                out.write(chunk, 0, count);
+                count = 0;
+            }
+        }
+        out.write(chunk, 0, count);
+        out.write('"');
+    }
+
+    /**
+     * Writes a value which has already been serialized as UTF-8 JSON into the stream
+     */
+    void jsonValue(@NonNull byte[] json) throws IOException {
+        writeDeferredName();
+        super.flush();
+        beforeValue(); // add comma if in array, or separator after a name
+
+        if (out instanceof Utf8Writer) {
+            ((Utf8Writer) out).writeBytes(json, 0, json.length);
+        } else if (out instanceof CountingWriter) {
+            ((CountingWriter) out).countBytes(json.length);
+        } else {
+            out.write(new String(json, "UTF-8"));
+        }
+    }
+
+    /**
+     * Writes a previously serialized payload into the stream
+     */
+    void value(@NonNull PayloadBuffer payload) throws IOException {
+        super.flush();
+        beforeValue(); // add comma if in array
+
+        if (out instanceof Utf8Writer) {
+            payload.writeTo((Utf8Writer) out);
+        } else if (out instanceof CountingWriter) {
+            ((CountingWriter) out).countBytes(payload.size());
+        } else {
+            copy(payload.openStream());
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Writes part of a file into the stream, which must contain a complete JSON value
+     */
+    void value(@NonNull File file, long offset, long length) throws IOException {
+        writeDeferredName();
+        super.flush();
+        beforeValue(); // add comma if in array, or separator after a name
+
+        transfer(file, offset, length);
+        out.flush();
+    }
+
     /**
      * Writes a File (its content) into the stream
      */
@@ -72,15 +181,40 @@ public class JsonStream extends JsonWriter {
         beforeValue(); // add comma if in array
 
         // Copy the file contents onto the stream
-        Reader input = null;
+        transfer(file, 0, file.length());
+        out.flush();
+    }
+
+    /**
+     * Copies a range of a file containing UTF-8 JSON onto the stream. The bytes are transferred
+     * unchanged if this stream encodes its output as UTF-8, rather than being decoded and
+     * encoded again, and are not read at all if the stream only counts its output.
+     */
+    private void transfer(File file, long offset, long length) throws IOException {
+        if (out instanceof CountingWriter) {
+            ((CountingWriter) out).countBytes(length);
+        } else if (out instanceof Utf8Writer) {
+            FileInputStream input = new FileInputStream(file);
+
+            try {
+                ((Utf8Writer) out).transferFrom(input.getChannel(), offset, length);
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        } else {
+            copy(IOUtils.openRange(file, offset, length));
+        }
+    }
+
+    /**
+     * Decodes UTF-8 JSON onto the stream and closes the input
+     */
+    private void copy(InputStream input) throws IOException {
         try {
-            FileInputStream fis = new FileInputStream(file);
-            input = new BufferedReader(new InputStreamReader(fis, "UTF-8"));
-            IOUtils.copy(input, out);
+            Reader reader = new InputStreamReader(input, "UTF-8");
+            IOUtils.copy(reader, out);
         } finally {
             IOUtils.closeQuietly(input);
         }
-
-        out.flush();
     }
 }
@@ -400,7 +400,7 @@ class JsonWriter implements Closeable, Flushable {
         return this;
     }
 
-    private void writeDeferredName() throws IOException {
+    void writeDeferredName() throws IOException {
         if (deferredName != null) {
             beforeName();
             string(deferredName);
@@ -567,6 +567,10 @@ class JsonWriter implements Closeable, Flushable {
 
     private void string(String value) throws IOException {
         String[] replacements = htmlSafe ? HTML_SAFE_REPLACEMENT_CHARS : REPLACEMENT_CHARS;
+        if (out instanceof Utf8Writer) { // escape and encode in one pass
+            ((Utf8Writer) out).writeString(value, replacements);
+            return;
+        }
         out.write("\"");
         int last = 0;
         int length = value.length();
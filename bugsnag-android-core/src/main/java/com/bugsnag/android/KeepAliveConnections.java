@@ -0,0 +1,187 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Holds on to the most recent HTTP connections for each endpoint while stored payloads are
+ * being flushed. Connections are not disconnected between requests during a flush, which
+ * allows the platform's HttpURLConnection keep-alive cache to reuse the underlying socket
+ * for the next request to the same endpoint, rather than performing a new TCP and TLS
+ * handshake for every stored file.
+ * <p>
+ * One connection is held per endpoint, or one per concurrent request when a flush sends
+ * requests in parallel. Held connections are disconnected once they have been idle for longer
+ * than the idle timeout, or when the last active flush ends.
+ */
+class KeepAliveConnections {
+
+    static final long DEFAULT_IDLE_TIMEOUT_MS = 15000;
+
+    private final long idleTimeoutMs;
+    private final Map<String, Deque<HeldConnection>> heldConnections = new HashMap<>();
+    private int activeFlushes = 0;
+    private int maxHeldPerEndpoint = 1;
+    private long requestCount = 0;
+    private long keptAliveCount = 0;
+
+    private static class HeldConnection {
+        final HttpURLConnection conn;
+        final long releasedAtMs;
+
+        HeldConnection(HttpURLConnection conn, long releasedAtMs) {
+            this.conn = conn;
+            this.releasedAtMs = releasedAtMs;
+        }
+    }
+
+    KeepAliveConnections(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Returns the key which identifies connections that can share a socket
+     */
+    @NonNull
+    static String endpointKey(@NonNull URL url) {
+        int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        return url.getProtocol() + "://" + url.getHost() + ":" + port;
+    }
+
+    /**
+     * Marks the start of a flush, during which connections are held open between requests
+     */
+    synchronized void beginFlush() {
+        beginFlush(1);
+    }
+
+    /**
+     * Marks the start of a flush which makes up to the given number of concurrent requests,
+     * so that a connection can be held for each of them
+     */
+    synchronized void beginFlush(int concurrency) {
+        activeFlushes++;
+        maxHeldPerEndpoint = Math.max(maxHeldPerEndpoint, concurrency);
+    }
+
+    /**
+     * Marks the end of a flush. When no other flush is active, all held connections are
+     * disconnected.
+     */
+    synchronized void endFlush() {
+        if (activeFlushes > 0) {
+            activeFlushes--;
+        }
+        if (activeFlushes == 0) {
+            maxHeldPerEndpoint = 1;
+
+            if (!heldConnections.isEmpty()) {
+                Logger.info(String.format(Locale.US,
+                    "Flush complete, %d of %d request(s) followed a kept-alive connection",
+                    keptAliveCount, requestCount));
+                evict(Long.MAX_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Called before a request is made to the given endpoint. If a connection to the endpoint
+     * is held, it is dropped without being disconnected so that its socket stays in the
+     * platform's keep-alive cache, where the new request may pick it up. Whether the socket
+     * is actually reused is decided by the platform and cannot be observed here.
+     *
+     * @return true if a connection to the endpoint was kept alive for this request
+     */
+    synchronized boolean acquire(@NonNull String endpoint, long nowMs) {
+        evict(nowMs - idleTimeoutMs);
+        Deque<HeldConnection> held = heldConnections.get(endpoint);
+        requestCount++;
+
+        if (held != null && held.pollLast() != null) {
+            if (held.isEmpty()) {
+                heldConnections.remove(endpoint);
+            }
+            keptAliveCount++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called once the response to a request has been fully consumed. The connection is held
+     * for reuse if a flush is active, otherwise it is disconnected immediately.
+     */
+    synchronized void release(@NonNull String endpoint, @Nullable HttpURLConnection conn,
+                              long nowMs) {
+        if (conn == null) {
+            return;
+        }
+        if (activeFlushes > 0) {
+            Deque<HeldConnection> held = heldConnections.get(endpoint);
+
+            if (held == null) {
+                held = new ArrayDeque<>();
+                heldConnections.put(endpoint, held);
+            }
+            held.addLast(new HeldConnection(conn, nowMs));
+
+            while (held.size() > maxHeldPerEndpoint) {
+                IOUtils.close(held.pollFirst().conn);
+            }
+        } else {
+            IOUtils.close(conn);
+        }
+    }
+
+    /**
+     * Disconnects any held connections which were released before the given time
+     */
+    private void evict(long releasedBeforeMs) {
+        Iterator<Deque<HeldConnection>> iterator = heldConnections.values().iterator();
+
+        while (iterator.hasNext()) {
+            Deque<HeldConnection> held = iterator.next();
+
+            // connections are released in order, so the oldest is at the head
+            while (!held.isEmpty() && held.peekFirst().releasedAtMs <= releasedBeforeMs) {
+                IOUtils.close(held.pollFirst().conn);
+            }
+            if (held.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    synchronized int getHeldCount() {
+        int count = 0;
+
+        for (Deque<HeldConnection> held : heldConnections.values()) {
+            count += held.size();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of requests made, including those made outside of a flush
+     */
+    synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Returns the number of requests made while a connection to the same endpoint was kept
+     * alive for them. This is an upper bound on the number of sockets actually reused.
+     */
+    synchronized long getKeptAliveCount() {
+        return keptAliveCount;
+    }
+}
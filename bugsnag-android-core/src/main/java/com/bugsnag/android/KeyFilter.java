@@ -0,0 +1,241 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides which metadata keys are filtered, compiled from the filters set on the
+ * {@link Configuration}. A filter matches any key which contains it, unless it starts with one
+ * of the following kinds:
+ * <ul>
+ * <li>{@code exact:} matches only keys equal to the rest of the filter</li>
+ * <li>{@code prefix:} matches keys which start with the rest of the filter</li>
+ * <li>{@code regex:} matches keys which contain a match of the rest of the filter</li>
+ * </ul>
+ * <p>
+ * Substring filters are combined into a single Aho-Corasick automaton, so a key is checked
+ * against all of them in one pass over its characters. The result for each key is cached, as
+ * the same keys are serialized in every payload. A compiled filter is kept by the metadata which
+ * uses it, so that it is only compiled again when its filters change.
+ */
+class KeyFilter {
+
+    static final String EXACT_KIND = "exact:";
+    static final String PREFIX_KIND = "prefix:";
+    static final String REGEX_KIND = "regex:";
+
+    // bounds the cache, in case keys are generated dynamically
+    private static final int MAX_CACHED_KEYS = 1024;
+
+    static final KeyFilter DEFAULT = new KeyFilter(new String[] {"password"});
+
+    private final String[] filters;
+    private final Node substrings = new Node();
+    private final Node prefixes = new Node();
+    private final Set<String> exactKeys = new HashSet<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final Map<String, Boolean> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Compiles a set of filters, reusing an already compiled filter if it is identical
+     *
+     * @param compiled filters which were compiled previously, any of which may be null
+     * @return the compiled filter, or null if there are no filters
+     */
+    @Nullable
+    static KeyFilter compile(@Nullable String[] filters, @NonNull KeyFilter... compiled) {
+        if (filters == null) {
+            return null;
+        }
+
+        for (KeyFilter filter : compiled) {
+            if (filter != null && Arrays.equals(filters, filter.filters)) {
+                return filter;
+            }
+        }
+        return new KeyFilter(filters.clone());
+    }
+
+    private KeyFilter(@NonNull String[] filters) {
+        this.filters = filters;
+
+        for (String filter : filters) {
+            if (filter == null) {
+                continue;
+            }
+
+            if (filter.startsWith(EXACT_KIND)) {
+                exactKeys.add(filter.substring(EXACT_KIND.length()));
+            } else if (filter.startsWith(PREFIX_KIND)) {
+                prefixes.insert(filter.substring(PREFIX_KIND.length()));
+            } else if (filter.startsWith(REGEX_KIND)) {
+                try {
+                    patterns.add(Pattern.compile(filter.substring(REGEX_KIND.length())));
+                } catch (PatternSyntaxException exception) {
+                    Logger.warn("Ignoring invalid metadata filter " + filter, exception);
+                }
+            } else {
+                substrings.insert(filter);
+            }
+        }
+        linkFailures(substrings);
+    }
+
+    @NonNull
+    String[] getFilters() {
+        return filters;
+    }
+
+    /**
+     * Whether the value for a key should be filtered
+     */
+    boolean matches(@NonNull String key) {
+        Boolean cached = cache.get(key);
+
+        if (cached == null) {
+            cached = match(key);
+
+            if (cache.size() >= MAX_CACHED_KEYS) {
+                cache.clear();
+            }
+            cache.put(key, cached);
+        }
+        return cached;
+    }
+
+    private boolean match(String key) {
+        if (exactKeys.contains(key) || containsSubstring(key) || startsWithPrefix(key)) {
+            return true;
+        }
+
+        for (Pattern pattern : patterns) {
+            Matcher matcher = pattern.matcher(key);
+
+            if (matcher.find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsSubstring(String key) {
+        Node node = substrings;
+
+        for (int k = 0; k < key.length() && !node.terminal; k++) {
+            char c = key.charAt(k);
+            Node next = node.get(c);
+
+            while (next == null && node != substrings) {
+                node = node.failure;
+                next = node.get(c);
+            }
+            node = next == null ? substrings : next;
+        }
+        return node.terminal;
+    }
+
+    private boolean startsWithPrefix(String key) {
+        Node node = prefixes;
+
+        for (int k = 0; k < key.length() && !node.terminal; k++) {
+            node = node.get(key.charAt(k));
+
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.terminal;
+    }
+
+    /**
+     * Links each node of the trie to the node for its longest proper suffix, visiting the nodes
+     * breadth first so that shorter suffixes are always linked first. A node which has a
+     * terminal suffix is made terminal, as reaching it means a filter has been matched.
+     */
+    private static void linkFailures(Node root) {
+        Queue<Node> queue = new ArrayDeque<>();
+        root.failure = root;
+
+        for (int k = 0; k < root.size; k++) {
+            root.children[k].failure = root;
+            queue.add(root.children[k]);
+        }
+
+        while (!queue.isEmpty()) {
+            Node node = queue.remove();
+
+            for (int k = 0; k < node.size; k++) {
+                char c = node.labels[k];
+                Node child = node.children[k];
+                Node failure = node.failure;
+
+                while (failure.get(c) == null && failure != root) {
+                    failure = failure.failure;
+                }
+                Node suffix = failure.get(c);
+                child.failure = suffix == null ? root : suffix;
+                child.terminal |= child.failure.terminal;
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * A node in a trie, whose children are kept sorted by their label
+     */
+    private static class Node {
+        char[] labels = new char[0];
+        Node[] children = new Node[0];
+        int size = 0;
+        Node failure;
+        boolean terminal = false;
+
+        Node get(char label) {
+            int index = Arrays.binarySearch(labels, 0, size, label);
+            return index >= 0 ? children[index] : null;
+        }
+
+        void insert(String value) {
+            Node node = this;
+
+            for (int k = 0; k < value.length(); k++) {
+                node = node.getOrAdd(value.charAt(k));
+            }
+            node.terminal = true;
+        }
+
+        private Node getOrAdd(char label) {
+            int index = Arrays.binarySearch(labels, 0, size, label);
+
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -index - 1;
+
+            if (size == labels.length) {
+                labels = Arrays.copyOf(labels, Math.max(2, size * 2));
+                children = Arrays.copyOf(children, labels.length);
+            }
+            System.arraycopy(labels, index, labels, index + 1, size - index);
+            System.arraycopy(children, index, children, index + 1, size - index);
+            Node child = new Node();
+            labels[index] = label;
+            children[index] = child;
+            size++;
+            return child;
+        }
+    }
+}
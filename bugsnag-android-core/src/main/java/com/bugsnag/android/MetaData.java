@@ -7,6 +7,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
@@ -99,30 +100,105 @@ public class MetaData extends Observable implements JsonStream.Streamable {
     }
 
     void setFilters(String... filters) {
-        jsonStreamer.filters = filters;
+        jsonStreamer.setFilters(filters);
     }
 
     String[] getFilters() {
-        return jsonStreamer.filters;
+        return jsonStreamer.getFilters();
+    }
+
+    void setByteArrayBase64Threshold(int threshold) {
+        jsonStreamer.byteArrayBase64Threshold = threshold;
+    }
+
+    int getByteArrayBase64Threshold() {
+        return jsonStreamer.byteArrayBase64Threshold;
+    }
+
+    void setMaxDepth(int maxDepth) {
+        jsonStreamer.maxDepth = maxDepth;
+    }
+
+    int getMaxDepth() {
+        return jsonStreamer.maxDepth;
+    }
+
+    void setMaxCollectionSize(int maxCollectionSize) {
+        jsonStreamer.maxCollectionSize = maxCollectionSize;
+    }
+
+    int getMaxCollectionSize() {
+        return jsonStreamer.maxCollectionSize;
+    }
+
+    void setMaxStringLength(int maxStringLength) {
+        jsonStreamer.maxStringLength = maxStringLength;
+    }
+
+    int getMaxStringLength() {
+        return jsonStreamer.maxStringLength;
+    }
+
+    <T> void addAdapter(@NonNull Class<T> type, @NonNull MetaDataAdapter<? super T> adapter) {
+        jsonStreamer.addAdapter(type, adapter);
     }
 
     @NonNull
     static MetaData merge(@NonNull MetaData... metaDataList) {
+        return merge(metaDataList, 0);
+    }
+
+    /**
+     * Applies the filters, limits and adapters of the global metaData to metaData which already
+     * includes the global values, such as metaData read from a stored report
+     */
+    @NonNull
+    static MetaData mergeSettings(@NonNull MetaData global, @NonNull MetaData metaData) {
+        return merge(new MetaData[]{global, metaData}, 1);
+    }
+
+    /**
+     * Merges metaData, only taking values from the metaData at or after the given index
+     */
+    @NonNull
+    private static MetaData merge(@NonNull MetaData[] metaDataList, int firstValues) {
         List<Map<String, Object>> stores = new ArrayList<>();
-        List<String> filters = new ArrayList<>();
-        for (MetaData metaData : metaDataList) {
+        Set<String> filters = new LinkedHashSet<>();
+        ObjectJsonStreamer limits = new ObjectJsonStreamer();
+        ObjectJsonStreamer base = null;
+        for (int k = 0; k < metaDataList.length; k++) {
+            MetaData metaData = metaDataList[k];
+
             if (metaData != null) {
-                stores.add(metaData.store);
+                if (base == null) {
+                    base = metaData.jsonStreamer;
+                }
+                if (k >= firstValues) {
+                    stores.add(metaData.store);
+                }
+                limits.mergeLimits(metaData.jsonStreamer);
+                limits.mergeAdapters(metaData.jsonStreamer);
 
-                if (metaData.jsonStreamer.filters != null) {
-                    filters.addAll(Arrays.asList(metaData.jsonStreamer.filters));
+                String[] metaDataFilters = metaData.getFilters();
+
+                if (metaDataFilters != null) {
+                    // filters are often shared, so only add each once
+                    filters.addAll(Arrays.asList(metaDataFilters));
                 }
             }
         }
 
         @SuppressWarnings({"unchecked", "rawtypes"})
         MetaData newMeta = new MetaData(mergeMaps(stores.toArray(new Map[0])));
-        newMeta.setFilters(filters.toArray(new String[0]));
+        String[] mergedFilters = filters.toArray(new String[0]);
+
+        if (base != null) {
+            newMeta.jsonStreamer.setMergedFilters(mergedFilters, base);
+        } else {
+            newMeta.setFilters(mergedFilters);
+        }
+        newMeta.jsonStreamer.mergeLimits(limits);
+        newMeta.jsonStreamer.mergeAdapters(limits);
 
         return newMeta;
     }
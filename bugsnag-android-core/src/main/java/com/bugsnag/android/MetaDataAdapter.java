@@ -0,0 +1,27 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Converts values of a type which Bugsnag cannot serialize into metaData which it can, such
+ * as maps, collections, arrays, strings, numbers and booleans.
+ * <p>
+ * Adapters are added with {@link Configuration#addMetaDataAdapter(Class, MetaDataAdapter)},
+ * and are only called when an error report containing a value of their type is written, so
+ * objects can be added to metaData without being converted up front.
+ *
+ * @param <T> the type of value which is converted
+ */
+public interface MetaDataAdapter<T> {
+
+    /**
+     * Converts a value into metaData. The result is filtered and limited in the same way as
+     * any other metaData, and may itself contain values which are converted by an adapter.
+     *
+     * @param value the value to convert
+     * @return the metaData to send in place of the value
+     */
+    @Nullable
+    Object toMetaData(@NonNull T value);
+}
@@ -0,0 +1,97 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The adapters which convert metadata values of types that cannot otherwise be serialized.
+ * An adapter applies to the type it was added for, and to any subclass or implementation of
+ * that type which does not have an adapter of its own. The adapter found for each class is
+ * cached, so its supertypes are only searched the first time that one of its values is written.
+ */
+class MetaDataAdapters {
+
+    // cached for classes which have no adapter, as a map cannot hold null values
+    private static final MetaDataAdapter<Object> NONE = new MetaDataAdapter<Object>() {
+        @Nullable
+        @Override
+        public Object toMetaData(@NonNull Object value) {
+            return null;
+        }
+    };
+
+    private final Map<Class<?>, MetaDataAdapter<?>> adapters = new ConcurrentHashMap<>();
+    private final Map<Class<?>, MetaDataAdapter<?>> resolved = new ConcurrentHashMap<>();
+
+    <T> void add(@NonNull Class<T> type, @NonNull MetaDataAdapter<? super T> adapter) {
+        adapters.put(type, adapter);
+        resolved.clear();
+    }
+
+    void addAll(@NonNull MetaDataAdapters other) {
+        adapters.putAll(other.adapters);
+        resolved.clear();
+    }
+
+    /**
+     * Finds the adapter for a class, preferring an adapter for the class itself, then for its
+     * closest superclass, and then for the interfaces it implements
+     *
+     * @return the adapter, or null if none of the class's supertypes have an adapter
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    MetaDataAdapter<Object> find(@NonNull Class<?> type) {
+        MetaDataAdapter<?> adapter = resolved.get(type);
+
+        if (adapter == null) {
+            adapter = resolve(type);
+            resolved.put(type, adapter == null ? NONE : adapter);
+        }
+        return adapter == NONE ? null : (MetaDataAdapter<Object>) adapter;
+    }
+
+    @Nullable
+    private MetaDataAdapter<?> resolve(@NonNull Class<?> type) {
+        for (Class<?> cls = type; cls != null; cls = cls.getSuperclass()) {
+            MetaDataAdapter<?> adapter = adapters.get(cls);
+
+            if (adapter != null) {
+                return adapter;
+            }
+        }
+
+        // search the interfaces breadth first, so that the most specific one is found
+        Queue<Class<?>> queue = new ArrayDeque<>();
+        Set<Class<?>> visited = new HashSet<>();
+
+        for (Class<?> cls = type; cls != null; cls = cls.getSuperclass()) {
+            for (Class<?> iface : cls.getInterfaces()) {
+                queue.add(iface);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            Class<?> iface = queue.remove();
+
+            if (visited.add(iface)) {
+                MetaDataAdapter<?> adapter = adapters.get(iface);
+
+                if (adapter != null) {
+                    return adapter;
+                }
+                for (Class<?> parent : iface.getInterfaces()) {
+                    queue.add(parent);
+                }
+            }
+        }
+        return null;
+    }
+}
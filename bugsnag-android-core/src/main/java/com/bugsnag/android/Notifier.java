@@ -22,6 +22,18 @@ public class Notifier implements JsonStream.Streamable {
     @NonNull
     private String url = NOTIFIER_URL;
 
+    // the notifier is serialized in every payload, so is only rendered when it changes
+    private final JsonFragment fragment = new JsonFragment(new JsonStream.Streamable() {
+        @Override
+        public void toStream(@NonNull JsonStream writer) throws IOException {
+            writer.beginObject();
+            writer.name("name").value(name);
+            writer.name("version").value(version);
+            writer.name("url").value(url);
+            writer.endObject();
+        }
+    });
+
     private static final Notifier instance = new Notifier();
 
     @NonNull
@@ -31,27 +43,26 @@ public class Notifier implements JsonStream.Streamable {
 
     @Override
     public void toStream(@NonNull JsonStream writer) throws IOException {
-        writer.beginObject();
-        writer.name("name").value(name);
-        writer.name("version").value(version);
-        writer.name("url").value(url);
-        writer.endObject();
+        fragment.toStream(writer);
     }
 
     @InternalApi
     public void setVersion(@NonNull String version) {
         this.version = version;
+        fragment.invalidate();
     }
 
     @InternalApi
     @SuppressWarnings("checkstyle:AbbreviationAsWordInName")
     public void setURL(@NonNull String url) {
         this.url = url;
+        fragment.invalidate();
     }
 
     @InternalApi
     public void setName(@NonNull String name) {
         this.name = name;
+        fragment.invalidate();
     }
 
     @NonNull
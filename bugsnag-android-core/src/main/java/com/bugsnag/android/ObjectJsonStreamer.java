@@ -4,81 +4,358 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.io.IOException;
-import java.lang.reflect.Array;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 class ObjectJsonStreamer {
 
+    static final String TRUNCATED_SUFFIX = "***TRUNCATED***";
+
     private static final String FILTERED_PLACEHOLDER = "[FILTERED]";
     private static final String OBJECT_PLACEHOLDER = "[OBJECT]";
+    static final String CIRCULAR_PLACEHOLDER = "[CIRCULAR]";
+    private static final String MAX_DEPTH_PLACEHOLDER = "[MAX DEPTH]";
+    private static final String TRUNCATED_ENTRIES_KEY = "[TRUNCATED]";
+
+    @Nullable
+    private KeyFilter keyFilter = KeyFilter.DEFAULT;
+
+    // the filter compiled when metadata was last merged into this streamer's metadata, which is
+    // reused as the same metadata is merged for every error
+    @Nullable
+    private volatile KeyFilter mergedKeyFilter;
+
+    // byte arrays of at least this length are written as base64 strings, unless it is 0
+    int byteArrayBase64Threshold = 0;
+
+    // limits on the size of the values written, each of which is disabled when 0
+    int maxDepth = 0;
+    int maxCollectionSize = 0;
+    int maxStringLength = 0;
+
+    // converts values of other types, which are otherwise written as a placeholder
+    @Nullable
+    private MetaDataAdapters adapters;
+
+    void setFilters(@Nullable String[] filters) {
+        keyFilter = KeyFilter.compile(filters, keyFilter);
+    }
+
+    /**
+     * Sets the filters of metadata which was merged into the given streamer's metadata. The
+     * compiled filter is kept by that streamer, so merging the same metadata again reuses it.
+     */
+    void setMergedFilters(@Nullable String[] filters, @NonNull ObjectJsonStreamer base) {
+        KeyFilter filter = KeyFilter.compile(filters, base.keyFilter, base.mergedKeyFilter);
+
+        if (filter != base.keyFilter) {
+            base.mergedKeyFilter = filter;
+        }
+        keyFilter = filter;
+    }
+
+    @Nullable
+    String[] getFilters() {
+        return keyFilter == null ? null : keyFilter.getFilters();
+    }
+
+    /**
+     * Combines the limits of another streamer with the limits of this streamer, keeping the
+     * lowest of each limit which is enabled
+     */
+    void mergeLimits(@NonNull ObjectJsonStreamer other) {
+        byteArrayBase64Threshold = lowestEnabled(byteArrayBase64Threshold,
+                                                 other.byteArrayBase64Threshold);
+        maxDepth = lowestEnabled(maxDepth, other.maxDepth);
+        maxCollectionSize = lowestEnabled(maxCollectionSize, other.maxCollectionSize);
+        maxStringLength = lowestEnabled(maxStringLength, other.maxStringLength);
+    }
+
+    <T> void addAdapter(@NonNull Class<T> type, @NonNull MetaDataAdapter<? super T> adapter) {
+        if (adapters == null) {
+            adapters = new MetaDataAdapters();
+        }
+        adapters.add(type, adapter);
+    }
+
+    /**
+     * Uses the adapters of another streamer as well as the adapters of this streamer, with
+     * the other streamer's adapters taking precedence. When this streamer has no adapters the
+     * other streamer's are shared, so that the adapters found for each class stay cached.
+     */
+    void mergeAdapters(@NonNull ObjectJsonStreamer other) {
+        if (other.adapters == null || other.adapters == adapters) {
+            return;
+        }
+        if (adapters == null) {
+            adapters = other.adapters;
+        } else {
+            MetaDataAdapters merged = new MetaDataAdapters();
+            merged.addAll(adapters);
+            merged.addAll(other.adapters);
+            adapters = merged;
+        }
+    }
 
-    String[] filters = {"password"};
+    private static int lowestEnabled(int first, int second) {
+        if (first == 0 || second == 0) {
+            return Math.max(first, second);
+        }
+        return Math.min(first, second);
+    }
 
     // Write complex/nested values to a JsonStreamer
     void objectToStream(@Nullable Object obj,
                         @NonNull JsonStream writer) throws IOException {
+        objectToStream(obj, writer, 1, null);
+    }
+
+    /**
+     * Writes a value at the given depth, where path holds the maps, collections and arrays
+     * which contain the value, so that a value which contains itself is not written forever
+     */
+    private void objectToStream(@Nullable Object obj, @NonNull JsonStream writer, int depth,
+                                @Nullable Set<Object> path) throws IOException {
         if (obj == null) {
             writer.nullValue();
         } else if (obj instanceof String) {
-            writer.value((String) obj);
+            stringToStream((String) obj, writer);
         } else if (obj instanceof Number) {
             writer.value((Number) obj);
         } else if (obj instanceof Boolean) {
             writer.value((Boolean) obj);
-        } else if (obj instanceof Map) {
-            // Map objects
-            writer.beginObject();
-            for (Object o : ((Map) obj).entrySet()) {
-
-                @SuppressWarnings("unchecked")
-                Map.Entry<Object, Object> entry = (Map.Entry<Object, Object>) o;
-
-                Object keyObj = entry.getKey();
-                if (keyObj instanceof String) {
-                    String key = (String) keyObj;
-                    writer.name(key);
-                    if (shouldFilter(key)) {
-                        writer.value(FILTERED_PLACEHOLDER);
-                    } else {
-                        objectToStream(entry.getValue(), writer);
-                    }
-                }
+        } else if (obj instanceof Map || obj instanceof Collection || obj.getClass().isArray()) {
+            if (maxDepth > 0 && depth > maxDepth) {
+                writer.value(MAX_DEPTH_PLACEHOLDER);
+                return;
+            }
+            if (path == null) {
+                path = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
             }
-            writer.endObject();
-        } else if (obj instanceof Collection) {
-            // Collection objects (Lists, Sets etc)
-            writer.beginArray();
-            for (Object entry : (Collection) obj) {
-                objectToStream(entry, writer);
-            }
-            writer.endArray();
-        } else if (obj.getClass().isArray()) {
-            // Primitive array objects
-            writer.beginArray();
-            int length = Array.getLength(obj);
-            for (int i = 0; i < length; i += 1) {
-                objectToStream(Array.get(obj, i), writer);
-            }
-            writer.endArray();
+            if (!path.add(obj)) {
+                writer.value(CIRCULAR_PLACEHOLDER);
+                return;
+            }
+
+            if (obj instanceof Map) {
+                mapToStream((Map<?, ?>) obj, writer, depth, path);
+            } else if (obj instanceof Collection) {
+                collectionToStream((Collection<?>) obj, writer, depth, path);
+            } else {
+                arrayToStream(obj, writer, depth, path);
+            }
+            path.remove(obj);
+        } else if (obj instanceof JsonStream.Streamable) {
+            writer.value((JsonStream.Streamable) obj);
         } else {
+            adaptedToStream(obj, writer, depth, path);
+        }
+    }
+
+    /**
+     * Writes a value of any other type as the metadata which its adapter converts it into, or
+     * as a placeholder if it has no adapter or cannot be converted
+     */
+    private void adaptedToStream(@NonNull Object obj, @NonNull JsonStream writer, int depth,
+                                 @Nullable Set<Object> path) throws IOException {
+        MetaDataAdapters registry = adapters;
+        MetaDataAdapter<Object> adapter = registry == null ? null : registry.find(obj.getClass());
+
+        if (adapter == null) {
             writer.value(OBJECT_PLACEHOLDER);
+            return;
         }
+        if (path == null) {
+            path = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        }
+        if (!path.add(obj)) {
+            writer.value(CIRCULAR_PLACEHOLDER);
+            return;
+        }
+        Object converted;
+
+        try {
+            converted = adapter.toMetaData(obj);
+        } catch (RuntimeException exception) {
+            Logger.warn("Failed to convert metaData value of " + obj.getClass(), exception);
+            converted = OBJECT_PLACEHOLDER;
+        }
+        objectToStream(converted, writer, depth, path);
+        path.remove(obj);
     }
 
-    // Should this key be filtered
-    private boolean shouldFilter(@Nullable String key) {
-        if (filters == null || key == null) {
-            return false;
+    private void stringToStream(@NonNull String value,
+                                @NonNull JsonStream writer) throws IOException {
+        if (maxStringLength > 0 && value.length() > maxStringLength) {
+            int length = maxStringLength;
+
+            // avoid splitting a surrogate pair
+            if (Character.isHighSurrogate(value.charAt(length - 1))) {
+                length--;
+            }
+            writer.value(value.substring(0, length) + TRUNCATED_SUFFIX);
+        } else {
+            writer.value(value);
+        }
+    }
+
+    private void mapToStream(@NonNull Map<?, ?> map, @NonNull JsonStream writer, int depth,
+                             @NonNull Set<Object> path) throws IOException {
+        writer.beginObject();
+        int count = 0;
+        Iterator<? extends Map.Entry<?, ?>> iterator = map.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            if (maxCollectionSize > 0 && count == maxCollectionSize) {
+                writer.name(TRUNCATED_ENTRIES_KEY).value(countRemaining(iterator));
+                break;
+            }
+            Map.Entry<?, ?> entry = iterator.next();
+            Object keyObj = entry.getKey();
+
+            if (keyObj instanceof String) {
+                String key = (String) keyObj;
+                writer.name(key);
+                if (shouldFilter(key)) {
+                    writer.value(FILTERED_PLACEHOLDER);
+                } else {
+                    objectToStream(entry.getValue(), writer, depth + 1, path);
+                }
+                count++;
+            }
+        }
+        writer.endObject();
+    }
+
+    private void collectionToStream(@NonNull Collection<?> collection, @NonNull JsonStream writer,
+                                    int depth, @NonNull Set<Object> path) throws IOException {
+        writer.beginArray();
+        int count = 0;
+        Iterator<?> iterator = collection.iterator();
+
+        while (iterator.hasNext()) {
+            if (maxCollectionSize > 0 && count == maxCollectionSize) {
+                writeTruncatedItems(countRemaining(iterator), writer);
+                break;
+            }
+            objectToStream(iterator.next(), writer, depth + 1, path);
+            count++;
+        }
+        writer.endArray();
+    }
+
+    private static int countRemaining(Iterator<?> iterator) {
+        int remaining = 0;
+
+        while (iterator.hasNext()) {
+            iterator.next();
+            remaining++;
         }
+        return remaining;
+    }
+
+    private static void writeTruncatedItems(int count,
+                                            @NonNull JsonStream writer) throws IOException {
+        writer.value("[TRUNCATED " + count + " ITEMS]");
+    }
+
+    // Write arrays without reflection, so that primitive elements are not boxed
+    private void arrayToStream(@NonNull Object array, @NonNull JsonStream writer, int depth,
+                               @NonNull Set<Object> path) throws IOException {
+        if (array instanceof byte[] && byteArrayBase64Threshold > 0
+            && ((byte[]) array).length >= byteArrayBase64Threshold) {
+            writer.base64Value((byte[]) array);
+            return;
+        }
+
+        int length = 0;
+        int count = 0;
 
-        for (String filter : filters) {
-            if (key.contains(filter)) {
-                return true;
+        writer.beginArray();
+        if (array instanceof Object[]) {
+            Object[] elements = (Object[]) array;
+            length = elements.length;
+            count = limitCount(length);
+            for (int k = 0; k < count; k++) {
+                objectToStream(elements[k], writer, depth + 1, path);
+            }
+        } else if (array instanceof int[]) {
+            int[] elements = (int[]) array;
+            length = elements.length;
+            count = limitCount(length);
+            for (int k = 0; k < count; k++) {
+                writer.value(elements[k]);
+            }
+        } else if (array instanceof long[]) {
+            long[] elements = (long[]) array;
+            length = elements.length;
+            count = limitCount(length);
+            for (int k = 0; k < count; k++) {
+                writer.value(elements[k]);
+            }
+        } else if (array instanceof double[]) {
+            double[] elements = (double[]) array;
+            length = elements.length;
+            count = limitCount(length);
+            for (int k = 0; k < count; k++) {
+                writer.value(elements[k]);
+            }
+        } else if (array instanceof float[]) {
+            float[] elements = (float[]) array;
+            length = elements.length;
+            count = limitCount(length);
+            for (int k = 0; k < count; k++) {
+                writer.floatValue(elements[k]);
+            }
+        } else if (array instanceof boolean[]) {
+            boolean[] elements = (boolean[]) array;
+            length = elements.length;
+            count = limitCount(length);
+            for (int k = 0; k < count; k++) {
+                writer.value(elements[k]);
             }
+        } else if (array instanceof byte[]) {
+            byte[] elements = (byte[]) array;
+            length = elements.length;
+            count = limitCount(length);
+            for (int k = 0; k < count; k++) {
+                writer.value(elements[k]);
+            }
+        } else if (array instanceof short[]) {
+            short[] elements = (short[]) array;
+            length = elements.length;
+            count = limitCount(length);
+            for (int k = 0; k < count; k++) {
+                writer.value(elements[k]);
+            }
+        } else if (array instanceof char[]) {
+            char[] elements = (char[]) array;
+            length = elements.length;
+            count = limitCount(length);
+            for (int k = 0; k < count; k++) {
+                writer.value(String.valueOf(elements[k]));
+            }
+        }
+
+        if (count < length) {
+            writeTruncatedItems(length - count, writer);
         }
+        writer.endArray();
+    }
+
+    // Gets the number of items of a collection of the given size which are written
+    private int limitCount(int length) {
+        return maxCollectionSize > 0 ? Math.min(length, maxCollectionSize) : length;
+    }
 
-        return false;
+    // Should this key be filtered
+    private boolean shouldFilter(@Nullable String key) {
+        KeyFilter filter = keyFilter;
+        return filter != null && key != null && filter.matches(key);
     }
 
 }
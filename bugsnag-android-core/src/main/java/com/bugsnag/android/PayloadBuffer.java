@@ -0,0 +1,127 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * A growable buffer which holds a payload serialized as UTF-8 JSON, so that it can be written
+ * to disk or sent over the network without being serialized again.
+ * <p>
+ * Buffers are pooled to avoid allocating a new backing array for each payload. A buffer must be
+ * returned to the pool with {@link #recycle(PayloadBuffer)} once its contents are no longer
+ * needed, and must not be used afterwards.
+ */
+class PayloadBuffer extends ByteArrayOutputStream {
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+    private static final int MAX_RETAINED_CAPACITY = 512 * 1024;
+    private static final int MAX_POOL_SIZE = 2;
+
+    private static final Deque<PayloadBuffer> POOL = new ArrayDeque<>();
+
+    PayloadBuffer() {
+        super(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Obtains an empty buffer from the pool, or allocates one if the pool is empty
+     */
+    @NonNull
+    static PayloadBuffer obtain() {
+        synchronized (POOL) {
+            PayloadBuffer buffer = POOL.poll();
+            return buffer != null ? buffer : new PayloadBuffer();
+        }
+    }
+
+    /**
+     * Returns a buffer to the pool. Buffers which have grown beyond the maximum retained
+     * capacity are discarded so that one large payload does not hold on to memory.
+     */
+    static void recycle(@Nullable PayloadBuffer buffer) {
+        if (buffer == null || buffer.buf.length > MAX_RETAINED_CAPACITY) {
+            return;
+        }
+        buffer.reset();
+
+        synchronized (POOL) {
+            if (POOL.size() < MAX_POOL_SIZE && !POOL.contains(buffer)) {
+                POOL.push(buffer);
+            }
+        }
+    }
+
+    /**
+     * Serializes a streamable into a pooled buffer. If serialization fails the buffer is
+     * recycled before the exception is thrown.
+     */
+    @NonNull
+    static PayloadBuffer render(@NonNull JsonStream.Streamable streamable) throws IOException {
+        PayloadBuffer buffer = obtain();
+
+        try {
+            JsonStream stream = new JsonStream(buffer);
+            streamable.toStream(stream);
+            stream.flush();
+            PipelineMetrics.getInstance().recordBytesSerialized(buffer.size());
+            return buffer;
+        } catch (IOException exception) {
+            recycle(buffer);
+            throw exception;
+        } catch (RuntimeException exception) {
+            recycle(buffer);
+            throw exception;
+        }
+    }
+
+    /**
+     * Returns a stream over the buffered JSON
+     */
+    @NonNull
+    InputStream openStream() {
+        return new ByteArrayInputStream(buf, 0, count);
+    }
+
+    /**
+     * Reads a range of a file onto the end of the buffer, without copying it through an
+     * intermediate buffer
+     */
+    void readFrom(@NonNull FileChannel channel, long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE - count) {
+            throw new IOException("File range is too large to buffer: " + length);
+        }
+        int end = count + (int) length;
+
+        if (end > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(end, buf.length * 2));
+        }
+        ByteBuffer target = ByteBuffer.wrap(buf, count, (int) length);
+
+        while (target.hasRemaining()) {
+            int read = channel.read(target, position + target.position() - count);
+
+            if (read < 0) {
+                throw new EOFException("File ended before offset " + (position + length));
+            }
+        }
+        count = end;
+    }
+
+    /**
+     * Copies the buffered JSON onto a UTF-8 writer without decoding it
+     */
+    void writeTo(@NonNull Utf8Writer writer) throws IOException {
+        writer.writeBytes(buf, 0, count);
+    }
+}
@@ -0,0 +1,228 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+/**
+ * A stored error which is wrapped in the complete body of the request which delivers it, so
+ * that it can be sent by copying the body from its file rather than by serializing it again.
+ * <p>
+ * The file starts with a single header line, which holds the length of the body before the
+ * error, the length of the error, and the API key in the body:
+ * <pre>
+ * bugsnag-envelope:1 123 4567 apiKey
+ * {"apiKey":"apiKey","payloadVersion":"4.0","notifier":{...},"events":[{...}]}
+ * </pre>
+ * Files which were stored without an envelope start with the error's JSON instead, so the two
+ * formats are told apart by the first bytes of the file. Files with an envelope are also marked
+ * in their filename, so that stored errors without one are never opened just to look for a
+ * header.
+ */
+class PayloadEnvelope {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String MAGIC = "bugsnag-envelope:1";
+
+    static final String FILENAME_MARKER = "_envelope";
+    private static final byte[] BODY_SUFFIX = "]}".getBytes(UTF_8);
+
+    // the header holds two numbers and an API key, so is never longer than this
+    private static final int MAX_HEADER_LENGTH = 1024;
+
+    @NonNull
+    private final String apiKey;
+    private final long bodyOffset;
+    private final long bodyLength;
+    private final long payloadOffset;
+    private final long payloadLength;
+
+    private PayloadEnvelope(@NonNull String apiKey, long bodyOffset, long bodyLength,
+                            long payloadOffset, long payloadLength) {
+        this.apiKey = apiKey;
+        this.bodyOffset = bodyOffset;
+        this.bodyLength = bodyLength;
+        this.payloadOffset = payloadOffset;
+        this.payloadLength = payloadLength;
+    }
+
+    /**
+     * Whether a payload can be stored in an envelope with the given API key, which must fit on
+     * the header line
+     */
+    static boolean canEnvelope(@Nullable String apiKey) {
+        return apiKey != null && apiKey.length() > 0 && apiKey.indexOf('\n') == -1
+            && apiKey.length() < MAX_HEADER_LENGTH / 2;
+    }
+
+    /**
+     * Whether a stored error was given a filename which marks it as having an envelope
+     */
+    static boolean isEnveloped(@NonNull File file) {
+        return file.getName().contains(FILENAME_MARKER);
+    }
+
+    /**
+     * Writes a serialized error wrapped in an envelope
+     *
+     * @return the number of bytes written
+     */
+    static long write(@NonNull OutputStream out, @NonNull String apiKey,
+                      @NonNull PayloadBuffer payload) throws IOException {
+        ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+        JsonStream stream = new JsonStream(prefix);
+        stream.beginObject();
+        stream.name("apiKey").value(apiKey);
+        stream.name("payloadVersion").value("4.0");
+        stream.name("notifier").value(Notifier.getInstance());
+        stream.name("events").beginArray();
+        stream.flush();
+
+        String header = MAGIC + " " + prefix.size() + " " + payload.size() + " " + apiKey + "\n";
+        byte[] headerBytes = header.getBytes(UTF_8);
+        out.write(headerBytes);
+        prefix.writeTo(out);
+        payload.writeTo(out);
+        out.write(BODY_SUFFIX);
+        return headerBytes.length + prefix.size() + payload.size() + BODY_SUFFIX.length;
+    }
+
+    /**
+     * Reads the envelope of a stored error
+     *
+     * @return the envelope, or null if the error was stored without one
+     * @throws IOException if the file cannot be read, or its header is invalid
+     */
+    @Nullable
+    static PayloadEnvelope read(@NonNull File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+
+        try {
+            byte[] buffer = new byte[MAX_HEADER_LENGTH];
+            int length = 0;
+            int read = 0;
+
+            while (length < buffer.length && read != -1 && indexOf(buffer, length) == -1) {
+                read = input.read(buffer, length, buffer.length - length);
+                length += Math.max(read, 0);
+
+                if (length > 0 && buffer[0] != MAGIC.charAt(0)) {
+                    return null; // the file contains only the error
+                }
+            }
+            int end = indexOf(buffer, length);
+
+            if (end == -1) {
+                if (length < MAGIC.length()) {
+                    return null;
+                }
+                throw new IOException("Stored error has no envelope header");
+            }
+            return parseHeader(new String(buffer, 0, end, UTF_8), end + 1, file.length());
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Reads the envelope of a stored error if its filename marks it as having one, without
+     * opening the file otherwise
+     *
+     * @return the envelope, or null if the error was stored without one
+     * @throws IOException if the file cannot be read, or its header is invalid
+     */
+    @Nullable
+    static PayloadEnvelope find(@NonNull File file) throws IOException {
+        return isEnveloped(file) ? read(file) : null;
+    }
+
+    private static PayloadEnvelope parseHeader(String header, long bodyOffset,
+                                               long fileLength) throws IOException {
+        String[] fields = header.split(" ", 4);
+
+        if (fields.length != 4 || !MAGIC.equals(fields[0])) {
+            throw new IOException("Invalid envelope header: " + header);
+        }
+
+        try {
+            long prefixLength = Long.parseLong(fields[1]);
+            long payloadLength = Long.parseLong(fields[2]);
+            long bodyLength = fileLength - bodyOffset;
+
+            if (prefixLength < 0 || payloadLength < 0
+                || prefixLength + payloadLength + BODY_SUFFIX.length != bodyLength) {
+                throw new IOException("Stored error does not match its envelope: " + header);
+            }
+            return new PayloadEnvelope(fields[3], bodyOffset, bodyLength,
+                bodyOffset + prefixLength, payloadLength);
+        } catch (NumberFormatException exception) {
+            throw new IOException("Invalid envelope header: " + header);
+        }
+    }
+
+    private static int indexOf(byte[] buffer, int length) {
+        for (int k = 0; k < length; k++) {
+            if (buffer[k] == '\n') {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the error stored in a file into a stream, whether or not it has an envelope
+     *
+     * @throws FileNotFoundException if the file was deleted since it was stored, rather than
+     *                               writing nothing in its place
+     */
+    static void writePayload(@NonNull File file, @NonNull JsonStream stream) throws IOException {
+        PayloadEnvelope envelope = find(file);
+
+        if (envelope == null) {
+            if (!file.exists()) {
+                throw new FileNotFoundException("Stored error was deleted: " + file.getName());
+            }
+            stream.value(file);
+        } else {
+            stream.value(file, envelope.payloadOffset, envelope.payloadLength);
+        }
+    }
+
+    /**
+     * Copies the request body from the file onto a stream
+     */
+    void writeBody(@NonNull File file, @NonNull OutputStream out) throws IOException {
+        InputStream input = IOUtils.openRange(file, bodyOffset, bodyLength);
+
+        try {
+            IOUtils.copy(input, out);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    @NonNull
+    String getApiKey() {
+        return apiKey;
+    }
+
+    long getBodyLength() {
+        return bodyLength;
+    }
+
+    long getPayloadOffset() {
+        return payloadOffset;
+    }
+
+    long getPayloadLength() {
+        return payloadLength;
+    }
+}
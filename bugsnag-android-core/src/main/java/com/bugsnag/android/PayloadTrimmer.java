@@ -0,0 +1,190 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reduces the size of a report which exceeds the maximum payload size. Information is removed
+ * in stages until the serialized report fits: breadcrumbs first, then the stacktraces of
+ * threads which did not report the error, then long metadata values, and finally "cause"
+ * exceptions. The stages which were applied are recorded in the report's metadata, which is
+ * included when measuring whether the report fits.
+ *
+ * @see Configuration#setMaxPayloadSize(long)
+ */
+class PayloadTrimmer {
+
+    static final String DIAGNOSTICS_TAB = "BugsnagDiagnostics";
+    static final String STAGE_BREADCRUMBS = "breadcrumbs";
+    static final String STAGE_THREADS = "threads";
+    static final String STAGE_METADATA = "metaData";
+    static final String STAGE_CAUSES = "exceptionCauses";
+
+    private static final int[] METADATA_STRING_LIMITS = {1024, 64};
+    private static final String TRUNCATED_SUFFIX = ObjectJsonStreamer.TRUNCATED_SUFFIX;
+
+    private final long maxPayloadSize;
+
+    PayloadTrimmer(long maxPayloadSize) {
+        this.maxPayloadSize = maxPayloadSize;
+    }
+
+    /**
+     * Trims the report until its serialized size is no larger than the maximum payload size,
+     * or until there is nothing left to remove.
+     *
+     * @return the names of the stages which were applied
+     */
+    @NonNull
+    List<String> trim(@NonNull Report report) {
+        List<String> stages = new ArrayList<>();
+
+        try {
+            long originalSize = CountingWriter.measure(report);
+
+            if (originalSize <= maxPayloadSize) {
+                return stages;
+            }
+            Error error = report.getError();
+
+            // the stages are added to the list as they are applied, so each measurement
+            // includes the diagnostics which will be sent
+            MetaData metaData = error.getMetaData();
+            metaData.addToTab(DIAGNOSTICS_TAB, "payloadTrimmed", stages);
+            metaData.addToTab(DIAGNOSTICS_TAB, "originalPayloadSize", originalSize);
+
+            if (trimBreadcrumbs(report, error, stages)
+                || trimThreads(report, error, stages)
+                || trimMetaData(report, error, stages)
+                || trimCauses(report, error, stages)) {
+                Logger.info("Trimmed report to fit max payload size, removed " + stages);
+            } else {
+                Logger.warn("Report exceeds max payload size after trimming " + stages);
+            }
+        } catch (IOException exception) {
+            Logger.warn("Failed to measure report size, sending untrimmed", exception);
+        }
+        return stages;
+    }
+
+    /**
+     * Removes the oldest half of the breadcrumbs at a time. The error is given its own copy of
+     * the breadcrumbs, as they are otherwise shared with the client.
+     */
+    private boolean trimBreadcrumbs(Report report, Error error, List<String> stages)
+        throws IOException {
+        Breadcrumbs breadcrumbs = error.getBreadcrumbs();
+
+        if (breadcrumbs == null || breadcrumbs.store.isEmpty()) {
+            return false;
+        }
+        stages.add(STAGE_BREADCRUMBS);
+        List<Breadcrumb> crumbs = new ArrayList<>(breadcrumbs.store);
+        int keep = crumbs.size();
+
+        do {
+            keep /= 2;
+            Breadcrumbs trimmed = new Breadcrumbs(error.config);
+            trimmed.store.addAll(crumbs.subList(crumbs.size() - keep, crumbs.size()));
+            error.setBreadcrumbs(trimmed);
+
+            if (fits(report)) {
+                return true;
+            }
+        } while (keep > 0);
+        return false;
+    }
+
+    private boolean trimThreads(Report report, Error error, List<String> stages)
+        throws IOException {
+        ThreadState threadState = error.getThreadState();
+
+        if (threadState == null || !error.config.getSendThreads()) {
+            return false;
+        }
+        stages.add(STAGE_THREADS);
+        threadState.clearOtherStacktraces();
+        return fits(report);
+    }
+
+    /**
+     * Truncates long strings in the metadata, using a shorter limit each time. As global
+     * metadata is merged into the report during serialization, the error is given a trimmed
+     * copy of the merged metadata, which is not merged with the global metadata again. The
+     * diagnostics tab is not copied, so that it still records the stages which are applied
+     * afterwards.
+     */
+    private boolean trimMetaData(Report report, Error error, List<String> stages)
+        throws IOException {
+        MetaData merged = error.getMergedMetaData();
+        stages.add(STAGE_METADATA);
+
+        for (int limit : METADATA_STRING_LIMITS) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> store = (Map<String, Object>) truncateStrings(merged.store, limit,
+                Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+            store.put(DIAGNOSTICS_TAB, error.getMetaData().getTab(DIAGNOSTICS_TAB));
+            MetaData trimmed = new MetaData(store);
+            trimmed.jsonStreamer.setMergedFilters(merged.getFilters(), merged.jsonStreamer);
+            trimmed.jsonStreamer.mergeLimits(merged.jsonStreamer);
+            error.setMergedMetaData(trimmed);
+
+            if (fits(report)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean trimCauses(Report report, Error error, List<String> stages)
+        throws IOException {
+        stages.add(STAGE_CAUSES);
+        error.getExceptions().setIncludeCauses(false);
+        return fits(report);
+    }
+
+    private Object truncateStrings(Object value, int limit, Set<Object> path) {
+        if (value instanceof String) {
+            String str = (String) value;
+
+            if (str.length() > limit) {
+                return str.substring(0, limit) + TRUNCATED_SUFFIX;
+            }
+            return str;
+        } else if ((value instanceof Map || value instanceof Collection) && !path.add(value)) {
+            // the value contains itself, so copying it would never finish
+            return ObjectJsonStreamer.CIRCULAR_PLACEHOLDER;
+        } else if (value instanceof Map) {
+            Map<String, Object> copy = new HashMap<>();
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                Object element = truncateStrings(entry.getValue(), limit, path);
+                copy.put(String.valueOf(entry.getKey()), element);
+            }
+            path.remove(value);
+            return copy;
+        } else if (value instanceof Collection) {
+            List<Object> copy = new ArrayList<>();
+
+            for (Object element : (Collection<?>) value) {
+                copy.add(truncateStrings(element, limit, path));
+            }
+            path.remove(value);
+            return copy;
+        }
+        return value;
+    }
+
+    private boolean fits(Report report) throws IOException {
+        return CountingWriter.measure(report) <= maxPayloadSize;
+    }
+}
@@ -0,0 +1,325 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and timings for the background work performed by the notifier, including the
+ * queues which run background tasks, the serialization and delivery of payloads, and the
+ * files used to store payloads which could not be delivered.
+ * <p>
+ * Metrics can be polled at any time, or a {@link Listener} can be registered to be informed
+ * each time a delivery attempt completes. All values are cumulative from process start.
+ */
+public final class PipelineMetrics {
+
+    /**
+     * Receives updates after each request made by the default delivery
+     */
+    public interface Listener {
+
+        /**
+         * Invoked on the delivery thread when a request completes. Implementations should
+         * return quickly, as further deliveries will wait until they do.
+         *
+         * @param metrics   the current metrics
+         * @param latencyMs the time taken to send the request and receive a response
+         * @param success   whether the payload was delivered
+         */
+        void onDeliveryCompleted(@NonNull PipelineMetrics metrics, long latencyMs,
+                                 boolean success);
+    }
+
+    private static final long[] LATENCY_BUCKET_BOUNDS_MS =
+        {50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    private static final PipelineMetrics instance = new PipelineMetrics();
+
+    private final AtomicLong tasksCompleted = new AtomicLong();
+    private final AtomicLong taskWaitTimeMs = new AtomicLong();
+    private final AtomicLong taskRunTimeMs = new AtomicLong();
+    private final AtomicLong tasksRejected = new AtomicLong();
+    private final AtomicLong tasksDiscarded = new AtomicLong();
+    private final AtomicLong bytesSerialized = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong deliveriesSucceeded = new AtomicLong();
+    private final AtomicLong deliveriesFailed = new AtomicLong();
+    private final AtomicLongArray deliveryLatencyHistogram =
+        new AtomicLongArray(LATENCY_BUCKET_BOUNDS_MS.length + 1);
+    private final AtomicLong filesStored = new AtomicLong();
+    private final AtomicLong filesFlushed = new AtomicLong();
+    private final AtomicLong filesDiscarded = new AtomicLong();
+    private final AtomicLong filesEvictedForCount = new AtomicLong();
+    private final AtomicLong filesEvictedForSize = new AtomicLong();
+    private final AtomicLong filesEvictedForAge = new AtomicLong();
+    private final AtomicLong errorsAggregated = new AtomicLong();
+    private final Collection<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    PipelineMetrics() {
+    }
+
+    @NonNull
+    static PipelineMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Registers a listener which is informed each time a delivery attempt completes
+     *
+     * @param listener the listener
+     */
+    public void addListener(@NonNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener previously added with {@link #addListener(Listener)}
+     *
+     * @param listener the listener
+     */
+    public void removeListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Gets the number of tasks waiting to run in each background queue, keyed by the name
+     * of the queue. Queues are listed in priority order.
+     *
+     * @return the current queue depths
+     */
+    @NonNull
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+
+        for (Async.Lane lane : Async.Lane.values()) {
+            depths.put(lane.name(), Async.getPendingCount(lane));
+        }
+        return Collections.unmodifiableMap(depths);
+    }
+
+    /**
+     * @return the number of background tasks which have finished running
+     */
+    public long getTasksCompleted() {
+        return tasksCompleted.get();
+    }
+
+    /**
+     * @return the total time completed background tasks spent queued before running
+     */
+    public long getTotalTaskWaitTimeMs() {
+        return taskWaitTimeMs.get();
+    }
+
+    /**
+     * @return the total time spent running background tasks
+     */
+    public long getTotalTaskRunTimeMs() {
+        return taskRunTimeMs.get();
+    }
+
+    /**
+     * @return the number of background tasks rejected because their queue was full
+     */
+    public long getTasksRejected() {
+        return tasksRejected.get();
+    }
+
+    /**
+     * @return the number of background tasks dropped because their queue was full
+     */
+    public long getTasksDiscarded() {
+        return tasksDiscarded.get();
+    }
+
+    /**
+     * @return the number of bytes of JSON serialized for delivery or storage
+     */
+    public long getBytesSerialized() {
+        return bytesSerialized.get();
+    }
+
+    /**
+     * @return the number of request body bytes sent by the default delivery, after any
+     * compression
+     */
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * @return the number of requests which delivered their payload
+     */
+    public long getDeliveriesSucceeded() {
+        return deliveriesSucceeded.get();
+    }
+
+    /**
+     * @return the number of requests which failed to deliver their payload
+     */
+    public long getDeliveriesFailed() {
+        return deliveriesFailed.get();
+    }
+
+    /**
+     * Gets the upper bounds of the delivery latency histogram buckets. The histogram has one
+     * more bucket than there are bounds, which counts requests slower than the last bound.
+     *
+     * @return the inclusive upper bound in milliseconds of each bucket
+     */
+    @NonNull
+    public long[] getDeliveryLatencyBucketBoundsMs() {
+        return LATENCY_BUCKET_BOUNDS_MS.clone();
+    }
+
+    /**
+     * @return the number of requests in each latency bucket
+     * @see #getDeliveryLatencyBucketBoundsMs()
+     */
+    @NonNull
+    public long[] getDeliveryLatencyHistogram() {
+        long[] counts = new long[deliveryLatencyHistogram.length()];
+
+        for (int k = 0; k < counts.length; k++) {
+            counts[k] = deliveryLatencyHistogram.get(k);
+        }
+        return counts;
+    }
+
+    /**
+     * @return the number of payloads written to disk for later delivery
+     */
+    public long getFilesStored() {
+        return filesStored.get();
+    }
+
+    /**
+     * @return the number of stored payloads which were delivered and removed from disk
+     */
+    public long getFilesFlushed() {
+        return filesFlushed.get();
+    }
+
+    /**
+     * @return the number of stored payloads removed from disk without being delivered
+     */
+    public long getFilesDiscarded() {
+        return filesDiscarded.get();
+    }
+
+    /**
+     * @return the number of stored payloads removed because the maximum number of stored
+     * payloads was reached. These are included in {@link #getFilesDiscarded()}.
+     */
+    public long getFilesEvictedForCount() {
+        return filesEvictedForCount.get();
+    }
+
+    /**
+     * @return the number of stored payloads removed, or payloads not stored, because the maximum
+     * combined size of stored payloads was reached. These are included in
+     * {@link #getFilesDiscarded()}.
+     */
+    public long getFilesEvictedForSize() {
+        return filesEvictedForSize.get();
+    }
+
+    /**
+     * @return the number of stored payloads removed because they exceeded the maximum age.
+     * These are included in {@link #getFilesDiscarded()}.
+     */
+    public long getFilesEvictedForAge() {
+        return filesEvictedForAge.get();
+    }
+
+    /**
+     * @return the number of errors which were counted against an identical stored report,
+     * rather than being stored separately
+     */
+    public long getErrorsAggregated() {
+        return errorsAggregated.get();
+    }
+
+    void recordTaskCompleted(long waitTimeMs, long runTimeMs) {
+        tasksCompleted.incrementAndGet();
+        taskWaitTimeMs.addAndGet(waitTimeMs);
+        taskRunTimeMs.addAndGet(runTimeMs);
+    }
+
+    void recordTaskRejected() {
+        tasksRejected.incrementAndGet();
+    }
+
+    void recordTaskDiscarded() {
+        tasksDiscarded.incrementAndGet();
+    }
+
+    void recordBytesSerialized(long bytes) {
+        bytesSerialized.addAndGet(bytes);
+    }
+
+    void recordBytesSent(long bytes) {
+        bytesSent.addAndGet(bytes);
+    }
+
+    void recordDelivery(long latencyMs, boolean success) {
+        if (success) {
+            deliveriesSucceeded.incrementAndGet();
+        } else {
+            deliveriesFailed.incrementAndGet();
+        }
+        int bucket = 0;
+
+        while (bucket < LATENCY_BUCKET_BOUNDS_MS.length
+            && latencyMs > LATENCY_BUCKET_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        deliveryLatencyHistogram.incrementAndGet(bucket);
+
+        for (Listener listener : listeners) {
+            try {
+                listener.onDeliveryCompleted(this, latencyMs, success);
+            } catch (Throwable throwable) {
+                Logger.warn("PipelineMetrics listener threw an Exception", throwable);
+            }
+        }
+    }
+
+    void recordFileStored() {
+        filesStored.incrementAndGet();
+    }
+
+    void recordFilesFlushed(int count) {
+        filesFlushed.addAndGet(count);
+    }
+
+    void recordFilesDiscarded(int count) {
+        filesDiscarded.addAndGet(count);
+    }
+
+    void recordErrorAggregated() {
+        errorsAggregated.incrementAndGet();
+    }
+
+    void recordFilesEvictedForCount(int count) {
+        filesEvictedForCount.addAndGet(count);
+        recordFilesDiscarded(count);
+    }
+
+    void recordFilesEvictedForSize(int count) {
+        filesEvictedForSize.addAndGet(count);
+        recordFilesDiscarded(count);
+    }
+
+    void recordFilesEvictedForAge(int count) {
+        filesEvictedForAge.addAndGet(count);
+        recordFilesDiscarded(count);
+    }
+}
@@ -5,6 +5,8 @@ import androidx.annotation.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * An error report payload.
@@ -14,8 +16,8 @@ import java.io.IOException;
  */
 public class Report implements JsonStream.Streamable {
 
-    @Nullable
-    private final File errorFile;
+    @NonNull
+    private final List<File> errorFiles;
 
     @Nullable
     private final Error error;
@@ -27,17 +29,29 @@ public class Report implements JsonStream.Streamable {
     private String apiKey;
     private transient boolean cachingDisabled;
 
+    @Nullable
+    private transient PayloadBuffer serializedError;
+
     Report(@NonNull String apiKey, @NonNull Error error) {
-        this(apiKey, null, error);
+        this(apiKey, Collections.<File>emptyList(), error);
     }
 
     Report(@NonNull String apiKey, @Nullable File errorFile) {
-        this(apiKey, errorFile, null);
+        this(apiKey, errorFile == null
+            ? Collections.<File>emptyList() : Collections.singletonList(errorFile), null);
+    }
+
+    /**
+     * Constructs a report which delivers several stored events in a single request
+     */
+    Report(@NonNull String apiKey, @NonNull List<File> errorFiles) {
+        this(apiKey, errorFiles, null);
     }
 
-    private Report(@NonNull String apiKey, @Nullable File errorFile, @Nullable Error error) {
+    private Report(@NonNull String apiKey, @NonNull List<File> errorFiles,
+                   @Nullable Error error) {
         this.error = error;
-        this.errorFile = errorFile;
+        this.errorFiles = errorFiles;
         this.notifier = Notifier.getInstance();
         this.apiKey = apiKey;
     }
@@ -57,10 +71,14 @@ public class Report implements JsonStream.Streamable {
         writer.name("events").beginArray();
 
         // Write in-memory event
-        if (error != null) {
+        if (serializedError != null) {
+            writer.value(serializedError);
+        } else if (error != null) {
             writer.value(error);
-        } else if (errorFile != null) { // Write on-disk event
-            writer.value(errorFile);
+        } else if (!errorFiles.isEmpty()) { // Write on-disk events
+            for (File errorFile : errorFiles) {
+                PayloadEnvelope.writePayload(errorFile, writer);
+            }
         } else {
             Logger.warn("Expected error or errorFile, found empty payload instead");
         }
@@ -77,6 +95,14 @@ public class Report implements JsonStream.Streamable {
         return error;
     }
 
+    /**
+     * Sets the pre-serialized JSON of the in-memory error, which is written in place of the
+     * error. This must be cleared before the buffer is recycled.
+     */
+    void setSerializedError(@Nullable PayloadBuffer serializedError) {
+        this.serializedError = serializedError;
+    }
+
     /**
      * Alters the API key used for this error report.
      *
@@ -0,0 +1,219 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collapses repeated occurrences of the same error into a single stored report.
+ * <p>
+ * Each stored report's filename contains a fingerprint of the error, made up of its class,
+ * its top in-project stackframes, its grouping hash, and whether it was handled. When an error
+ * with the same fingerprint as a stored report occurs within the aggregation window of that
+ * report first being stored, the occurrence is counted against the stored report rather than
+ * being written to a new file. The counts are added to the report's metadata when it is sent.
+ * The counts are kept in a {@link StoredFileState}, so crash loops which span several app
+ * launches are collapsed as well.
+ *
+ * @see Configuration#setStoredErrorAggregationWindowMs(long)
+ */
+class ReportAggregator {
+
+    static final String FINGERPRINT_MARKER = "_fp";
+    static final int FINGERPRINT_LENGTH = 16;
+
+    private static final int MAX_FINGERPRINT_FRAMES = 3;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final StoredFileState state;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private boolean loaded = false;
+
+    private static class Entry {
+        final int count;
+        final long firstSeenMs;
+        final long lastSeenMs;
+
+        Entry(int count, long firstSeenMs, long lastSeenMs) {
+            this.count = count;
+            this.firstSeenMs = firstSeenMs;
+            this.lastSeenMs = lastSeenMs;
+        }
+    }
+
+    ReportAggregator(@Nullable File stateFile) {
+        this.state = new StoredFileState(stateFile, "error aggregation state");
+    }
+
+    /**
+     * Calculates the fingerprint of an error. The top in-project stackframes are used so that
+     * errors thrown from the same place in the app match even if they pass through different
+     * framework code, falling back to the top stackframes if none are in the project.
+     *
+     * @return a hex string of {@link #FINGERPRINT_LENGTH} characters
+     */
+    @NonNull
+    static String fingerprint(@NonNull Error error, @Nullable String[] projectPackages) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(error.getExceptionName())
+            .append('|').append(error.getGroupingHash())
+            .append('|').append(error.getHandledState().isUnhandled())
+            .append('|').append(error.getSeverity().getName());
+
+        StackTraceElement[] frames = error.getException().getStackTrace();
+        int count = 0;
+
+        for (StackTraceElement frame : frames) {
+            if (count < MAX_FINGERPRINT_FRAMES
+                && Stacktrace.inProject(frame.getClassName(), projectPackages)) {
+                appendFrame(builder, frame);
+                count++;
+            }
+        }
+        for (int k = 0; count == 0 && k < frames.length && k < MAX_FINGERPRINT_FRAMES; k++) {
+            appendFrame(builder, frames[k]);
+        }
+        return hash(builder.toString());
+    }
+
+    private static void appendFrame(StringBuilder builder, StackTraceElement frame) {
+        builder.append('|').append(frame.getClassName())
+            .append('.').append(frame.getMethodName())
+            .append(':').append(frame.getLineNumber());
+    }
+
+    private static String hash(String value) {
+        byte[] digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(value.getBytes(UTF_8));
+        } catch (NoSuchAlgorithmException exception) {
+            digest = new byte[] {
+                (byte) (value.hashCode() >>> 24), (byte) (value.hashCode() >>> 16),
+                (byte) (value.hashCode() >>> 8), (byte) value.hashCode()};
+        }
+        StringBuilder hex = new StringBuilder(FINGERPRINT_LENGTH);
+
+        for (int k = 0; k < digest.length && hex.length() < FINGERPRINT_LENGTH; k++) {
+            hex.append(HEX_DIGITS[(digest[k] >> 4) & 0xf]).append(HEX_DIGITS[digest[k] & 0xf]);
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Returns whether a stored file contains a report with the given fingerprint
+     */
+    static boolean hasFingerprint(@NonNull File file, @NonNull String fingerprint) {
+        return file.getName().contains(FINGERPRINT_MARKER + fingerprint);
+    }
+
+    /**
+     * Returns whether an occurrence at the given time can be counted against a stored report
+     *
+     * @param storedAtMs the time at which the report was stored
+     */
+    synchronized boolean isInWindow(@NonNull File file, long storedAtMs, long windowMs,
+                                    long nowMs) {
+        loadIfNeeded();
+        Entry entry = entries.get(file.getName());
+        long firstSeenMs = entry == null ? storedAtMs : entry.firstSeenMs;
+        return nowMs >= firstSeenMs && nowMs - firstSeenMs <= windowMs;
+    }
+
+    /**
+     * Counts another occurrence of the error in a stored report, and persists the count
+     * immediately as the occurrence may be a crash. Entries for deleted files are only pruned
+     * when reports are removed, so that this does not check every stored file.
+     *
+     * @param storedAtMs the time at which the report was stored
+     */
+    synchronized void recordOccurrence(@NonNull File file, long storedAtMs, long nowMs) {
+        loadIfNeeded();
+        String name = file.getName();
+        Entry entry = entries.get(name);
+
+        if (entry == null) {
+            entry = new Entry(1, storedAtMs, storedAtMs);
+        }
+        entries.put(name, new Entry(entry.count + 1, entry.firstSeenMs, nowMs));
+        save();
+    }
+
+    /**
+     * Gets the number of times the error in a stored report occurred
+     */
+    synchronized int getCount(@NonNull File file) {
+        loadIfNeeded();
+        Entry entry = entries.get(file.getName());
+        return entry == null ? 1 : entry.count;
+    }
+
+    /**
+     * Adds the occurrence count and first and last seen times of an aggregated report to its
+     * metadata
+     */
+    synchronized void addToMetaData(@NonNull File file, @NonNull Error error) {
+        loadIfNeeded();
+        Entry entry = entries.get(file.getName());
+
+        if (entry != null) {
+            MetaData metaData = error.getMetaData();
+            String tab = PayloadTrimmer.DIAGNOSTICS_TAB;
+            metaData.addToTab(tab, "occurrences", entry.count);
+            metaData.addToTab(tab, "firstSeen", DateUtils.toIso8601(new Date(entry.firstSeenMs)));
+            metaData.addToTab(tab, "lastSeen", DateUtils.toIso8601(new Date(entry.lastSeenMs)));
+        }
+    }
+
+    /**
+     * Forgets the counts for files which were sent or discarded, along with any for files
+     * which no longer exist
+     */
+    synchronized void remove(@NonNull Collection<File> files) {
+        loadIfNeeded();
+        boolean changed = false;
+
+        for (File file : files) {
+            changed |= entries.remove(file.getName()) != null;
+        }
+        if (changed && !files.isEmpty()) {
+            StoredFileState.prune(entries, files.iterator().next().getParentFile());
+            save();
+        }
+    }
+
+    private void save() {
+        Map<String, long[]> values = new HashMap<>();
+
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Entry value = entry.getValue();
+            values.put(entry.getKey(),
+                new long[] {value.count, value.firstSeenMs, value.lastSeenMs});
+        }
+        state.save(values);
+    }
+
+    private void loadIfNeeded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        for (Map.Entry<String, long[]> entry : state.load().entrySet()) {
+            long[] fields = entry.getValue();
+
+            if (fields.length > 2) {
+                entries.put(entry.getKey(), new Entry((int) fields[0], fields[1], fields[2]));
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Decides when stored payloads should next be sent after a failed delivery attempt.
+ * <p>
+ * Each file records the number of failed attempts and the earliest time at which it may be
+ * retried, which grows exponentially with jitter up to {@link #MAX_BACKOFF_MS}. A server
+ * response with a Retry-After header additionally holds back all files until the requested
+ * time, however far away it is. Backoff continues across app launches, as the state is kept in
+ * a {@link StoredFileState}.
+ * <p>
+ * This only decides whether a file is due. The store schedules a flush for the time returned
+ * by {@link #getNextAttemptMs(File)} so that deferred files are sent once they are due.
+ */
+class RetryScheduler {
+
+    static final long INITIAL_BACKOFF_MS = 15 * 1000;
+    static final long MAX_BACKOFF_MS = 30 * 60 * 1000;
+
+    private static final String KEY_NOT_BEFORE = "_notBefore";
+    private static final int MAX_BACKOFF_EXPONENT = 16;
+
+    private final StoredFileState state;
+    private final Random random;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private long notBeforeMs = 0;
+    private long notBeforeDelayMs = 0;
+    private boolean loaded = false;
+    private boolean dirty = false;
+
+    private static class Entry {
+        final int attempts;
+        final long nextAttemptMs;
+
+        // the delay which was scheduled, so that a clock change can be detected
+        final long delayMs;
+
+        Entry(int attempts, long nextAttemptMs, long delayMs) {
+            this.attempts = attempts;
+            this.nextAttemptMs = nextAttemptMs;
+            this.delayMs = delayMs;
+        }
+    }
+
+    RetryScheduler(@Nullable File stateFile) {
+        this(stateFile, new Random());
+    }
+
+    RetryScheduler(@Nullable File stateFile, @NonNull Random random) {
+        this.state = new StoredFileState(stateFile, "delivery retry state");
+        this.random = random;
+    }
+
+    /**
+     * Returns whether a file may be sent now. Scheduled times which are further in the future
+     * than the delay they were scheduled with are ignored, as the device clock must have been
+     * changed since they were recorded.
+     */
+    synchronized boolean isDue(@NonNull File file, long nowMs) {
+        loadIfNeeded();
+
+        if (!isTimeReached(notBeforeMs, notBeforeDelayMs, nowMs)) {
+            return false;
+        }
+        Entry entry = entries.get(file.getName());
+        return entry == null || isTimeReached(entry.nextAttemptMs, entry.delayMs, nowMs);
+    }
+
+    /**
+     * Returns the earliest time at which a file may be sent, which is in the past if it is due
+     */
+    synchronized long getNextAttemptMs(@NonNull File file) {
+        loadIfNeeded();
+        Entry entry = entries.get(file.getName());
+        return entry == null ? notBeforeMs : Math.max(notBeforeMs, entry.nextAttemptMs);
+    }
+
+    /**
+     * Records a failed delivery attempt for each file, scheduling the next attempt using
+     * exponential backoff with jitter. If the server requested a delay via Retry-After,
+     * no file is retried before that delay has passed, even if it exceeds the maximum backoff.
+     *
+     * @param retryAfterMs the delay requested by the server, or 0 if none was given
+     */
+    synchronized void onFailure(@NonNull Collection<File> files, long retryAfterMs,
+                                long nowMs) {
+        loadIfNeeded();
+        long serverDelayMs = Math.max(retryAfterMs, 0);
+
+        for (File file : files) {
+            String name = file.getName();
+            Entry previous = entries.get(name);
+            int attempts = previous == null ? 1 : previous.attempts + 1;
+            long delayMs = Math.max(calculateBackoff(attempts), serverDelayMs);
+            entries.put(name, new Entry(attempts, nowMs + delayMs, delayMs));
+        }
+        if (serverDelayMs > 0 && nowMs + serverDelayMs > notBeforeMs) {
+            notBeforeMs = nowMs + serverDelayMs;
+            notBeforeDelayMs = serverDelayMs;
+        }
+        dirty = true;
+    }
+
+    /**
+     * Forgets the retry state for files which were sent or discarded
+     */
+    synchronized void remove(@NonNull Collection<File> files) {
+        loadIfNeeded();
+
+        for (File file : files) {
+            if (entries.remove(file.getName()) != null) {
+                dirty = true;
+            }
+        }
+    }
+
+    synchronized int getAttempts(@NonNull File file) {
+        loadIfNeeded();
+        Entry entry = entries.get(file.getName());
+        return entry == null ? 0 : entry.attempts;
+    }
+
+    /**
+     * Calculates the delay before the given attempt, which doubles with each failure up to a
+     * maximum. A random jitter of up to half the delay is subtracted so that devices which
+     * lost connectivity at the same time do not retry in lockstep.
+     */
+    long calculateBackoff(int attempts) {
+        int exponent = Math.min(Math.max(attempts - 1, 0), MAX_BACKOFF_EXPONENT);
+        long delayMs = Math.min(INITIAL_BACKOFF_MS << exponent, MAX_BACKOFF_MS);
+        long jitterMs = (long) (random.nextDouble() * (delayMs / 2));
+        return delayMs - jitterMs;
+    }
+
+    /**
+     * Parses the value of a Retry-After header, which is either a number of seconds or an
+     * HTTP date.
+     *
+     * @return the requested delay in milliseconds, or 0 if the value could not be parsed
+     */
+    static long parseRetryAfter(@Nullable String value, long nowMs) {
+        if (value == null) {
+            return 0;
+        }
+        String trimmed = value.trim();
+
+        try {
+            return Math.max(Long.parseLong(trimmed) * 1000, 0);
+        } catch (NumberFormatException ignored) {
+            // fall through to parse as an HTTP date
+        }
+
+        DateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+        try {
+            return Math.max(format.parse(trimmed).getTime() - nowMs, 0);
+        } catch (ParseException exception) {
+            Logger.warn("Ignoring invalid Retry-After header: " + value);
+            return 0;
+        }
+    }
+
+    /**
+     * Writes the retry state to disk if it has changed, discarding entries for files which
+     * no longer exist in the given store directory
+     */
+    synchronized void save(@Nullable String storeDirectory) {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        StoredFileState.prune(entries, storeDirectory == null ? null : new File(storeDirectory));
+
+        Map<String, long[]> values = new HashMap<>();
+        values.put(KEY_NOT_BEFORE, new long[] {notBeforeMs, notBeforeDelayMs});
+
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            Entry value = entry.getValue();
+            values.put(entry.getKey(),
+                new long[] {value.attempts, value.nextAttemptMs, value.delayMs});
+        }
+        state.save(values);
+    }
+
+    private static boolean isTimeReached(long timeMs, long delayMs, long nowMs) {
+        return timeMs <= nowMs || timeMs - nowMs > Math.max(delayMs, MAX_BACKOFF_MS);
+    }
+
+    private void loadIfNeeded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        // the delay is absent from state files written before it was recorded
+        for (Map.Entry<String, long[]> entry : state.load().entrySet()) {
+            long[] fields = entry.getValue();
+
+            if (KEY_NOT_BEFORE.equals(entry.getKey())) {
+                notBeforeMs = fields[0];
+                notBeforeDelayMs = fields.length > 1 ? fields[1] : 0;
+            } else if (fields.length > 1) {
+                entries.put(entry.getKey(), new Entry((int) fields[0], fields[1],
+                    fields.length > 2 ? fields[2] : 0));
+            }
+        }
+    }
+}
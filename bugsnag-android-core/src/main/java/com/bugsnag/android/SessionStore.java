@@ -39,6 +39,16 @@ class SessionStore extends FileStore<Session> {
             128, SESSION_COMPARATOR, delegate);
     }
 
+    @Override
+    long getMaxStoreBytes() {
+        return config.getMaxStoredSessionsSizeBytes();
+    }
+
+    @Override
+    long getMaxStoreAgeMs() {
+        return config.getMaxStoredSessionAgeMs();
+    }
+
     @NonNull
     @Override
     String getFilename(Object object) {
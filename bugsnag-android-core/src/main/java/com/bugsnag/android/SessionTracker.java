@@ -168,27 +168,19 @@ class SessionTracker extends Observable implements Application.ActivityLifecycle
 
             try {
                 final String endpoint = configuration.getSessionEndpoint();
-                Async.run(new Runnable() {
+                Async.run(Async.Lane.SESSION, new Runnable() {
                     @Override
                     public void run() {
-                        //FUTURE:SM It would be good to optimise this
-                        flushStoredSessions();
-
-                        SessionTrackingPayload payload =
-                            new SessionTrackingPayload(session, null,
-                                client.appData, client.deviceData);
+                        // stored sessions and the new session are sent to the same endpoint,
+                        // so hold the connection open between the two requests
+                        sessionStore.beginFlush();
 
                         try {
-                            for (BeforeSendSession mutator : configuration.getSessionCallbacks()) {
-                                mutator.beforeSendSession(payload);
-                            }
-
-                            configuration.getDelivery().deliver(payload, configuration);
-                        } catch (DeliveryFailureException exception) { // store for later sending
-                            Logger.warn("Storing session payload for future delivery", exception);
-                            sessionStore.write(session);
-                        } catch (Exception exception) {
-                            Logger.warn("Dropping invalid session tracking payload", exception);
+                            //FUTURE:SM It would be good to optimise this
+                            flushStoredSessions();
+                            deliverSession(session);
+                        } finally {
+                            sessionStore.endFlush();
                         }
                     }
                 });
@@ -199,6 +191,24 @@ class SessionTracker extends Observable implements Application.ActivityLifecycle
         }
     }
 
+    private void deliverSession(Session session) {
+        SessionTrackingPayload payload =
+            new SessionTrackingPayload(session, null, client.appData, client.deviceData);
+
+        try {
+            for (BeforeSendSession mutator : configuration.getSessionCallbacks()) {
+                mutator.beforeSendSession(payload);
+            }
+
+            configuration.getDelivery().deliver(payload, configuration);
+        } catch (DeliveryFailureException exception) { // store for later sending
+            Logger.warn("Storing session payload for future delivery", exception);
+            sessionStore.write(session);
+        } catch (Exception exception) {
+            Logger.warn("Dropping invalid session tracking payload", exception);
+        }
+    }
+
     /**
      * Track a new session when auto capture is enabled via config after initialisation.
      */
@@ -271,6 +281,7 @@ class SessionTracker extends Observable implements Application.ActivityLifecycle
                     try {
                         configuration.getDelivery().deliver(payload, configuration);
                         sessionStore.deleteStoredFiles(storedFiles);
+                        PipelineMetrics.getInstance().recordFilesFlushed(storedFiles.size());
                     } catch (DeliveryFailureException exception) {
                         sessionStore.cancelQueuedFiles(storedFiles);
                         Logger.warn("Leaving session payload for future delivery", exception);
@@ -278,6 +289,7 @@ class SessionTracker extends Observable implements Application.ActivityLifecycle
                         // drop bad data
                         Logger.warn("Deleting invalid session tracking payload", exception);
                         sessionStore.deleteStoredFiles(storedFiles);
+                        PipelineMetrics.getInstance().recordFilesDiscarded(storedFiles.size());
                     }
                 }
             } finally {
@@ -5,22 +5,21 @@ import androidx.annotation.NonNull;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 
 public class SessionTrackingPayload implements JsonStream.Streamable {
 
     private final Notifier notifier;
     private final Session session;
-    private final Map<String, Object> deviceDataSummary;
-    private final Map<String, Object> appDataSummary;
+    private final JsonFragment deviceDataSummary;
+    private final JsonFragment appDataSummary;
     private final List<File> files;
 
     SessionTrackingPayload(Session session,
                            List<File> files,
                            AppData appData,
                            DeviceData deviceData) {
-        this.appDataSummary = appData.getAppDataSummary();
-        this.deviceDataSummary = deviceData.getDeviceDataSummary();
+        this.appDataSummary = appData.getAppDataSummaryFragment();
+        this.deviceDataSummary = deviceData.getDeviceDataSummaryFragment();
         this.notifier = Notifier.getInstance();
         this.session = session;
         this.files = files;
@@ -49,8 +48,4 @@ public class SessionTrackingPayload implements JsonStream.Streamable {
     Session getSession() {
         return session;
     }
-
-    Map<String, Object> getDevice() {
-        return deviceDataSummary;
-    }
 }
@@ -0,0 +1,129 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Persists numeric state about the files in a store, such as their retry backoff, in a
+ * properties file next to the store directory. Each entry is keyed by a filename and holds a
+ * list of numbers, which are written separated by commas.
+ */
+class StoredFileState {
+
+    private static final String SEPARATOR = ",";
+
+    @Nullable
+    private final File stateFile;
+    private final String description;
+
+    /**
+     * @param stateFile   the file to persist the state in, or null to keep it in memory only
+     * @param description describes the state in log messages
+     */
+    StoredFileState(@Nullable File stateFile, @NonNull String description) {
+        this.stateFile = stateFile;
+        this.description = description;
+    }
+
+    /**
+     * Reads the persisted state, skipping any entries which cannot be parsed
+     *
+     * @return the values of each entry, which is empty if no state has been written
+     */
+    @NonNull
+    Map<String, long[]> load() {
+        Map<String, long[]> values = new HashMap<>();
+
+        if (stateFile == null || !stateFile.exists()) {
+            return values;
+        }
+        Properties properties = new Properties();
+        InputStream input = null;
+
+        try {
+            input = new FileInputStream(stateFile);
+            properties.load(input);
+        } catch (IOException exception) {
+            Logger.warn("Failed to read " + description, exception);
+            return values;
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+
+        for (String name : properties.stringPropertyNames()) {
+            try {
+                String[] parts = properties.getProperty(name).split(SEPARATOR);
+                long[] fields = new long[parts.length];
+
+                for (int k = 0; k < parts.length; k++) {
+                    fields[k] = Long.parseLong(parts[k]);
+                }
+                values.put(name, fields);
+            } catch (NumberFormatException exception) {
+                Logger.warn("Ignoring invalid " + description + " for " + name);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Replaces the persisted state with the given entries
+     */
+    void save(@NonNull Map<String, long[]> values) {
+        if (stateFile == null) {
+            return;
+        }
+        Properties properties = new Properties();
+
+        for (Map.Entry<String, long[]> entry : values.entrySet()) {
+            StringBuilder value = new StringBuilder();
+
+            for (long field : entry.getValue()) {
+                if (value.length() > 0) {
+                    value.append(SEPARATOR);
+                }
+                value.append(field);
+            }
+            properties.setProperty(entry.getKey(), value.toString());
+        }
+
+        OutputStream output = null;
+
+        try {
+            output = new FileOutputStream(stateFile);
+            properties.store(output, null);
+        } catch (IOException exception) {
+            Logger.warn("Failed to write " + description, exception);
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    /**
+     * Removes the entries for files which no longer exist in the store directory. This checks
+     * every file on disk, so is done when flushing rather than when storing a new payload.
+     */
+    static void prune(@NonNull Map<String, ?> entries, @Nullable File storeDirectory) {
+        if (storeDirectory == null) {
+            return;
+        }
+        Iterator<String> iterator = entries.keySet().iterator();
+
+        while (iterator.hasNext()) {
+            if (!new File(storeDirectory, iterator.next()).exists()) {
+                iterator.remove();
+            }
+        }
+    }
+}
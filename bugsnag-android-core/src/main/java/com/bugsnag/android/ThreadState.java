@@ -42,10 +42,6 @@ class ThreadState implements JsonStream.Streamable {
         }
     }
 
-    ThreadState(@NonNull CachedThread[] cachedThreads) {
-        this.cachedThreads = cachedThreads;
-    }
-
     /**
      * Returns an array of threads sorted by thread id
      *
@@ -63,6 +59,17 @@ class ThreadState implements JsonStream.Streamable {
         return threads;
     }
 
+    /**
+     * Discards the stack frames of every thread other than the one which reported the error
+     */
+    void clearOtherStacktraces() {
+        for (CachedThread thread : cachedThreads) {
+            if (!thread.isErrorReportingThread()) {
+                thread.clearStacktrace();
+            }
+        }
+    }
+
     @Override
     public void toStream(@NonNull JsonStream writer) throws IOException {
         writer.beginArray();
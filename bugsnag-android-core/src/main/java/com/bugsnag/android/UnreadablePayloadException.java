@@ -0,0 +1,17 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a payload could not be read or serialized before a request was made, so that
+ * the failure can be told apart from a network failure. Retrying the request will not help.
+ */
+class UnreadablePayloadException extends IOException {
+    private static final long serialVersionUID = 6244715230451728937L;
+
+    UnreadablePayloadException(@NonNull IOException cause) {
+        super("Failed to read payload: " + cause.getMessage(), cause);
+    }
+}
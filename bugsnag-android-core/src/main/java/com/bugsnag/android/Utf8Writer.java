@@ -0,0 +1,243 @@
+package com.bugsnag.android;
+
+import androidx.annotation.NonNull;
+
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A buffered writer which encodes characters as UTF-8 directly into a byte array, avoiding the
+ * charset encoder used by {@link java.io.OutputStreamWriter}. JSON strings are escaped and
+ * encoded in a single pass, and JSON which has already been serialized as UTF-8 can be copied
+ * onto the stream without being decoded. Files are transferred straight into the output when
+ * it is a file or a {@link PayloadBuffer}.
+ */
+class Utf8Writer extends Writer {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // the longest encoding of a single char, or of a surrogate pair
+    private static final int MAX_BYTES_PER_CHAR = 4;
+
+    private static final byte REPLACEMENT_BYTE = '?';
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int count = 0;
+
+    // a high surrogate from the end of the previous write, which is awaiting its low surrogate
+    private char pendingSurrogate = 0;
+
+    Utf8Writer(@NonNull OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        ensureCapacity(MAX_BYTES_PER_CHAR);
+        encode((char) value);
+    }
+
+    @Override
+    public void write(@NonNull char[] chars, int off, int len) throws IOException {
+        for (int k = off; k < off + len; k++) {
+            ensureCapacity(MAX_BYTES_PER_CHAR);
+            encode(chars[k]);
+        }
+    }
+
+    @Override
+    public void write(@NonNull String str, int off, int len) throws IOException {
+        for (int k = off; k < off + len; k++) {
+            ensureCapacity(MAX_BYTES_PER_CHAR);
+            encode(str.charAt(k));
+        }
+    }
+
+    /**
+     * Writes a quoted JSON string, escaping characters using the given replacements for ASCII
+     * characters, and escaping the JavaScript line separators U+2028 and U+2029
+     */
+    void writeString(@NonNull String value, @NonNull String[] replacements) throws IOException {
+        ensureCapacity(1);
+        buffer[count++] = '"';
+        int length = value.length();
+
+        for (int k = 0; k < length; k++) {
+            char c = value.charAt(k);
+            ensureCapacity(MAX_BYTES_PER_CHAR);
+
+            if (c < 0x80) {
+                String replacement = replacements[c];
+
+                if (replacement == null) {
+                    encode(c);
+                } else {
+                    writeAscii(replacement);
+                }
+            } else if (c == '\u2028') {
+                writeAscii("\\u2028");
+            } else if (c == '\u2029') {
+                writeAscii("\\u2029");
+            } else {
+                encode(c);
+            }
+        }
+        flushPendingSurrogate();
+        ensureCapacity(1);
+        buffer[count++] = '"';
+    }
+
+    /**
+     * Writes bytes which are already encoded as UTF-8
+     */
+    void writeBytes(@NonNull byte[] bytes, int off, int len) throws IOException {
+        flushPendingSurrogate();
+
+        if (len > buffer.length - count) {
+            flushBuffer();
+
+            if (len > buffer.length) {
+                out.write(bytes, off, len);
+                return;
+            }
+        }
+        System.arraycopy(bytes, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * Copies a range of a file which is already encoded as UTF-8. The range is read directly
+     * into a payload buffer, or transferred by the channel into a file, rather than being
+     * copied through this writer's buffer.
+     */
+    void transferFrom(@NonNull FileChannel channel, long position,
+                      long length) throws IOException {
+        flushPendingSurrogate();
+
+        if (out instanceof PayloadBuffer) {
+            flushBuffer();
+            ((PayloadBuffer) out).readFrom(channel, position, length);
+        } else if (out instanceof FileOutputStream) {
+            flushBuffer();
+            FileChannel target = ((FileOutputStream) out).getChannel();
+            long end = position + length;
+
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+
+                if (transferred <= 0) {
+                    throw new EOFException("File ended before offset " + end);
+                }
+                position += transferred;
+            }
+        } else {
+            long end = position + length;
+
+            while (position < end) {
+                if (count == buffer.length) {
+                    flushBuffer();
+                }
+                int space = (int) Math.min(buffer.length - count, end - position);
+                int read = channel.read(ByteBuffer.wrap(buffer, count, space), position);
+
+                if (read < 0) {
+                    throw new EOFException("File ended before offset " + end);
+                }
+                count += read;
+                position += read;
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushPendingSurrogate();
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Encodes a char into the buffer, which must have room for at least
+     * {@link #MAX_BYTES_PER_CHAR} bytes. Unpaired surrogates are replaced with '?', as they
+     * would be by {@link java.io.OutputStreamWriter}.
+     */
+    private void encode(char c) {
+        if (pendingSurrogate != 0) {
+            char high = pendingSurrogate;
+            pendingSurrogate = 0;
+
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                buffer[count++] = (byte) (0xf0 | (codePoint >> 18));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                buffer[count++] = (byte) (0x80 | (codePoint & 0x3f));
+                return;
+            }
+            buffer[count++] = REPLACEMENT_BYTE;
+        }
+
+        if (c < 0x80) {
+            buffer[count++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[count++] = (byte) (0xc0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer[count++] = REPLACEMENT_BYTE;
+        } else {
+            buffer[count++] = (byte) (0xe0 | (c >> 12));
+            buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buffer[count++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    /**
+     * Writes an escape sequence, which only contains ASCII characters
+     */
+    private void writeAscii(String value) throws IOException {
+        flushPendingSurrogate();
+        ensureCapacity(value.length());
+
+        for (int k = 0; k < value.length(); k++) {
+            buffer[count++] = (byte) value.charAt(k);
+        }
+    }
+
+    private void flushPendingSurrogate() throws IOException {
+        if (pendingSurrogate != 0) {
+            ensureCapacity(1);
+            pendingSurrogate = 0;
+            buffer[count++] = REPLACEMENT_BYTE;
+        }
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (buffer.length - count < bytes) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.bugsnag.android
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+class AsyncLaneTest {
+
+    private val release = CountDownLatch(1)
+    private val started = CountDownLatch(Async.CORE_POOL_SIZE)
+
+    /**
+     * Occupies every worker thread so that subsequent tasks are queued
+     */
+    @Before
+    fun setUp() {
+        repeat(Async.CORE_POOL_SIZE) {
+            Async.run(Async.Lane.DEFAULT, Runnable {
+                started.countDown()
+                release.await()
+            })
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS))
+    }
+
+    @After
+    fun tearDown() {
+        release.countDown()
+        var attempts = 0
+
+        while ((Async.POOL_WORK_QUEUE.isNotEmpty() || Async.ERROR_WORK_QUEUE.isNotEmpty())
+            && attempts++ < 100) {
+            Thread.sleep(10)
+        }
+    }
+
+    @Test
+    fun higherPriorityLaneRunsFirst() {
+        Async.run(Async.Lane.INTERNAL_ERROR, Runnable {})
+        Async.run(Async.Lane.SESSION, Runnable {})
+        Async.run(Async.Lane.FLUSH, Runnable {})
+
+        val next = Async.POOL_WORK_QUEUE.peek() as Async.LaneTask
+        assertEquals(Async.Lane.FLUSH, next.lane)
+        assertEquals(1, Async.getPendingCount(Async.Lane.SESSION))
+    }
+
+    @Test
+    fun higherPriorityErrorLaneRunsFirst() {
+        val errorsStarted = CountDownLatch(Async.ERROR_POOL_SIZE)
+
+        repeat(Async.ERROR_POOL_SIZE) {
+            Async.run(Async.Lane.HANDLED_ERROR, Runnable {
+                errorsStarted.countDown()
+                release.await()
+            })
+        }
+        assertTrue(errorsStarted.await(5, TimeUnit.SECONDS))
+        Async.run(Async.Lane.HANDLED_ERROR, Runnable {})
+        Async.run(Async.Lane.UNHANDLED_ERROR, Runnable {})
+
+        val next = Async.ERROR_WORK_QUEUE.peek() as Async.LaneTask
+        assertEquals(Async.Lane.UNHANDLED_ERROR, next.lane)
+    }
+
+    @Test
+    fun errorRunsWhileFlushIsRunning() {
+        val flushStarted = CountDownLatch(Async.CORE_POOL_SIZE)
+        val flushRelease = CountDownLatch(1)
+        val errorRan = CountDownLatch(1)
+
+        // replace the tasks occupying every worker with long flushes
+        release.countDown()
+        repeat(Async.CORE_POOL_SIZE) {
+            Async.run(Async.Lane.FLUSH, Runnable {
+                flushStarted.countDown()
+                flushRelease.await()
+            })
+        }
+        assertTrue(flushStarted.await(5, TimeUnit.SECONDS))
+
+        try {
+            Async.run(Async.Lane.UNHANDLED_ERROR, Runnable { errorRan.countDown() })
+            assertTrue(errorRan.await(5, TimeUnit.SECONDS))
+        } finally {
+            flushRelease.countDown()
+        }
+    }
+
+    @Test(expected = RejectedExecutionException::class)
+    fun fullLaneRejects() {
+        repeat(Async.Lane.SESSION.capacity + 1) {
+            Async.run(Async.Lane.SESSION, Runnable {})
+        }
+    }
+
+    @Test
+    fun fullLaneDiscardsNewTask() {
+        repeat(Async.Lane.FLUSH.capacity + 2) {
+            Async.run(Async.Lane.FLUSH, Runnable {})
+        }
+        assertEquals(Async.Lane.FLUSH.capacity, Async.getPendingCount(Async.Lane.FLUSH))
+    }
+
+    @Test
+    fun fullLaneDiscardsOldestTask() {
+        val ran = mutableListOf<Int>()
+        val lane = Async.Lane.INTERNAL_ERROR
+
+        repeat(lane.capacity + 1) { index ->
+            Async.run(lane, Runnable { synchronized(ran) { ran.add(index) } })
+        }
+        assertEquals(lane.capacity, Async.getPendingCount(lane))
+        release.countDown()
+
+        var attempts = 0
+        while (Async.getPendingCount(lane) > 0 && attempts++ < 100) {
+            Thread.sleep(10)
+        }
+        Thread.sleep(50)
+        synchronized(ran) {
+            assertEquals(lane.capacity, ran.size)
+            assertTrue(!ran.contains(0))
+        }
+    }
+}
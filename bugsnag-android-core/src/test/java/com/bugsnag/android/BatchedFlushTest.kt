@@ -0,0 +1,79 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.StringWriter
+
+class BatchedFlushTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private fun createFile(name: String, content: String): File {
+        val file = folder.newFile(name)
+        file.writeText(content)
+        return file
+    }
+
+    private fun lengthsOf(files: List<File>) = files.associateWith { it.length() }
+
+    /**
+     * Verifies that stored files are split into batches by event count
+     */
+    @Test
+    fun partitionByEventCount() {
+        val files = (1..5).map { createFile("$it.json", "{}") }
+        val batches = ErrorStore.partitionBatches(files, lengthsOf(files), 2, 1024)
+
+        assertEquals(3, batches.size)
+        assertEquals(files.subList(0, 2), batches[0])
+        assertEquals(files.subList(2, 4), batches[1])
+        assertEquals(files.subList(4, 5), batches[2])
+    }
+
+    /**
+     * Verifies that stored files are split into batches by combined size, and that a file
+     * which exceeds the byte budget is placed in its own batch
+     */
+    @Test
+    fun partitionByByteBudget() {
+        val small = createFile("small.json", "{\"a\":1}")
+        val large = createFile("large.json", "{\"a\":\"${"x".repeat(100)}\"}")
+        val other = createFile("other.json", "{\"b\":2}")
+        val files = listOf(small, large, other)
+        val batches = ErrorStore.partitionBatches(files, lengthsOf(files), 10, 20)
+
+        assertEquals(listOf(listOf(small), listOf(large), listOf(other)), batches)
+    }
+
+    /**
+     * Verifies that stored files are sized by their indexed lengths rather than on disk
+     */
+    @Test
+    fun partitionByIndexedLength() {
+        val files = (1..3).map { createFile("$it.json", "{}") }
+        val lengths = mapOf(files[0] to 15L, files[1] to 15L, files[2] to 2L)
+        val batches = ErrorStore.partitionBatches(files, lengths, 10, 20)
+
+        assertEquals(listOf(listOf(files[0]), listOf(files[1], files[2])), batches)
+    }
+
+    /**
+     * Verifies that a report containing several stored files writes each as an event
+     */
+    @Test
+    fun reportWritesAllEvents() {
+        val first = createFile("first.json", "{\"id\":1}")
+        val second = createFile("second.json", "{\"id\":2}")
+        val report = Report("api-key", listOf(first, second))
+
+        val writer = StringWriter()
+        JsonStream(writer).use { report.toStream(it) }
+        val json = writer.toString()
+        assertTrue(json.contains("\"events\":[{\"id\":1},{\"id\":2}]"))
+    }
+}
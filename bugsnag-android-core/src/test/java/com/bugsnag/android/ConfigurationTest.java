@@ -152,6 +152,20 @@ public class ConfigurationTest {
         assertEquals(expected, config.getLaunchCrashThresholdMs());
     }
 
+    @Test
+    public void testLaunchCrashFlush() {
+        assertEquals(2000L, config.getLaunchCrashFlushTimeoutMs());
+        assertFalse(config.getLaunchCrashFlushAsync());
+
+        config.setLaunchCrashFlushTimeoutMs(-5);
+        assertEquals(2000L, config.getLaunchCrashFlushTimeoutMs());
+
+        config.setLaunchCrashFlushTimeoutMs(500);
+        config.setLaunchCrashFlushAsync(true);
+        assertEquals(500L, config.getLaunchCrashFlushTimeoutMs());
+        assertTrue(config.getLaunchCrashFlushAsync());
+    }
+
     @Test
     public void testAutoCaptureSessions() throws Exception {
         assertTrue(config.getAutoCaptureSessions());
@@ -0,0 +1,61 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.File
+
+class CountingWriterTest {
+
+    @Test
+    fun countMatchesEncodedSize() {
+        val values = listOf(
+            "plain ascii",
+            "escaped \"quotes\"\n\t\\",
+            "line separators \u2028 \u2029",
+            "é€😀",
+            "unpaired \uD83D surrogate",
+            "unpaired \uDE00 low surrogate",
+            "trailing \uD83D"
+        )
+
+        for (value in values) {
+            val streamable = JsonStream.Streamable { it.value(value) }
+            assertEquals(value, encodedSize(streamable), CountingWriter.measure(streamable))
+        }
+    }
+
+    @Test
+    fun metaDataCountMatchesEncodedSize() {
+        val metaData = MetaData()
+        metaData.addToTab("tab", "values", listOf(1, 2.5, true, null, "ü", intArrayOf(3, 4)))
+        metaData.addToTab("tab", "password", "secret")
+        assertEquals(encodedSize(metaData), CountingWriter.measure(metaData))
+    }
+
+    @Test
+    fun encodedJsonCountedWithoutDecoding() {
+        val fragment = JsonFragment(JsonStream.Streamable { it.value("é€😀") })
+        assertEquals(encodedSize(fragment), CountingWriter.measure(fragment))
+
+        val file = File.createTempFile("payload", ".json")
+        file.deleteOnExit()
+        file.writeText("[\"é€😀\"]", Charsets.UTF_8)
+        val streamable = JsonStream.Streamable {
+            it.beginArray()
+            it.value(file)
+            it.value(file, 1, file.length() - 2)
+            it.endArray()
+        }
+        assertEquals(encodedSize(streamable), CountingWriter.measure(streamable))
+    }
+
+    @Test
+    fun breadcrumbSizeCountsBytes() {
+        val breadcrumb = Breadcrumb("é".repeat(10))
+        assertEquals(encodedSize(breadcrumb), breadcrumb.payloadSize())
+    }
+
+    private fun encodedSize(streamable: JsonStream.Streamable): Long {
+        return PayloadBuffer.render(streamable).size().toLong()
+    }
+}
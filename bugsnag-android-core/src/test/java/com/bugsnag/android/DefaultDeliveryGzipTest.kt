@@ -0,0 +1,74 @@
+package com.bugsnag.android
+
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.net.InetSocketAddress
+import java.util.zip.GZIPInputStream
+
+/**
+ * Delivers payloads to a local mock server and verifies the request bodies it receives
+ */
+class DefaultDeliveryGzipTest {
+
+    private lateinit var server: HttpServer
+    private val bodies = mutableListOf<ByteArray>()
+    private val encodings = mutableListOf<String?>()
+
+    private val payload = JsonStream.Streamable { stream ->
+        stream.beginObject()
+        stream.name("apiKey").value("api-key")
+        stream.name("events").beginArray()
+        repeat(50) {
+            stream.beginObject()
+            stream.name("message").value("Repeated message é $it")
+            stream.endObject()
+        }
+        stream.endArray()
+        stream.endObject()
+    }
+
+    @Before
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/") { exchange ->
+            encodings.add(exchange.requestHeaders.getFirst("Content-Encoding"))
+            bodies.add(exchange.requestBody.readBytes())
+            exchange.sendResponseHeaders(202, -1)
+            exchange.close()
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun compressedBodyMatchesUncompressed() {
+        val delivery = DefaultDelivery(null)
+        val url = "http://127.0.0.1:${server.address.port}/"
+
+        assertEquals(202, delivery.deliver(url, payload, emptyMap(), false))
+        val bytesSerialized = PipelineMetrics.getInstance().bytesSerialized
+        assertEquals(202, delivery.deliver(url, payload, emptyMap(), true))
+
+        assertNull(encodings[0])
+        assertEquals("gzip", encodings[1])
+
+        val plain = bodies[0]
+        val compressed = bodies[1]
+        val decompressed = GZIPInputStream(compressed.inputStream()).readBytes()
+        assertArrayEquals(plain, decompressed)
+        assertTrue(compressed.size < plain.size)
+
+        // the body is compressed as it is serialized, which still counts its full size
+        assertEquals(bytesSerialized + plain.size, PipelineMetrics.getInstance().bytesSerialized)
+    }
+}
@@ -75,4 +75,57 @@ class ErrorFilenameTest {
         assertTrue(ERROR_REPORT_COMPARATOR.compare(File(first), File(startup)) < 0)
         assertTrue(ERROR_REPORT_COMPARATOR.compare(File(second), File(startup)) > 0)
     }
+
+    @Test
+    fun testHandledFilename() {
+        val exc = RuntimeException()
+        val handled = Error.Builder(config, exc, null, Thread.currentThread(), false).build()
+        val unhandled = Error.Builder(config, exc, null, Thread.currentThread(), true)
+            .severityReasonType(HandledState.REASON_UNHANDLED_EXCEPTION)
+            .build()
+
+        assertTrue(errorStore.isHandledReport(File(errorStore.getFilename(handled))))
+        assertFalse(errorStore.isHandledReport(File(errorStore.getFilename(unhandled))))
+
+        val handledFile = File(errorStore.getFilename(handled))
+        assertEquals(ErrorStore.PRIORITY_HANDLED_WARNING, ErrorStore.getPriority(handledFile))
+        handled.severity = Severity.INFO
+        val infoFile = File(errorStore.getFilename(handled))
+        assertEquals(ErrorStore.PRIORITY_HANDLED_INFO, ErrorStore.getPriority(infoFile))
+        val unhandledFile = File(errorStore.getFilename(unhandled))
+        assertEquals(ErrorStore.PRIORITY_UNHANDLED, ErrorStore.getPriority(unhandledFile))
+    }
+
+    @Test
+    fun testFlushOrder() {
+        val now = 1505000000000
+        val info = File("1504999990000_683c6b92-b325-4987-80ad-77086509ca1e_handled_info.json")
+        val error = File("1504999991000_683c6b92-b325-4987-80ad-77086509ca1e_handled_error.json")
+        val warning = File("1504999992000_683c6b92-b325-4987-80ad-77086509ca1e_handled.json")
+        val unhandled = File("1504999993000_683c6b92-b325-4987-80ad-77086509ca1e.json")
+        val ndk = File("1504999994000_683c6b92-b325-4987-80ad-77086509ca1enot-jvm.json")
+        val startup = File("1504999995000_683c6b92-b325-4987-80ad-77086509ca1e_startupcrash.json")
+        val files = listOf(info, error, warning, unhandled, ndk, startup)
+
+        val expected = listOf(startup, unhandled, ndk, error, warning, info)
+        assertEquals(expected, ErrorStore.orderForFlush(files, now))
+
+        // reports which have waited too long are sent after launch crashes
+        val later = now + ErrorStore.PRIORITY_PROMOTION_AGE_MS - 9500
+        assertEquals(listOf(startup, info, unhandled, ndk, error, warning),
+            ErrorStore.orderForFlush(files, later))
+    }
+
+    @Test
+    fun testEvictionOrder() {
+        val old = File("1504000000000_683c6b92-b325-4987-80ad-77086509ca1e.json")
+        val startup = File("1504500000000_683c6b92-b325-4987-80ad-77086509ca1e_startupcrash.json")
+        val handled = File("1505000000000_683c6b92-b325-4987-80ad-77086509ca1e_handled.json")
+        val files = listOf(old, startup, handled)
+
+        assertEquals(files, errorStore.orderForEviction(files))
+
+        config.storedErrorEvictionPolicy = EvictionPolicy.HANDLED_FIRST
+        assertEquals(listOf(handled, old, startup), errorStore.orderForEviction(files))
+    }
 }
@@ -0,0 +1,84 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.StringWriter
+
+class JsonFragmentTest {
+
+    private var renders = 0
+
+    private val fragment = JsonFragment(JsonStream.Streamable { writer ->
+        renders++
+        writer.beginObject()
+        writer.name("count").value(renders)
+        writer.name("text").value("é \u2028 😀")
+        writer.endObject()
+    })
+
+    @Test
+    fun renderedOnce() {
+        val json = fragment.json
+        assertSame(json, fragment.json)
+        assertEquals(1, renders)
+    }
+
+    @Test
+    fun renderedAgainAfterInvalidate() {
+        val first = String(fragment.json, Charsets.UTF_8)
+        fragment.invalidate()
+        val second = String(fragment.json, Charsets.UTF_8)
+        assertEquals(2, renders)
+        assertEquals(first.replace("\"count\":1", "\"count\":2"), second)
+    }
+
+    @Test
+    fun splicedIntoByteStream() {
+        val out = ByteArrayOutputStream()
+        val stream = JsonStream(out)
+        writePayload(stream)
+        assertEquals(expectedPayload(), out.toString("UTF-8"))
+    }
+
+    @Test
+    fun splicedIntoCharStream() {
+        val out = StringWriter()
+        writePayload(JsonStream(out))
+        assertEquals(expectedPayload(), out.toString())
+    }
+
+    @Test
+    fun notifierChangesRendered() {
+        val notifier = Notifier()
+        assertEquals(serialize(notifier), serialize(notifier))
+        notifier.setVersion("9.9.9")
+        notifier.setName("Custom Notifier")
+        assertEquals("{\"name\":\"Custom Notifier\",\"version\":\"9.9.9\","
+            + "\"url\":\"https://bugsnag.com\"}", serialize(notifier))
+    }
+
+    private fun writePayload(stream: JsonStream) {
+        stream.beginObject()
+        stream.name("first")
+        fragment.toStream(stream)
+        stream.name("second")
+        fragment.toStream(stream)
+        stream.endObject()
+        stream.flush()
+    }
+
+    private fun expectedPayload(): String {
+        val value = "{\"count\":1,\"text\":\"é \\u2028 😀\"}"
+        return "{\"first\":$value,\"second\":$value}"
+    }
+
+    private fun serialize(streamable: JsonStream.Streamable): String {
+        val out = StringWriter()
+        val stream = JsonStream(out)
+        streamable.toStream(stream)
+        stream.flush()
+        return out.toString()
+    }
+}
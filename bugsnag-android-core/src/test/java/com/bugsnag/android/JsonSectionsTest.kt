@@ -0,0 +1,61 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.File
+import java.io.IOException
+import java.io.StringWriter
+
+class JsonSectionsTest {
+
+    @Test
+    fun sectionsCopiedUnchanged() {
+        val sections = JsonSections.scan(writeFile("""{"a": {"b": "}\"{[", "c": [1, 2]},
+            |"d":"é ☃", "e": 12.5 , "f":true}""".trimMargin()))
+
+        assertEquals("""{"a":{"b": "}\"{[", "c": [1, 2]}}""", copy(sections, "a"))
+        assertEquals("{\"d\":\"é ☃\"}", copy(sections, "d"))
+        assertEquals("""{"e":12.5}""", copy(sections, "e"))
+        assertEquals("""{"f":true}""", copy(sections, "f"))
+        assertFalse(sections.contains("b"))
+    }
+
+    @Test
+    fun removedSectionForgotten() {
+        val sections = JsonSections.scan(writeFile("""{"a": [], "b": {}}"""))
+        assertTrue(sections.contains("a"))
+
+        sections.remove("a")
+        assertFalse(sections.contains("a"))
+        assertTrue(sections.contains("b"))
+    }
+
+    @Test(expected = IOException::class)
+    fun truncatedFileThrows() {
+        JsonSections.scan(writeFile("""{"a": [1, 2"""))
+    }
+
+    @Test(expected = IOException::class)
+    fun arrayThrows() {
+        JsonSections.scan(writeFile("""[{"a": 1}]"""))
+    }
+
+    private fun writeFile(json: String): File {
+        val file = File.createTempFile("sections", ".json")
+        file.deleteOnExit()
+        file.writeText(json)
+        return file
+    }
+
+    private fun copy(sections: JsonSections, name: String): String {
+        val writer = StringWriter()
+        val stream = JsonStream(writer)
+        stream.beginObject().name(name)
+        sections.write(name, stream)
+        stream.endObject()
+        stream.flush()
+        return writer.toString()
+    }
+}
@@ -0,0 +1,79 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.StringWriter
+
+class JsonStreamFileTest {
+
+    private val value = "{\"text\":\"${"é😀 ".repeat(10000)}\",\"n\":[1,2,3]}"
+
+    private val file = File.createTempFile("payload", ".json").apply {
+        deleteOnExit()
+        writeText(value, Charsets.UTF_8)
+    }
+
+    @Test
+    fun fileTransferredIntoPayloadBuffer() {
+        val buffer = PayloadBuffer.render(JsonStream.Streamable(::writeArray))
+        assertEquals(expectedArray(), buffer.toString("UTF-8"))
+    }
+
+    @Test
+    fun fileTransferredIntoFile() {
+        val target = File.createTempFile("target", ".json")
+        target.deleteOnExit()
+        val out = FileOutputStream(target)
+        val stream = JsonStream(out)
+        writeArray(stream)
+        stream.close()
+        assertEquals(expectedArray(), target.readText(Charsets.UTF_8))
+    }
+
+    @Test
+    fun fileCopiedIntoOtherStreams() {
+        val bytes = ByteArrayOutputStream()
+        val stream = JsonStream(bytes)
+        writeArray(stream)
+        stream.flush()
+        assertEquals(expectedArray(), bytes.toString("UTF-8"))
+
+        val chars = StringWriter()
+        writeArray(JsonStream(chars))
+        assertEquals(expectedArray(), chars.toString())
+    }
+
+    @Test
+    fun fileRangesTransferred() {
+        val start = value.indexOf('[')
+        val offset = value.substring(0, start).toByteArray(Charsets.UTF_8).size.toLong()
+        val buffer = PayloadBuffer.render(JsonStream.Streamable { stream ->
+            stream.beginObject()
+            stream.name("n")
+            stream.value(file, offset, 7)
+            stream.name("text").value("€")
+            stream.endObject()
+        })
+        assertEquals("{\"n\":[1,2,3],\"text\":\"€\"}", buffer.toString("UTF-8"))
+    }
+
+    @Test(expected = java.io.EOFException::class)
+    fun truncatedFileFails() {
+        PayloadBuffer.render(JsonStream.Streamable { stream ->
+            stream.value(file, file.length() - 2, 10)
+        })
+    }
+
+    private fun writeArray(stream: JsonStream) {
+        stream.beginArray()
+        stream.value("start")
+        stream.value(file)
+        stream.value(file)
+        stream.endArray()
+    }
+
+    private fun expectedArray() = "[\"start\",$value,$value]"
+}
@@ -0,0 +1,138 @@
+package com.bugsnag.android
+
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.net.HttpURLConnection
+import java.net.InetSocketAddress
+import java.net.URL
+
+class KeepAliveConnectionsTest {
+
+    private lateinit var server: HttpServer
+    private val clientPorts = mutableListOf<Int>()
+
+    private val payload = JsonStream.Streamable { stream ->
+        stream.beginObject()
+        stream.name("apiKey").value("api-key")
+        stream.endObject()
+    }
+
+    @Before
+    fun setUp() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/") { exchange ->
+            clientPorts.add(exchange.remoteAddress.port)
+            exchange.requestBody.readBytes()
+            exchange.sendResponseHeaders(202, -1)
+            exchange.close()
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+    }
+
+    @Test
+    fun connectionReusedDuringFlush() {
+        val delivery = DefaultDelivery(null)
+        val url = "http://127.0.0.1:${server.address.port}/"
+
+        delivery.beginFlush()
+        repeat(3) {
+            assertEquals(202, delivery.deliver(url, payload, emptyMap(), false))
+        }
+        val connections = delivery.keepAliveConnections
+        assertEquals(1, connections.heldCount)
+        delivery.endFlush()
+
+        assertEquals(0, connections.heldCount)
+        assertEquals(3, connections.requestCount)
+        assertEquals(2, connections.keptAliveCount)
+
+        // the server saw one client port, so the socket was really reused
+        assertEquals(1, clientPorts.toSet().size)
+    }
+
+    @Test
+    fun connectionNotHeldOutsideFlush() {
+        val delivery = DefaultDelivery(null)
+        val url = "http://127.0.0.1:${server.address.port}/"
+
+        assertEquals(202, delivery.deliver(url, payload, emptyMap(), false))
+        assertEquals(202, delivery.deliver(url, payload, emptyMap(), false))
+        assertEquals(0, delivery.keepAliveConnections.heldCount)
+        assertEquals(2, delivery.keepAliveConnections.requestCount)
+        assertEquals(0, delivery.keepAliveConnections.keptAliveCount)
+    }
+
+    @Test
+    fun idleConnectionsEvicted() {
+        val connections = KeepAliveConnections(1000)
+        val conn = FakeConnection()
+        val endpoint = KeepAliveConnections.endpointKey(URL("https://example.com/path"))
+        assertEquals("https://example.com:443", endpoint)
+
+        connections.beginFlush()
+        assertFalse(connections.acquire(endpoint, 0))
+        connections.release(endpoint, conn, 0)
+        assertFalse(conn.disconnected)
+
+        assertFalse(connections.acquire(endpoint, 5000))
+        assertTrue(conn.disconnected)
+        connections.endFlush()
+    }
+
+    @Test
+    fun heldConnectionsClosedWhenFlushEnds() {
+        val connections = KeepAliveConnections(1000)
+        val conn = FakeConnection()
+        val endpoint = "http://localhost:80"
+
+        connections.beginFlush()
+        connections.beginFlush()
+        connections.acquire(endpoint, 0)
+        connections.release(endpoint, conn, 0)
+        connections.endFlush()
+        assertFalse(conn.disconnected)
+        connections.endFlush()
+        assertTrue(conn.disconnected)
+    }
+
+    @Test
+    fun connectionHeldForEachConcurrentRequest() {
+        val connections = KeepAliveConnections(1000)
+        val conns = List(3) { FakeConnection() }
+        val endpoint = "http://localhost:80"
+
+        connections.beginFlush(2)
+        conns.forEach { connections.release(endpoint, it, 0) }
+        assertEquals(2, connections.heldCount)
+        assertTrue(conns[0].disconnected)
+        assertFalse(conns[1].disconnected)
+
+        assertTrue(connections.acquire(endpoint, 0))
+        assertTrue(connections.acquire(endpoint, 0))
+        assertFalse(connections.acquire(endpoint, 0))
+        connections.endFlush()
+    }
+
+    private class FakeConnection : HttpURLConnection(URL("http://localhost")) {
+        var disconnected = false
+
+        override fun disconnect() {
+            disconnected = true
+        }
+
+        override fun usingProxy() = false
+
+        override fun connect() {
+        }
+    }
+}
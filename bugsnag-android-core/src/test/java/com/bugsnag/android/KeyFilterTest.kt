@@ -0,0 +1,148 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.StringWriter
+
+class KeyFilterTest {
+
+    @Test
+    fun substringsMatchAnywhere() {
+        val filter = compile("password", "card", "secret_token", "token_id")
+        assertTrue(filter.matches("password"))
+        assertTrue(filter.matches("user_password_hash"))
+        assertTrue(filter.matches("creditcard"))
+        assertTrue(filter.matches("my_secret_token_id"))
+        assertTrue(filter.matches("secret_token_id"))
+        assertFalse(filter.matches("passwor"))
+        assertFalse(filter.matches("Password"))
+        assertFalse(filter.matches("secret_toke"))
+        assertFalse(filter.matches(""))
+    }
+
+    @Test
+    fun overlappingSubstringsFoundThroughFailureLinks() {
+        val filter = compile("he", "she", "his", "hers", "abcd", "bc")
+        assertTrue(filter.matches("ushers"))
+        assertTrue(filter.matches("xxabcx"))
+        assertTrue(filter.matches("ahis"))
+        assertFalse(filter.matches("hxsxabxcd"))
+    }
+
+    @Test
+    fun matchesSameKeysAsContains() {
+        val filters = arrayOf("pass", "word", "ssw", "aaab", "ab", "tok")
+        val filter = compile(*filters)
+        val keys = listOf("password", "aaaab", "aaba", "stoken", "sword", "ss", "", "abab", "to")
+
+        for (key in keys) {
+            assertEquals(key, filters.any { key.contains(it) }, filter.matches(key))
+        }
+    }
+
+    @Test
+    fun exactFilters() {
+        val filter = compile("exact:pin")
+        assertTrue(filter.matches("pin"))
+        assertFalse(filter.matches("pinned"))
+        assertFalse(filter.matches("spin"))
+    }
+
+    @Test
+    fun prefixFilters() {
+        val filter = compile("prefix:secret_", "prefix:x")
+        assertTrue(filter.matches("secret_key"))
+        assertTrue(filter.matches("secret_"))
+        assertTrue(filter.matches("xyz"))
+        assertFalse(filter.matches("my_secret_key"))
+        assertFalse(filter.matches("secret"))
+    }
+
+    @Test
+    fun regexFilters() {
+        val filter = compile("regex:^card[0-9]+$", "regex:[", "regex:(?i)token")
+        assertTrue(filter.matches("card1234"))
+        assertTrue(filter.matches("AccessToken"))
+        assertFalse(filter.matches("card"))
+        assertFalse(filter.matches("["))
+    }
+
+    @Test
+    fun emptySubstringMatchesEverything() {
+        assertTrue(compile("").matches("anything"))
+    }
+
+    @Test
+    fun cachedResultsRepeated() {
+        val filter = compile("password")
+        repeat(3000) {
+            assertEquals(it % 2 == 0, filter.matches(if (it % 2 == 0) "password$it" else "key$it"))
+        }
+        assertTrue(filter.matches("password"))
+    }
+
+    @Test
+    fun identicalFiltersReused() {
+        val first = compile("a", "b")
+        assertSame(first, KeyFilter.compile(arrayOf("a", "b"), null, first))
+        assertNotSame(first, KeyFilter.compile(arrayOf("a"), first))
+        assertArrayEquals(arrayOf("a", "b"), first.filters)
+        assertNull(KeyFilter.compile(null))
+    }
+
+    @Test
+    fun mergedFiltersKeptByEachMetaData() {
+        val first = MetaData()
+        first.setFilters("token")
+        val second = MetaData()
+        second.setFilters("secret")
+        val error = MetaData()
+
+        val merged = MetaData.merge(first, error).filters
+        assertArrayEquals(arrayOf("token", "password"), merged)
+        MetaData.merge(second, error)
+        assertSame(merged, MetaData.merge(first, error).filters)
+
+        // the metadata's own filter is reused when merging adds no filters
+        val same = MetaData()
+        same.setFilters("token")
+        assertSame(first.filters, MetaData.merge(first, same).filters)
+    }
+
+    @Test
+    fun metaDataFiltered() {
+        val metaData = MetaData()
+        metaData.setFilters("exact:pin", "prefix:secret_", "password")
+        metaData.addToTab("custom", "pin", "1234")
+        metaData.addToTab("custom", "pinned", true)
+        metaData.addToTab("custom", "secret_key", "abc")
+        metaData.addToTab("custom", "old_password", "hunter2")
+
+        val out = StringWriter()
+        val stream = JsonStream(out)
+        metaData.toStream(stream)
+        stream.flush()
+        val json = out.toString()
+        assertTrue(json.contains("\"pin\":\"[FILTERED]\""))
+        assertTrue(json.contains("\"pinned\":true"))
+        assertTrue(json.contains("\"secret_key\":\"[FILTERED]\""))
+        assertTrue(json.contains("\"old_password\":\"[FILTERED]\""))
+    }
+
+    @Test
+    fun mergedFiltersNotDuplicated() {
+        val first = MetaData()
+        first.setFilters("password", "token")
+        val second = MetaData()
+        second.setFilters("password")
+        assertArrayEquals(arrayOf("password", "token"), MetaData.merge(first, second).filters)
+    }
+
+    private fun compile(vararg filters: String) = KeyFilter.compile(arrayOf(*filters))!!
+}
@@ -0,0 +1,125 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.StringWriter
+
+class MetaDataAdapterTest {
+
+    private open class Order(val id: Int)
+    private class GiftOrder(id: Int) : Order(id), Comparable<GiftOrder> {
+        override fun compareTo(other: GiftOrder) = id - other.id
+    }
+
+    private class Point(val x: Int, val y: Int) : JsonStream.Streamable {
+        override fun toStream(stream: JsonStream) {
+            stream.beginArray()
+            stream.value(x.toLong())
+            stream.value(y.toLong())
+            stream.endArray()
+        }
+    }
+
+    private val metaData = MetaData()
+
+    @Test
+    fun objectWithoutAdapterIsPlaceholder() {
+        metaData.addToTab("tab", "order", Order(1))
+        assertEquals("{\"tab\":{\"order\":\"[OBJECT]\"}}", serialize())
+    }
+
+    @Test
+    fun streamableWritesItself() {
+        metaData.addToTab("tab", "point", Point(3, 4))
+        assertEquals("{\"tab\":{\"point\":[3,4]}}", serialize())
+    }
+
+    @Test
+    fun adapterCalledWhenWritten() {
+        var calls = 0
+        metaData.addAdapter(Order::class.java, MetaDataAdapter<Order> {
+            calls++
+            mapOf("id" to it.id)
+        })
+        metaData.addToTab("tab", "order", Order(7))
+        assertEquals(0, calls)
+        assertEquals("{\"tab\":{\"order\":{\"id\":7}}}", serialize())
+        assertEquals(1, calls)
+    }
+
+    @Test
+    fun adapterUsedForSubtypes() {
+        metaData.addAdapter(Order::class.java, MetaDataAdapter<Order> { "order ${it.id}" })
+        assertEquals("\"order 2\"", serialize(GiftOrder(2)))
+
+        metaData.addAdapter(Comparable::class.java, MetaDataAdapter<Comparable<*>> { "comparable" })
+        assertEquals("\"order 2\"", serialize(GiftOrder(2)))
+        assertEquals("\"comparable\"", serialize(java.util.UUID(0, 0)))
+
+        metaData.addAdapter(GiftOrder::class.java, MetaDataAdapter<GiftOrder> { "gift ${it.id}" })
+        assertEquals("\"gift 2\"", serialize(GiftOrder(2)))
+    }
+
+    @Test
+    fun convertedValuesFilteredAndLimited() {
+        metaData.setMaxStringLength(3)
+        metaData.addAdapter(Order::class.java, MetaDataAdapter<Order> {
+            linkedMapOf("password" to "secret", "name" to "abcdef")
+        })
+        assertEquals("{\"password\":\"[FILTERED]\",\"name\":\"abc***TRUNCATED***\"}",
+            serialize(Order(1)))
+    }
+
+    @Test
+    fun failedConversionIsPlaceholder() {
+        metaData.addAdapter(Order::class.java, MetaDataAdapter<Order> {
+            throw IllegalStateException()
+        })
+        assertEquals("[\"[OBJECT]\",1]", serialize(listOf(Order(1), 1)))
+    }
+
+    @Test
+    fun selfConversionIsCircular() {
+        metaData.addAdapter(Order::class.java, MetaDataAdapter<Order> { listOf(it) })
+        assertEquals("[\"[CIRCULAR]\"]", serialize(Order(1)))
+    }
+
+    @Test
+    fun adaptersKeptWhenMerged() {
+        val config = Configuration("api-key")
+        config.addMetaDataAdapter(Order::class.java, MetaDataAdapter<Order> { it.id })
+        metaData.addToTab("tab", "order", Order(5))
+
+        val merged = MetaData.merge(config.metaData, metaData)
+        val out = StringWriter()
+        merged.toStream(JsonStream(out))
+        assertEquals("{\"tab\":{\"order\":5}}", out.toString())
+    }
+
+    @Test
+    fun adaptersKeptWhenMetaDataReplaced() {
+        val config = Configuration("api-key")
+        config.addMetaDataAdapter(Order::class.java, MetaDataAdapter<Order> { it.id })
+        config.metaData = metaData
+        metaData.addToTab("tab", "order", Order(5))
+        assertEquals("{\"tab\":{\"order\":5}}", serialize())
+
+        // adapters added after the metaData was replaced are used too
+        config.addMetaDataAdapter(GiftOrder::class.java, MetaDataAdapter<GiftOrder> { "gift" })
+        metaData.addToTab("tab", "order", GiftOrder(6))
+        assertEquals("{\"tab\":{\"order\":\"gift\"}}", serialize())
+    }
+
+    private fun serialize(value: Any? = null): String {
+        val out = StringWriter()
+        val stream = JsonStream(out)
+
+        if (value == null) {
+            metaData.toStream(stream)
+        } else {
+            metaData.jsonStreamer.objectToStream(value, stream)
+        }
+        stream.flush()
+        return out.toString()
+    }
+}
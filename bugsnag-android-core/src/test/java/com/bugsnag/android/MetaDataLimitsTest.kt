@@ -0,0 +1,121 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.StringWriter
+
+class MetaDataLimitsTest {
+
+    private val metaData = MetaData()
+
+    @Test
+    fun selfReferencingMapMarked() {
+        val map = mutableMapOf<String, Any>("a" to 1)
+        map["self"] = map
+        metaData.addToTab("tab", "map", map)
+        assertEquals("{\"tab\":{\"map\":{\"a\":1,\"self\":\"[CIRCULAR]\"}}}", serialize())
+    }
+
+    @Test
+    fun selfReferencingCollectionsMarked() {
+        val list = mutableListOf<Any>(1)
+        val array = arrayOf<Any?>(list, null)
+        list.add(array)
+        array[1] = array
+        metaData.addToTab("tab", "list", list)
+        assertEquals("{\"tab\":{\"list\":[1,[\"[CIRCULAR]\",\"[CIRCULAR]\"]]}}", serialize())
+    }
+
+    @Test
+    fun sharedValuesNotCircular() {
+        val shared = listOf(1, 2)
+        metaData.addToTab("tab", "values", listOf(shared, shared))
+        assertEquals("{\"tab\":{\"values\":[[1,2],[1,2]]}}", serialize())
+    }
+
+    @Test
+    fun depthLimited() {
+        metaData.setMaxDepth(3)
+        val tab = linkedMapOf("nested" to listOf(1, listOf(2)), "empty" to emptyMap<String, Any>())
+        assertEquals("{\"tab\":{\"nested\":[1,\"[MAX DEPTH]\"],\"empty\":{}}}",
+            serialize(mapOf("tab" to tab)))
+    }
+
+    @Test
+    fun collectionSizeLimited() {
+        metaData.setMaxCollectionSize(2)
+        assertEquals("[1,2,\"[TRUNCATED 3 ITEMS]\"]", serialize(listOf(1, 2, 3, 4, 5)))
+        assertEquals("[1,2,\"[TRUNCATED 1 ITEMS]\"]", serialize(intArrayOf(1, 2, 3)))
+        assertEquals("[\"a\",\"b\",\"[TRUNCATED 2 ITEMS]\"]",
+            serialize(arrayOf("a", "b", "c", "d")))
+        assertEquals("[1,2]", serialize(longArrayOf(1, 2)))
+        assertEquals("{\"a\":1,\"b\":2,\"[TRUNCATED]\":2}",
+            serialize(linkedMapOf("a" to 1, "b" to 2, "c" to 3, "d" to 4)))
+    }
+
+    @Test
+    fun stringLengthLimited() {
+        metaData.setMaxStringLength(4)
+        assertEquals("[\"abcd***TRUNCATED***\",\"abcd\",\"abc***TRUNCATED***\"]",
+            serialize(listOf("abcdefg", "abcd", "abc😀")))
+    }
+
+    @Test
+    fun limitsKeptWhenMerged() {
+        val config = MetaData()
+        config.setMaxDepth(5)
+        config.setMaxCollectionSize(10)
+        metaData.setMaxDepth(3)
+        metaData.setMaxStringLength(100)
+
+        val merged = MetaData.merge(config, metaData)
+        assertEquals(3, merged.maxDepth)
+        assertEquals(10, merged.maxCollectionSize)
+        assertEquals(100, merged.maxStringLength)
+    }
+
+    @Test
+    fun configurationLimits() {
+        val config = Configuration("api-key")
+        config.setMaxMetaDataDepth(4)
+        config.setMaxMetaDataCollectionSize(50)
+        config.setMaxMetaDataStringLength(1000)
+        config.setMaxMetaDataDepth(-1)
+        assertEquals(4, config.maxMetaDataDepth)
+        assertEquals(50, config.maxMetaDataCollectionSize)
+        assertEquals(1000, config.maxMetaDataStringLength)
+    }
+
+    @Test
+    fun configurationLimitsKeptWhenMetaDataReplaced() {
+        val config = Configuration("api-key")
+        config.setMaxMetaDataDepth(4)
+        config.setMaxMetaDataCollectionSize(3)
+        config.setMaxMetaDataStringLength(5)
+        config.setByteArrayBase64Threshold(4)
+
+        config.metaData = metaData
+        val list = listOf("abcdefgh", byteArrayOf(1, 2, 3, 4), listOf(listOf(1)), 4)
+        metaData.addToTab("tab", "list", list)
+
+        assertEquals(4, config.maxMetaDataDepth)
+        assertEquals(3, config.maxMetaDataCollectionSize)
+        assertEquals(5, config.maxMetaDataStringLength)
+        assertEquals(4, config.byteArrayBase64Threshold)
+        assertEquals("{\"tab\":{\"list\":[\"abcde***TRUNCATED***\",\"AQIDBA==\","
+            + "[\"[MAX DEPTH]\"],\"[TRUNCATED 1 ITEMS]\"]}}", serialize())
+    }
+
+    private fun serialize(value: Any? = null): String {
+        val out = StringWriter()
+        val stream = JsonStream(out)
+
+        if (value == null) {
+            metaData.toStream(stream)
+        } else {
+            metaData.jsonStreamer.objectToStream(value, stream)
+        }
+        stream.flush()
+        return out.toString()
+    }
+}
@@ -0,0 +1,56 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+import java.io.StringWriter
+
+class PayloadBufferTest {
+
+    @Test
+    fun buffersReused() {
+        val buffer = PayloadBuffer.obtain()
+        buffer.write(1)
+        PayloadBuffer.recycle(buffer)
+
+        val reused = PayloadBuffer.obtain()
+        assertSame(buffer, reused)
+        assertEquals(0, reused.size())
+        PayloadBuffer.recycle(reused)
+    }
+
+    @Test
+    fun largeBuffersDiscarded() {
+        val buffer = PayloadBuffer.obtain()
+        buffer.write(ByteArray(1024 * 1024))
+        PayloadBuffer.recycle(buffer)
+        assertNotSame(buffer, PayloadBuffer.obtain())
+    }
+
+    @Test
+    fun serializedErrorMatchesError() {
+        val config = Configuration("api-key")
+        config.metaData.addToTab("custom", "unicode", "é€😀")
+        val error = Error.Builder(config, RuntimeException("Whoops"), null,
+            Thread.currentThread(), false).build()
+        val report = Report("api-key", error)
+        val expected = serialize(report)
+
+        val buffer = PayloadBuffer.render(error)
+        report.setSerializedError(buffer)
+        assertEquals(expected, serialize(report))
+        assertEquals(serialize(error), String(buffer.toByteArray(), Charsets.UTF_8))
+
+        report.setSerializedError(null)
+        PayloadBuffer.recycle(buffer)
+    }
+
+    private fun serialize(streamable: JsonStream.Streamable): String {
+        val writer = StringWriter()
+        val stream = JsonStream(writer)
+        streamable.toStream(stream)
+        stream.flush()
+        return writer.toString()
+    }
+}
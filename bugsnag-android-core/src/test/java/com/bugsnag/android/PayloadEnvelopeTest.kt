@@ -0,0 +1,144 @@
+package com.bugsnag.android
+
+import com.sun.net.httpserver.HttpServer
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.util.zip.GZIPInputStream
+
+class PayloadEnvelopeTest {
+
+    private val event = "{\"context\":\"é 😀\",\"severity\":\"error\"}"
+
+    private lateinit var storeDir: File
+    private lateinit var plainFile: File
+    private lateinit var envelopeFile: File
+
+    private lateinit var server: HttpServer
+    private val bodies = mutableListOf<ByteArray>()
+    private val encodings = mutableListOf<String?>()
+
+    @Before
+    fun setUp() {
+        storeDir = java.nio.file.Files.createTempDirectory("envelope").toFile()
+        plainFile = File(storeDir, "plain.json")
+        plainFile.writeText(event, Charsets.UTF_8)
+        envelopeFile = File(storeDir, "1_uuid${PayloadEnvelope.FILENAME_MARKER}.json")
+
+        val payload = PayloadBuffer.render(JsonStream.Streamable { stream ->
+            stream.value(plainFile)
+        })
+        val out = FileOutputStream(envelopeFile)
+        val length = PayloadEnvelope.write(out, "api-key", payload)
+        out.close()
+        assertEquals(envelopeFile.length(), length)
+
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/") { exchange ->
+            encodings.add(exchange.requestHeaders.getFirst("Content-Encoding"))
+            bodies.add(exchange.requestBody.readBytes())
+            exchange.sendResponseHeaders(202, -1)
+            exchange.close()
+        }
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        server.stop(0)
+        storeDir.deleteRecursively()
+    }
+
+    @Test
+    fun bodyMatchesSerializedReport() {
+        val envelope = PayloadEnvelope.read(envelopeFile)!!
+        assertEquals("api-key", envelope.apiKey)
+        assertArrayEquals(serialize(Report("api-key", plainFile)), readBody(envelope))
+    }
+
+    @Test
+    fun payloadWrittenFromEitherFormat() {
+        val report = Report("other-key", listOf(envelopeFile, plainFile))
+        val json = String(serialize(report), Charsets.UTF_8)
+        assertEquals(2, json.split(event).size - 1)
+        assertEquals(json, String(serialize(Report("other-key", listOf(plainFile, plainFile))),
+            Charsets.UTF_8))
+    }
+
+    @Test
+    fun plainFilesHaveNoEnvelope() {
+        assertNull(PayloadEnvelope.read(plainFile))
+        val empty = File(storeDir, "empty.json")
+        empty.createNewFile()
+        assertNull(PayloadEnvelope.read(empty))
+    }
+
+    @Test
+    fun unmarkedFilesNotRead() {
+        val unmarked = File(storeDir, "1_uuid.json")
+        envelopeFile.copyTo(unmarked)
+        assertNull(PayloadEnvelope.find(unmarked))
+        assertNull(PayloadEnvelope.find(plainFile))
+        assertEquals("api-key", PayloadEnvelope.find(envelopeFile)!!.apiKey)
+    }
+
+    @Test(expected = IOException::class)
+    fun truncatedEnvelopeRejected() {
+        val truncated = File(storeDir, "truncated.json")
+        val bytes = envelopeFile.readBytes()
+        truncated.writeBytes(bytes.copyOf(bytes.size - 5))
+        PayloadEnvelope.read(truncated)
+    }
+
+    @Test(expected = IOException::class)
+    fun invalidHeaderRejected() {
+        val invalid = File(storeDir, "invalid.json")
+        invalid.writeText("bugsnag-envelope:1 x y api-key\n{}")
+        PayloadEnvelope.read(invalid)
+    }
+
+    @Test
+    fun apiKeysWhichDoNotFitHeaderNotEnveloped() {
+        assertEquals(false, PayloadEnvelope.canEnvelope("api\nkey"))
+        assertEquals(false, PayloadEnvelope.canEnvelope(""))
+        assertEquals(true, PayloadEnvelope.canEnvelope("5d1ec5bd39a74caa1267142706a7fb21"))
+    }
+
+    @Test
+    fun bodyDeliveredFromFile() {
+        val config = Configuration("api-key")
+        config.setEndpoints("http://127.0.0.1:${server.address.port}/", "http://localhost")
+        val envelope = PayloadEnvelope.read(envelopeFile)!!
+        val delivery = DefaultDelivery(null)
+
+        delivery.deliver(envelopeFile, envelope, config)
+        config.compressRequests = true
+        delivery.deliver(envelopeFile, envelope, config)
+
+        assertNull(encodings[0])
+        assertEquals("gzip", encodings[1])
+        assertArrayEquals(readBody(envelope), bodies[0])
+        assertArrayEquals(bodies[0], GZIPInputStream(bodies[1].inputStream()).readBytes())
+    }
+
+    private fun readBody(envelope: PayloadEnvelope): ByteArray {
+        val bytes = java.io.ByteArrayOutputStream()
+        envelope.writeBody(envelopeFile, bytes)
+        return bytes.toByteArray()
+    }
+
+    private fun serialize(streamable: JsonStream.Streamable): ByteArray {
+        val bytes = java.io.ByteArrayOutputStream()
+        val stream = JsonStream(bytes)
+        streamable.toStream(stream)
+        stream.flush()
+        return bytes.toByteArray()
+    }
+}
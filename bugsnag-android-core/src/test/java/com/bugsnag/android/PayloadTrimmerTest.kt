@@ -0,0 +1,112 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.io.StringWriter
+
+class PayloadTrimmerTest {
+
+    private val config = Configuration("api-key")
+    private lateinit var breadcrumbs: Breadcrumbs
+    private lateinit var error: Error
+    private lateinit var report: Report
+
+    @Before
+    fun setUp() {
+        breadcrumbs = Breadcrumbs(config)
+        repeat(20) {
+            breadcrumbs.add(Breadcrumb("Breadcrumb $it ${"x".repeat(200)}"))
+        }
+        val exc = RuntimeException("Whoops", IllegalStateException("Cause"))
+        error = Error.Builder(config, exc, null, Thread.currentThread(), false).build()
+        error.setBreadcrumbs(breadcrumbs)
+        report = Report("api-key", error)
+    }
+
+    @Test
+    fun reportUnderLimitUnchanged() {
+        val size = CountingWriter.measure(report)
+        val stages = PayloadTrimmer(size).trim(report)
+
+        assertTrue(stages.isEmpty())
+        assertNull(error.metaData.store[PayloadTrimmer.DIAGNOSTICS_TAB])
+        assertEquals(size, CountingWriter.measure(report))
+    }
+
+    @Test
+    fun breadcrumbsTrimmedFirst() {
+        val size = CountingWriter.measure(report)
+        val stages = PayloadTrimmer(size - 1000).trim(report)
+
+        assertEquals(listOf(PayloadTrimmer.STAGE_BREADCRUMBS), stages)
+        assertTrue(error.breadcrumbs.store.size < 20)
+        assertEquals(20, breadcrumbs.store.size)
+
+        val diagnostics = error.metaData.getTab(PayloadTrimmer.DIAGNOSTICS_TAB)
+        assertEquals(stages, diagnostics["payloadTrimmed"])
+        assertEquals(size, diagnostics["originalPayloadSize"])
+        assertTrue(CountingWriter.measure(report) <= size - 1000)
+    }
+
+    @Test
+    fun diagnosticsIncludedInLimit() {
+        // removing every breadcrumb would fit exactly, if not for the diagnostics tab
+        config.sendThreads = false
+        setUp()
+        error.setBreadcrumbs(Breadcrumbs(config))
+        val limit = CountingWriter.measure(report)
+        setUp()
+
+        val stages = PayloadTrimmer(limit).trim(report)
+        assertTrue(stages.size > 1)
+        assertTrue(CountingWriter.measure(report) <= limit)
+    }
+
+    @Test
+    fun metaDataTruncated() {
+        config.metaData.addToTab("custom", "large", "y".repeat(100000))
+        val stages = PayloadTrimmer(20000).trim(report)
+
+        assertTrue(stages.contains(PayloadTrimmer.STAGE_METADATA))
+        assertFalse(stages.contains(PayloadTrimmer.STAGE_CAUSES))
+        assertEquals(100000, (config.metaData.getTab("custom")["large"] as String).length)
+        assertFalse(serialize().contains("y".repeat(2000)))
+        assertTrue(CountingWriter.measure(report) <= 20000)
+    }
+
+    @Test
+    fun causesRemovedLast() {
+        val stages = PayloadTrimmer(100).trim(report)
+
+        assertEquals(listOf(
+            PayloadTrimmer.STAGE_BREADCRUMBS,
+            PayloadTrimmer.STAGE_THREADS,
+            PayloadTrimmer.STAGE_METADATA,
+            PayloadTrimmer.STAGE_CAUSES
+        ), stages)
+        assertFalse(serialize().contains("IllegalStateException"))
+
+        // stages applied after the metadata was copied are still recorded
+        val diagnostics = error.metaData.getTab(PayloadTrimmer.DIAGNOSTICS_TAB)
+        assertEquals(stages, diagnostics["payloadTrimmed"])
+        assertTrue(serialize().contains(PayloadTrimmer.STAGE_CAUSES))
+    }
+
+    @Test
+    fun measureCountsUtf8Bytes() {
+        val streamable = JsonStream.Streamable { it.value("é€😀") }
+        assertEquals(11, CountingWriter.measure(streamable))
+    }
+
+    private fun serialize(): String {
+        val writer = StringWriter()
+        val stream = JsonStream(writer)
+        report.toStream(stream)
+        stream.flush()
+        return writer.toString()
+    }
+}
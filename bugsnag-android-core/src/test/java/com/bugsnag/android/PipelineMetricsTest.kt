@@ -0,0 +1,94 @@
+package com.bugsnag.android
+
+import com.sun.net.httpserver.HttpServer
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.net.InetSocketAddress
+
+class PipelineMetricsTest {
+
+    @Test
+    fun latencyHistogramBuckets() {
+        val metrics = PipelineMetrics()
+        metrics.recordDelivery(0, true)
+        metrics.recordDelivery(50, true)
+        metrics.recordDelivery(51, false)
+        metrics.recordDelivery(60000, false)
+
+        val histogram = metrics.deliveryLatencyHistogram
+        assertEquals(metrics.deliveryLatencyBucketBoundsMs.size + 1, histogram.size)
+        assertEquals(2, histogram[0])
+        assertEquals(1, histogram[1])
+        assertEquals(1, histogram[histogram.size - 1])
+        assertEquals(2, metrics.deliveriesSucceeded)
+        assertEquals(2, metrics.deliveriesFailed)
+    }
+
+    @Test
+    fun evictionsCountedAsDiscarded() {
+        val metrics = PipelineMetrics()
+        metrics.recordFilesDiscarded(1)
+        metrics.recordFilesEvictedForCount(2)
+        metrics.recordFilesEvictedForSize(3)
+        metrics.recordFilesEvictedForAge(4)
+
+        assertEquals(2, metrics.filesEvictedForCount)
+        assertEquals(3, metrics.filesEvictedForSize)
+        assertEquals(4, metrics.filesEvictedForAge)
+        assertEquals(10, metrics.filesDiscarded)
+    }
+
+    @Test
+    fun listenerNotified() {
+        val metrics = PipelineMetrics()
+        val latencies = mutableListOf<Long>()
+        val listener = PipelineMetrics.Listener { _, latencyMs, _ -> latencies.add(latencyMs) }
+
+        metrics.addListener(listener)
+        metrics.recordDelivery(10, true)
+        metrics.removeListener(listener)
+        metrics.recordDelivery(20, true)
+        assertEquals(listOf(10L), latencies)
+    }
+
+    @Test
+    fun queueDepthsInPriorityOrder() {
+        val depths = PipelineMetrics.getInstance().queueDepths
+        assertArrayEquals(Async.Lane.values().map { it.name }.toTypedArray(),
+            depths.keys.toTypedArray())
+    }
+
+    @Test
+    fun deliveryRecorded() {
+        val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/") { exchange ->
+            exchange.requestBody.readBytes()
+            exchange.sendResponseHeaders(202, -1)
+            exchange.close()
+        }
+        server.start()
+
+        try {
+            val metrics = PipelineMetrics.getInstance()
+            val bytesSent = metrics.bytesSent
+            val bytesSerialized = metrics.bytesSerialized
+            val deliveries = metrics.deliveriesSucceeded
+            val payload = JsonStream.Streamable { stream ->
+                stream.beginObject()
+                stream.name("apiKey").value("api-key")
+                stream.endObject()
+            }
+
+            val url = "http://127.0.0.1:${server.address.port}/"
+            DefaultDelivery(null).deliver(url, payload, emptyMap())
+
+            assertEquals(bytesSent + 20, metrics.bytesSent)
+            assertTrue(metrics.bytesSerialized >= bytesSerialized + 20)
+            assertTrue(metrics.deliveriesSucceeded > deliveries)
+        } finally {
+            server.stop(0)
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.StringWriter
+import java.util.Base64
+
+class PrimitiveArraySerializationTest {
+
+    @Test
+    fun primitiveArrays() {
+        assertEquals("[1,-2,2147483647]", serialize(intArrayOf(1, -2, Int.MAX_VALUE)))
+        assertEquals("[9223372036854775807,0]", serialize(longArrayOf(Long.MAX_VALUE, 0)))
+        assertEquals("[1.5,-0.25,1.0E-10]", serialize(doubleArrayOf(1.5, -0.25, 1e-10)))
+        assertEquals("[1.1,3.0E-5]", serialize(floatArrayOf(1.1f, 3e-5f)))
+        assertEquals("[true,false]", serialize(booleanArrayOf(true, false)))
+        assertEquals("[-128,0,127]", serialize(byteArrayOf(-128, 0, 127)))
+        assertEquals("[-1,300]", serialize(shortArrayOf(-1, 300)))
+        assertEquals("[\"a\",\"\\\"\"]", serialize(charArrayOf('a', '"')))
+        assertEquals("[]", serialize(IntArray(0)))
+    }
+
+    @Test
+    fun objectArrays() {
+        val array = arrayOf("a", 1, null, intArrayOf(2), mapOf("password" to "x"))
+        assertEquals("[\"a\",1,null,[2],{\"password\":\"[FILTERED]\"}]", serialize(array))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun nonFiniteFloatsRejected() {
+        serialize(floatArrayOf(Float.NaN))
+    }
+
+    @Test
+    fun byteArraysEncodedFromThreshold() {
+        val metaData = MetaData()
+        metaData.setByteArrayBase64Threshold(4)
+
+        for (length in 0..10) {
+            val bytes = ByteArray(length) { (it * 37 - 100).toByte() }
+            metaData.addToTab("tab", "bytes", bytes)
+            val expected = if (length >= 4) {
+                "\"${Base64.getEncoder().encodeToString(bytes)}\""
+            } else {
+                serialize(bytes)
+            }
+            assertEquals("{\"tab\":{\"bytes\":$expected}}", serialize(metaData))
+        }
+    }
+
+    @Test
+    fun largeByteArrayEncoded() {
+        val bytes = ByteArray(5000) { it.toByte() }
+        val metaData = MetaData()
+        metaData.setByteArrayBase64Threshold(1)
+        metaData.addToTab("tab", "bytes", bytes)
+        val json = serialize(metaData)
+        assertEquals("{\"tab\":{\"bytes\":\"${Base64.getEncoder().encodeToString(bytes)}\"}}", json)
+    }
+
+    @Test
+    fun thresholdKeptWhenMerged() {
+        val config = MetaData()
+        config.setByteArrayBase64Threshold(16)
+        val error = MetaData()
+        assertEquals(16, MetaData.merge(config, error).byteArrayBase64Threshold)
+        error.setByteArrayBase64Threshold(8)
+        assertEquals(8, MetaData.merge(config, error).byteArrayBase64Threshold)
+        assertEquals(0, MetaData.merge(MetaData(), MetaData()).byteArrayBase64Threshold)
+    }
+
+    private fun serialize(value: Any): String {
+        val out = StringWriter()
+        val stream = JsonStream(out)
+
+        if (value is JsonStream.Streamable) {
+            value.toStream(stream)
+        } else {
+            stream.value(value)
+        }
+        stream.flush()
+        return out.toString()
+    }
+}
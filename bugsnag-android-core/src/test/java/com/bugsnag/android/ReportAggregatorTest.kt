@@ -0,0 +1,104 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class ReportAggregatorTest {
+
+    @get:Rule
+    val tmpDir = TemporaryFolder()
+
+    private val config = Configuration("api-key")
+    private val projectPackages = arrayOf("com.example")
+
+    @Test
+    fun fingerprintMatchesSameOrigin() {
+        val first = createError(IllegalStateException("first"), 42)
+        val second = createError(IllegalStateException("second"), 42)
+        val other = createError(IllegalStateException("first"), 43)
+        val otherClass = createError(IllegalArgumentException("first"), 42)
+
+        val fingerprint = ReportAggregator.fingerprint(first, projectPackages)
+        assertEquals(ReportAggregator.FINGERPRINT_LENGTH, fingerprint.length)
+        assertEquals(fingerprint, ReportAggregator.fingerprint(second, projectPackages))
+        assertNotEquals(fingerprint, ReportAggregator.fingerprint(other, projectPackages))
+        assertNotEquals(fingerprint, ReportAggregator.fingerprint(otherClass, projectPackages))
+
+        second.groupingHash = "custom"
+        assertNotEquals(fingerprint, ReportAggregator.fingerprint(second, projectPackages))
+    }
+
+    @Test
+    fun fingerprintIgnoresFrameworkFrames() {
+        val first = createError(RuntimeException(), 42, "android.os.Handler")
+        val second = createError(RuntimeException(), 42, "android.os.Looper")
+
+        assertEquals(ReportAggregator.fingerprint(first, projectPackages),
+            ReportAggregator.fingerprint(second, projectPackages))
+    }
+
+    @Test
+    fun occurrencesCountedWithinWindow() {
+        val aggregator = ReportAggregator(null)
+        val file = File("1000_30b7e350-dcd1-4032-969e-98d30be62bbc_fp0123456789abcdef.json")
+        assertTrue(ReportAggregator.hasFingerprint(file, "0123456789abcdef"))
+        assertEquals(1, aggregator.getCount(file))
+
+        assertTrue(aggregator.isInWindow(file, 1000, 500, 1500))
+        assertFalse(aggregator.isInWindow(file, 1000, 500, 1501))
+
+        aggregator.recordOccurrence(file, 1000, 1400)
+        aggregator.recordOccurrence(file, 1000, 1450)
+        assertEquals(3, aggregator.getCount(file))
+
+        aggregator.remove(listOf(file))
+        assertEquals(1, aggregator.getCount(file))
+    }
+
+    @Test
+    fun countsAddedToMetaData() {
+        val aggregator = ReportAggregator(null)
+        val file = File("1000_30b7e350-dcd1-4032-969e-98d30be62bbc_fp0123456789abcdef.json")
+        aggregator.recordOccurrence(file, 1000, 2000)
+
+        val error = createError(RuntimeException(), 42)
+        aggregator.addToMetaData(file, error)
+        val tab = error.metaData.getTab(PayloadTrimmer.DIAGNOSTICS_TAB)
+        assertEquals(2, tab["occurrences"])
+        assertEquals("1970-01-01T00:00:01Z", tab["firstSeen"])
+        assertEquals("1970-01-01T00:00:02Z", tab["lastSeen"])
+    }
+
+    @Test
+    fun countsPersistedAcrossInstances() {
+        val storeDir = tmpDir.newFolder("bugsnag-errors")
+        val stateFile = File(tmpDir.root, "aggregation.properties")
+        val file = File(storeDir, "1000_30b7e350-dcd1-4032-969e-98d30be62bbc.json")
+        file.writeText("{}")
+
+        ReportAggregator(stateFile).recordOccurrence(file, 1000, 2000)
+
+        val aggregator = ReportAggregator(stateFile)
+        assertEquals(2, aggregator.getCount(file))
+        assertFalse(aggregator.isInWindow(file, 5000, 500, 5000))
+    }
+
+    private fun createError(
+        exc: Throwable,
+        lineNumber: Int,
+        frameworkClass: String = "android.os.Handler"
+    ): Error {
+        exc.stackTrace = arrayOf(
+            StackTraceElement(frameworkClass, "dispatch", "Framework.java", 1),
+            StackTraceElement("com.example.Foo", "bar", "Foo.java", lineNumber),
+            StackTraceElement("com.example.Main", "main", "Main.java", 10)
+        )
+        return Error.Builder(config, exc, null, Thread.currentThread(), false).build()
+    }
+}
@@ -0,0 +1,145 @@
+package com.bugsnag.android
+
+import com.sun.net.httpserver.HttpServer
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.net.InetSocketAddress
+import java.util.Random
+
+class RetrySchedulerTest {
+
+    @get:Rule
+    val tmpDir = TemporaryFolder()
+
+    private val file = File("1504255147933_30b7e350-dcd1-4032-969e-98d30be62bbc.json")
+
+    @Test
+    fun backoffGrowsExponentiallyWithJitter() {
+        val scheduler = RetryScheduler(null, Random(0))
+
+        for (attempt in 1..5) {
+            val maxDelay = RetryScheduler.INITIAL_BACKOFF_MS shl (attempt - 1)
+            val delay = scheduler.calculateBackoff(attempt)
+            assertTrue(delay <= maxDelay)
+            assertTrue(delay >= maxDelay / 2)
+        }
+        assertTrue(scheduler.calculateBackoff(100) <= RetryScheduler.MAX_BACKOFF_MS)
+    }
+
+    @Test
+    fun fileDeferredUntilBackoffExpires() {
+        val scheduler = RetryScheduler(null, Random(0))
+        assertTrue(scheduler.isDue(file, 0))
+
+        scheduler.onFailure(listOf(file), 0, 0)
+        assertEquals(1, scheduler.getAttempts(file))
+        assertFalse(scheduler.isDue(file, 1))
+        assertTrue(scheduler.isDue(file, RetryScheduler.INITIAL_BACKOFF_MS))
+
+        scheduler.remove(listOf(file))
+        assertEquals(0, scheduler.getAttempts(file))
+        assertTrue(scheduler.isDue(file, 1))
+    }
+
+    @Test
+    fun retryAfterDefersAllFiles() {
+        val scheduler = RetryScheduler(null, Random(0))
+        val other = File("1504255147934_30b7e350-dcd1-4032-969e-98d30be62bbc.json")
+
+        scheduler.onFailure(listOf(file), 60000, 0)
+        assertFalse(scheduler.isDue(other, 59999))
+        assertTrue(scheduler.isDue(other, 60000))
+    }
+
+    @Test
+    fun retryAfterBeyondMaxBackoffHonoured() {
+        val scheduler = RetryScheduler(null, Random(0))
+        val retryAfterMs = RetryScheduler.MAX_BACKOFF_MS * 4
+        scheduler.onFailure(listOf(file), retryAfterMs, 0)
+
+        assertFalse(scheduler.isDue(file, retryAfterMs - 1))
+        assertTrue(scheduler.isDue(file, retryAfterMs))
+        assertEquals(retryAfterMs, scheduler.getNextAttemptMs(file))
+    }
+
+    @Test
+    fun nextAttemptIncludesRetryAfter() {
+        val scheduler = RetryScheduler(null, Random(0))
+        val other = File("1504255147934_30b7e350-dcd1-4032-969e-98d30be62bbc.json")
+        assertEquals(0, scheduler.getNextAttemptMs(file))
+
+        scheduler.onFailure(listOf(file), 0, 0)
+        assertTrue(scheduler.getNextAttemptMs(file) in 1..RetryScheduler.INITIAL_BACKOFF_MS)
+
+        scheduler.onFailure(listOf(other), 60000, 0)
+        assertEquals(60000, scheduler.getNextAttemptMs(file))
+    }
+
+    @Test
+    fun scheduleBeyondMaxBackoffIgnored() {
+        val scheduler = RetryScheduler(null, Random(0))
+        scheduler.onFailure(listOf(file), 0, RetryScheduler.MAX_BACKOFF_MS * 4)
+
+        // the clock was moved backwards since the failure was recorded
+        assertTrue(scheduler.isDue(file, 0))
+    }
+
+    @Test
+    fun stateSurvivesRestart() {
+        val storeDir = tmpDir.newFolder("bugsnag-errors")
+        val storedFile = File(storeDir, file.name)
+        storedFile.writeText("{}")
+        val deletedFile = File(storeDir, "1504255147934_deleted.json")
+        val stateFile = File(tmpDir.root, "retry.properties")
+
+        val scheduler = RetryScheduler(stateFile, Random(0))
+        scheduler.onFailure(listOf(storedFile, deletedFile), 0, 0)
+        scheduler.onFailure(listOf(storedFile), 0, 0)
+        scheduler.save(storeDir.absolutePath)
+
+        val restored = RetryScheduler(stateFile, Random(0))
+        assertEquals(2, restored.getAttempts(storedFile))
+        assertEquals(0, restored.getAttempts(deletedFile))
+        assertFalse(restored.isDue(storedFile, 1))
+    }
+
+    @Test
+    fun parseRetryAfter() {
+        assertEquals(120000, RetryScheduler.parseRetryAfter("120", 0))
+        assertEquals(0, RetryScheduler.parseRetryAfter(null, 0))
+        assertEquals(0, RetryScheduler.parseRetryAfter("soon", 0))
+        assertEquals(30000, RetryScheduler.parseRetryAfter("Thu, 01 Jan 1970 00:00:30 GMT", 0))
+    }
+
+    @Test
+    fun deliveryFailsWithRetryAfter() {
+        val server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/") { exchange ->
+            exchange.requestBody.readBytes()
+            exchange.responseHeaders.add("Retry-After", "30")
+            exchange.sendResponseHeaders(429, -1)
+            exchange.close()
+        }
+        server.start()
+
+        try {
+            val url = "http://127.0.0.1:${server.address.port}/"
+            val payload = JsonStream.Streamable { stream ->
+                stream.beginObject()
+                stream.endObject()
+            }
+            DefaultDelivery(null).deliver(url, payload, emptyMap())
+            fail("Expected delivery to fail")
+        } catch (exception: DeliveryFailureException) {
+            assertEquals(30000, exception.retryAfterMs)
+        } finally {
+            server.stop(0)
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class StoredFileStateTest {
+
+    @get:Rule
+    val tmpDir = TemporaryFolder()
+
+    @Test
+    fun valuesPersisted() {
+        val stateFile = File(tmpDir.root, "state.properties")
+        StoredFileState(stateFile, "test state").save(mapOf(
+            "a.json" to longArrayOf(1, 2, 3),
+            "b.json" to longArrayOf(-4)
+        ))
+
+        val values = StoredFileState(stateFile, "test state").load()
+        assertEquals(2, values.size)
+        assertEquals(listOf(1L, 2L, 3L), values["a.json"]!!.toList())
+        assertEquals(listOf(-4L), values["b.json"]!!.toList())
+    }
+
+    @Test
+    fun invalidEntriesSkipped() {
+        val stateFile = File(tmpDir.root, "state.properties")
+        stateFile.writeText("a.json=1,x\nb.json=5\n")
+
+        val values = StoredFileState(stateFile, "test state").load()
+        assertEquals(setOf("b.json"), values.keys)
+        assertTrue(StoredFileState(File(tmpDir.root, "missing"), "test state").load().isEmpty())
+    }
+
+    @Test
+    fun entriesForDeletedFilesPruned() {
+        val storeDir = tmpDir.newFolder()
+        File(storeDir, "kept.json").createNewFile()
+        val entries = mutableMapOf("kept.json" to 1, "deleted.json" to 2)
+
+        StoredFileState.prune(entries, storeDir)
+        assertEquals(setOf("kept.json"), entries.keys)
+    }
+}
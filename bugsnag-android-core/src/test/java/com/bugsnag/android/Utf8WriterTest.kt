@@ -0,0 +1,77 @@
+package com.bugsnag.android
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.ByteArrayOutputStream
+import java.io.OutputStreamWriter
+
+class Utf8WriterTest {
+
+    private val values = listOf(
+        "plain ascii",
+        "quotes \" and \\ backslashes\n\t\r\b\u000c\u0001",
+        "é € 😀 ☃",
+        "separators \u2028 \u2029",
+        "lone surrogates \ud83d x \ude00 \ud83d",
+        "ends with surrogate \ud83d",
+        "long ${"é😀x".repeat(5000)}"
+    )
+
+    @Test
+    fun stringsMatchOutputStreamWriter() {
+        for (value in values) {
+            assertArrayEquals(encodeWithCharsetEncoder(value), encode(value))
+        }
+    }
+
+    @Test
+    fun htmlSafeStringsEscaped() {
+        val out = ByteArrayOutputStream()
+        val stream = JsonStream(out)
+        stream.setHtmlSafe(true)
+        stream.value("<a href='x'>&</a>")
+        stream.flush()
+        assertEquals("\"\\u003ca href\\u003d\\u0027x\\u0027\\u003e\\u0026\\u003c/a\\u003e\"",
+            out.toString("UTF-8"))
+    }
+
+    @Test
+    fun serializedPayloadCopiedUnchanged() {
+        val config = Configuration("api-key")
+        config.metaData.addToTab("custom", "unicode", "é€😀")
+        val error = Error.Builder(config, RuntimeException("Whoops"), null,
+            Thread.currentThread(), false).build()
+        val buffer = PayloadBuffer.render(error)
+        val expected = buffer.toByteArray()
+
+        val out = ByteArrayOutputStream()
+        val stream = JsonStream(out)
+        stream.beginArray()
+        stream.value(buffer)
+        stream.endArray()
+        stream.flush()
+        PayloadBuffer.recycle(buffer)
+
+        assertArrayEquals(byteArrayOf('['.toByte()) + expected + byteArrayOf(']'.toByte()),
+            out.toByteArray())
+    }
+
+    private fun encode(value: String): ByteArray {
+        val out = ByteArrayOutputStream()
+        val stream = JsonStream(out)
+        stream.beginArray().value(value)
+        stream.endArray()
+        stream.flush()
+        return out.toByteArray()
+    }
+
+    private fun encodeWithCharsetEncoder(value: String): ByteArray {
+        val out = ByteArrayOutputStream()
+        val stream = JsonStream(OutputStreamWriter(out, Charsets.UTF_8))
+        stream.beginArray().value(value)
+        stream.endArray()
+        stream.flush()
+        return out.toByteArray()
+    }
+}
@@ -0,0 +1,184 @@
+package com.bugsnag.android;
+
+import android.content.ContextWrapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the payloads used by the benchmarks, which are sized to resemble the payloads sent by
+ * a typical app: a few metadata tabs holding nested maps and lists, a handful of breadcrumbs,
+ * and an error with a nested cause thrown on a process with several threads.
+ */
+final class BenchmarkFixtures {
+
+    static final String API_KEY = "5d1ec5bd39a74caa1267142706a7fb21";
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Creates a configuration, disabling logging as the framework logger cannot run on the JVM
+     */
+    static Configuration newConfiguration() {
+        Logger.setEnabled(false);
+        Configuration config = new Configuration(API_KEY);
+        config.setProjectPackages(new String[] {"com.example.shop"});
+        config.setAppVersion("5.2.1");
+        config.setReleaseStage("production");
+        return config;
+    }
+
+    /**
+     * Creates metadata with the kinds of values apps usually add: strings, numbers, booleans,
+     * nested maps, lists and arrays, including a key which is filtered
+     */
+    static MetaData newMetaData() {
+        MetaData metaData = new MetaData();
+        metaData.addToTab("account", "id", "c0a8f2e4-93d1-4a57-b9e6-1d2c3b4a5f60");
+        metaData.addToTab("account", "plan", "premium");
+        metaData.addToTab("account", "password", "hunter2");
+        metaData.addToTab("account", "loginCount", 1024);
+        metaData.addToTab("account", "verified", true);
+
+        List<Object> items = new ArrayList<>();
+
+        for (int k = 0; k < 20; k++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("sku", "SKU-" + (10000 + k));
+            item.put("name", "Item \u00e9l\u00e9ment \"" + k + "\"");
+            item.put("quantity", k % 4 + 1);
+            item.put("price", 9.99 + k);
+            item.put("tags", Arrays.asList("sale", "clearance", "winter"));
+            items.add(item);
+        }
+        Map<String, Object> cart = new HashMap<>();
+        cart.put("items", items);
+        cart.put("currency", "EUR");
+        cart.put("total", 1234.56);
+        metaData.addToTab("cart", "contents", cart);
+
+        int[] timings = new int[64];
+
+        for (int k = 0; k < timings.length; k++) {
+            timings[k] = k * 17;
+        }
+        metaData.addToTab("performance", "frameTimingsMs", timings);
+        metaData.addToTab("performance", "memoryWarnings", 3L);
+        metaData.addToTab("performance", "lowPowerMode", false);
+        metaData.addToTab("performance", "lastScreen",
+            "com.example.shop.checkout.CheckoutActivity\nPaymentFragment");
+        return metaData;
+    }
+
+    static Breadcrumb newBreadcrumb(int index) {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("activity", "com.example.shop.MainActivity");
+        metadata.put("action", "click");
+        metadata.put("index", String.valueOf(index));
+        return new Breadcrumb("Button pressed", BreadcrumbType.USER, metadata);
+    }
+
+    static Breadcrumbs newBreadcrumbs(Configuration config) {
+        Breadcrumbs breadcrumbs = new Breadcrumbs(config);
+
+        for (int k = 0; k < config.getMaxBreadcrumbs(); k++) {
+            breadcrumbs.add(newBreadcrumb(k));
+        }
+        return breadcrumbs;
+    }
+
+    /**
+     * Creates an unhandled error, which captures the stacktraces of every live thread
+     */
+    static Error newError(Configuration config) {
+        Throwable cause = new IllegalStateException("Connection reset by peer");
+        Throwable exception = new RuntimeException("Failed to submit order", cause);
+        Error error = new Error.Builder(config, exception, null, Thread.currentThread(), true)
+            .severityReasonType(HandledState.REASON_UNHANDLED_EXCEPTION)
+            .metaData(newMetaData())
+            .build();
+        error.setContext("CheckoutActivity");
+        error.setUser("123456", "user@example.com", "Jane Doe");
+        error.setBreadcrumbs(newBreadcrumbs(config));
+        error.setAppData(newAppData());
+        error.setDeviceData(newDeviceData());
+        return error;
+    }
+
+    private static Map<String, Object> newAppData() {
+        Map<String, Object> app = new HashMap<>();
+        app.put("id", "com.example.shop");
+        app.put("version", "5.2.1");
+        app.put("versionCode", 521);
+        app.put("releaseStage", "production");
+        app.put("type", "android");
+        app.put("duration", 120345L);
+        app.put("durationInForeground", 98000L);
+        app.put("inForeground", true);
+        return app;
+    }
+
+    private static Map<String, Object> newDeviceData() {
+        Map<String, Object> device = new HashMap<>();
+        device.put("id", "f5b5a7a0-9c3e-4b1e-8d2a-0e6f7c8b9a10");
+        device.put("manufacturer", "Google");
+        device.put("model", "Pixel 3");
+        device.put("osName", "android");
+        device.put("osVersion", "9");
+        device.put("jailbroken", false);
+        device.put("locale", "en_US");
+        device.put("totalMemory", 3791650816L);
+        device.put("freeMemory", 1207959552L);
+        device.put("freeDisk", 42949672960L);
+        device.put("orientation", "portrait");
+        device.put("time", "2020-02-14T10:15:30Z");
+        device.put("cpuAbi", new String[] {"arm64-v8a", "armeabi-v7a", "armeabi"});
+        return device;
+    }
+
+    /**
+     * Creates a context whose cache directory is the given directory, so that stores can be
+     * created without an app
+     */
+    static ContextWrapper newContext(final File cacheDir) {
+        return new ContextWrapper(null) {
+            @Override
+            public File getCacheDir() {
+                return cacheDir;
+            }
+        };
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        IOUtils.deleteFile(file);
+    }
+
+    /**
+     * A stream which discards everything written to it, so that only serialization is measured
+     */
+    static final class DiscardingOutputStream extends OutputStream {
+
+        @Override
+        public void write(int value) throws IOException {
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) throws IOException {
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.bugsnag.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Measures adding a breadcrumb to a full buffer, which measures and prunes it, and writing
+ * a full buffer of breadcrumbs
+ */
+@State(Scope.Thread)
+public class BreadcrumbsBenchmark {
+
+    private Breadcrumbs breadcrumbs;
+    private Breadcrumb breadcrumb;
+    private PayloadBuffer buffer;
+
+    /**
+     * Creates a full buffer of breadcrumbs
+     */
+    @Setup
+    public void setUp() {
+        Configuration config = BenchmarkFixtures.newConfiguration();
+        breadcrumbs = BenchmarkFixtures.newBreadcrumbs(config);
+        breadcrumb = BenchmarkFixtures.newBreadcrumb(0);
+        buffer = new PayloadBuffer();
+    }
+
+    @Benchmark
+    public void add() {
+        breadcrumbs.add(breadcrumb);
+    }
+
+    /**
+     * Writes the breadcrumbs, which is done for every error that is reported
+     */
+    @Benchmark
+    public int toStream() throws IOException {
+        buffer.reset();
+        JsonStream stream = new JsonStream(buffer);
+        breadcrumbs.toStream(stream);
+        stream.flush();
+        return buffer.size();
+    }
+}
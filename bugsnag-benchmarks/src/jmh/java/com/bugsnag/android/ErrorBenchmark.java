@@ -0,0 +1,48 @@
+package com.bugsnag.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Measures capturing and writing an unhandled error, whose thread state holds the stacktrace
+ * of every live thread
+ */
+@State(Scope.Thread)
+public class ErrorBenchmark {
+
+    private Configuration config;
+    private Error error;
+    private PayloadBuffer buffer;
+
+    /**
+     * Creates an error, which is captured once and written by each invocation
+     */
+    @Setup
+    public void setUp() {
+        config = BenchmarkFixtures.newConfiguration();
+        error = BenchmarkFixtures.newError(config);
+        buffer = new PayloadBuffer();
+    }
+
+    @Benchmark
+    public int toStream() throws IOException {
+        return write(error);
+    }
+
+    @Benchmark
+    public int captureAndToStream() throws IOException {
+        return write(BenchmarkFixtures.newError(config));
+    }
+
+    private int write(Error source) throws IOException {
+        buffer.reset();
+        JsonStream stream = new JsonStream(buffer);
+        source.toStream(stream);
+        stream.flush();
+        return buffer.size();
+    }
+}
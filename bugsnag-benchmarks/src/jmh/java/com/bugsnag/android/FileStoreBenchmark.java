@@ -0,0 +1,87 @@
+package com.bugsnag.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+/**
+ * Measures storing an error on disk, and storing then flushing it through a delivery which
+ * writes the request body without sending it
+ */
+@State(Scope.Thread)
+public class FileStoreBenchmark {
+
+    private File cacheDir;
+    private ErrorStore errorStore;
+    private Error error;
+
+    /**
+     * Creates an error store in a temporary directory
+     */
+    @Setup
+    public void setUp() throws IOException {
+        Configuration config = BenchmarkFixtures.newConfiguration();
+        config.setDelivery(new DiscardingDelivery());
+        cacheDir = Files.createTempDirectory("bugsnag-benchmark").toFile();
+        errorStore = new ErrorStore(config, BenchmarkFixtures.newContext(cacheDir), null);
+        error = BenchmarkFixtures.newError(config);
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkFixtures.deleteRecursively(cacheDir);
+    }
+
+    /**
+     * Writes the error to disk, and then deletes it so that the store does not fill up
+     */
+    @Benchmark
+    public void write() {
+        String filename = errorStore.write(error);
+
+        if (filename == null) {
+            throw new IllegalStateException("Failed to store error");
+        }
+        errorStore.deleteStoredFiles(Collections.singleton(new File(filename)));
+    }
+
+    @Benchmark
+    public void writeAndFlush() {
+        errorStore.write(error);
+        errorStore.flushReports(errorStore.findStoredFiles());
+    }
+
+    /**
+     * Writes each request body into a stream which discards it
+     */
+    private static final class DiscardingDelivery implements Delivery {
+
+        @Override
+        public void deliver(SessionTrackingPayload payload, Configuration config) {
+            write(payload);
+        }
+
+        @Override
+        public void deliver(Report report, Configuration config) {
+            write(report);
+        }
+
+        private static void write(JsonStream.Streamable streamable) {
+            try {
+                JsonStream stream =
+                    new JsonStream(new BenchmarkFixtures.DiscardingOutputStream());
+                streamable.toStream(stream);
+                stream.flush();
+            } catch (IOException exception) {
+                throw new IllegalStateException(exception);
+            }
+        }
+    }
+}
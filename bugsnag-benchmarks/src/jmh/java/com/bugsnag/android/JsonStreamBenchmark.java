@@ -0,0 +1,81 @@
+package com.bugsnag.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Measures writing JSON tokens, both as UTF-8 bytes into a payload buffer and as characters
+ * into a {@link java.io.Writer}
+ */
+@State(Scope.Thread)
+public class JsonStreamBenchmark {
+
+    private static final String ASCII = "The quick brown fox jumps over the lazy dog";
+    private static final String ESCAPED = "line one\nline two\t\"quoted\" \\ slash";
+    private static final String UNICODE = "Zo\u00eb's caf\u00e9 \u2013 \u6771\u4eac \ud83d\ude00";
+
+    private PayloadBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        Logger.setEnabled(false);
+        buffer = new PayloadBuffer();
+    }
+
+    /**
+     * Writes a document into a payload buffer, which is how payloads are serialized
+     */
+    @Benchmark
+    public int writeBytes() throws IOException {
+        buffer.reset();
+        JsonStream stream = new JsonStream(buffer);
+        writeDocument(stream);
+        stream.flush();
+        return buffer.size();
+    }
+
+    /**
+     * Writes a document into a string, which is how payloads are serialized by custom code
+     */
+    @Benchmark
+    public int writeChars() throws IOException {
+        StringWriter writer = new StringWriter();
+        JsonStream stream = new JsonStream(writer);
+        writeDocument(stream);
+        stream.flush();
+        return writer.getBuffer().length();
+    }
+
+    private static void writeDocument(JsonStream stream) throws IOException {
+        stream.beginObject();
+        stream.name("strings").beginArray();
+
+        for (int k = 0; k < 10; k++) {
+            stream.value(ASCII).value(ESCAPED).value(UNICODE);
+        }
+        stream.endArray();
+        stream.name("numbers").beginArray();
+
+        for (int k = 0; k < 50; k++) {
+            stream.value(k).value(k * 1000003L).value(k / 7.0);
+        }
+        stream.endArray();
+        stream.name("objects").beginArray();
+
+        for (int k = 0; k < 10; k++) {
+            stream.beginObject();
+            stream.name("id").value(k);
+            stream.name("enabled").value(k % 2 == 0);
+            stream.name("label").value(ASCII);
+            stream.name("missing").nullValue();
+            stream.endObject();
+        }
+        stream.endArray();
+        stream.endObject();
+    }
+}
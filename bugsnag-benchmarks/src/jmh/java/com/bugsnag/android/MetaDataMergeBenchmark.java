@@ -0,0 +1,36 @@
+package com.bugsnag.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures merging the global metadata with the metadata of an error, which is done for
+ * every error that is reported
+ */
+@State(Scope.Thread)
+public class MetaDataMergeBenchmark {
+
+    private MetaData global;
+    private MetaData local;
+
+    /**
+     * Creates the global metadata, and error metadata which overrides some of its values
+     */
+    @Setup
+    public void setUp() {
+        Logger.setEnabled(false);
+        global = BenchmarkFixtures.newMetaData();
+        local = new MetaData();
+        local.addToTab("account", "plan", "trial");
+        local.addToTab("cart", "abandoned", true);
+        local.addToTab("request", "url", "https://example.com/api/orders");
+        local.addToTab("request", "status", 503);
+    }
+
+    @Benchmark
+    public MetaData merge() {
+        return MetaData.merge(global, local);
+    }
+}
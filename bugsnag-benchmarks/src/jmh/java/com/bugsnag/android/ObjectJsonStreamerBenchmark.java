@@ -0,0 +1,52 @@
+package com.bugsnag.android;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Measures writing metadata, with the default filters and with every size limit enabled
+ */
+@State(Scope.Thread)
+public class ObjectJsonStreamerBenchmark {
+
+    private MetaData metaData;
+    private MetaData limitedMetaData;
+    private PayloadBuffer buffer;
+
+    /**
+     * Creates the metadata, and a copy of it which is written with limits
+     */
+    @Setup
+    public void setUp() {
+        Logger.setEnabled(false);
+        metaData = BenchmarkFixtures.newMetaData();
+        limitedMetaData = BenchmarkFixtures.newMetaData();
+        limitedMetaData.setFilters("password", "exact:token", "prefix:secret", "regex:^key\\d+$");
+        limitedMetaData.setMaxDepth(8);
+        limitedMetaData.setMaxCollectionSize(10);
+        limitedMetaData.setMaxStringLength(32);
+        buffer = new PayloadBuffer();
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        return writeMetaData(metaData);
+    }
+
+    @Benchmark
+    public int writeWithLimits() throws IOException {
+        return writeMetaData(limitedMetaData);
+    }
+
+    private int writeMetaData(MetaData source) throws IOException {
+        buffer.reset();
+        JsonStream stream = new JsonStream(buffer);
+        source.toStream(stream);
+        stream.flush();
+        return buffer.size();
+    }
+}